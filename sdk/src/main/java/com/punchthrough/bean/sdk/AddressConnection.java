@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.punchthrough.bean.sdk;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.punchthrough.bean.sdk.internal.ble.ConnectLimiter;
+import com.punchthrough.bean.sdk.message.BeanError;
+import com.punchthrough.bean.sdk.message.ScratchBank;
+
+/**
+ * Connects to a Bean by address following a {@link ConnectionPolicy}. Sits between the Bean and
+ * the app's listener, so it can release its direct connect slot and fall back to a background
+ * connection before the app hears about a failure.
+ */
+class AddressConnection implements BeanListener {
+
+    private static final String TAG = "AddressConnection";
+
+    private final Bean bean;
+    private final Context context;
+    private final ConnectionPolicy policy;
+    private final BeanListener listener;
+    private final ConnectLimiter limiter;
+
+    // Guarded by this
+    private boolean holdingSlot = false;
+
+    AddressConnection(Bean bean, Context context, ConnectionPolicy policy, BeanListener listener,
+                      ConnectLimiter limiter) {
+        this.bean = bean;
+        this.context = context;
+        this.policy = policy;
+        this.listener = listener;
+        this.limiter = limiter;
+    }
+
+    void start() {
+        if (policy == ConnectionPolicy.AUTO) {
+            bean.connect(context, this, true);
+            return;
+        }
+        limiter.submit(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AddressConnection.this) {
+                    holdingSlot = true;
+                }
+                bean.connect(context, AddressConnection.this, false);
+            }
+        });
+    }
+
+    private void releaseSlot() {
+        synchronized (this) {
+            if (!holdingSlot) {
+                return;
+            }
+            holdingSlot = false;
+        }
+        limiter.finish();
+    }
+
+    @Override
+    public void onConnected() {
+        releaseSlot();
+        listener.onConnected();
+    }
+
+    @Override
+    public void onConnectionFailed() {
+        boolean wasDirect;
+        synchronized (this) {
+            wasDirect = holdingSlot;
+        }
+        releaseSlot();
+        if (wasDirect && policy == ConnectionPolicy.DIRECT_THEN_AUTO) {
+            Log.i(TAG, "Direct connect failed, waiting for the Bean in the background");
+            bean.connect(context, this, true);
+            return;
+        }
+        listener.onConnectionFailed();
+    }
+
+    @Override
+    public void onDisconnected() {
+        releaseSlot();
+        listener.onDisconnected();
+    }
+
+    @Override
+    public void onSerialMessageReceived(byte[] data) {
+        listener.onSerialMessageReceived(data);
+    }
+
+    @Override
+    public void onScratchValueChanged(ScratchBank bank, byte[] value) {
+        listener.onScratchValueChanged(bank, value);
+    }
+
+    @Override
+    public void onError(BeanError error) {
+        listener.onError(error);
+    }
+
+    @Override
+    public void onReadRemoteRssi(int rssi) {
+        listener.onReadRemoteRssi(rssi);
+    }
+}
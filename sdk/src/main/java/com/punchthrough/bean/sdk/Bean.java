@@ -30,20 +30,32 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.punchthrough.bean.sdk.internal.BeanMessageID;
+import com.punchthrough.bean.sdk.internal.MessageDispatcher;
+import com.punchthrough.bean.sdk.internal.battery.BatteryProfile;
 import com.punchthrough.bean.sdk.internal.battery.BatteryProfile.BatteryLevelCallback;
+import com.punchthrough.bean.sdk.internal.ble.BaseProfile;
+import com.punchthrough.bean.sdk.internal.ble.ConnectionModeController;
+import com.punchthrough.bean.sdk.internal.ble.ConnectionTrace;
 import com.punchthrough.bean.sdk.internal.ble.GattClient;
+import com.punchthrough.bean.sdk.internal.ble.ProfileFactory;
 import com.punchthrough.bean.sdk.internal.device.DeviceProfile;
 import com.punchthrough.bean.sdk.internal.device.DeviceProfile.DeviceInfoCallback;
 import com.punchthrough.bean.sdk.internal.exception.NoEnumFoundException;
+import com.punchthrough.bean.sdk.internal.scratch.ScratchMirror;
+import com.punchthrough.bean.sdk.internal.scratch.ScratchProfile;
 import com.punchthrough.bean.sdk.internal.serial.GattSerialMessage;
 import com.punchthrough.bean.sdk.internal.serial.GattSerialTransportProfile;
+import com.punchthrough.bean.sdk.internal.serial.SerialBatcher;
 import com.punchthrough.bean.sdk.internal.upload.firmware.OADProfile;
 import com.punchthrough.bean.sdk.internal.upload.sketch.BeanState;
 import com.punchthrough.bean.sdk.internal.upload.sketch.SketchUploadState;
 import com.punchthrough.bean.sdk.internal.utility.Chunk;
+import com.punchthrough.bean.sdk.internal.utility.EnumParse;
+import com.punchthrough.bean.sdk.internal.utility.EventLoop;
 import com.punchthrough.bean.sdk.message.Acceleration;
 import com.punchthrough.bean.sdk.message.AccelerometerRange;
 import com.punchthrough.bean.sdk.message.BatteryLevel;
@@ -52,8 +64,10 @@ import com.punchthrough.bean.sdk.message.Callback;
 import com.punchthrough.bean.sdk.message.DeviceInfo;
 import com.punchthrough.bean.sdk.message.LedColor;
 import com.punchthrough.bean.sdk.message.Message;
+import com.punchthrough.bean.sdk.message.MessageHandler;
 import com.punchthrough.bean.sdk.message.RadioConfig;
 import com.punchthrough.bean.sdk.message.ScratchBank;
+import com.punchthrough.bean.sdk.message.SensorSnapshot;
 import com.punchthrough.bean.sdk.message.ScratchData;
 import com.punchthrough.bean.sdk.message.SketchMetadata;
 import com.punchthrough.bean.sdk.message.Status;
@@ -64,11 +78,16 @@ import com.punchthrough.bean.sdk.upload.SketchHex;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import okio.Buffer;
 
@@ -149,12 +168,29 @@ public class Bean implements Parcelable {
      * sets up the Bean object. Passed into
      * {@link com.punchthrough.bean.sdk.Bean#connect(android.content.Context, BeanListener)}.
      */
-    private BeanListener beanListener = internalBeanListener;
+    private volatile BeanListener beanListener = internalBeanListener;
 
     /**
-     * The GattClient associated with this Bean.
+     * The GattClient associated with this Bean. Created on {@link #connect(Context, BeanListener)}
+     * and released after the Bean disconnects, so Beans that are only discovered stay small.
      */
-    private final GattClient gattClient;
+    private volatile GattClient gattClient;
+
+    /**
+     * true if the GattClient was passed to the constructor. An injected client is never released.
+     */
+    private final boolean clientInjected;
+
+    /**
+     * Profiles added with {@link #registerProfile(UUID, ProfileFactory)}, registered with each
+     * GattClient this Bean creates.
+     */
+    private final Map<UUID, ProfileFactory> customProfiles = new HashMap<>();
+
+    /**
+     * Main thread Handler shared by all Beans that aren't given their own.
+     */
+    private static Handler mainHandler;
 
     /**
      * The BluetoothDevice representing this physical Bean.
@@ -162,10 +198,36 @@ public class Bean implements Parcelable {
     private final BluetoothDevice device;
 
     /**
-     * Handler created for each Bean
+     * Handler used for this Bean's delayed tasks and GATT profiles
      */
     private final Handler handler;
 
+    /**
+     * Passed to each GattClient this Bean creates
+     */
+    private GattClient.ConnectionListener connectionListener;
+
+    /**
+     * Passed to the serial profile of each GattClient this Bean creates
+     */
+    private GattSerialTransportProfile.SerialListener serialListener;
+
+    /**
+     * Passed to the scratch profile of each GattClient this Bean creates
+     */
+    private ScratchProfile.ScratchListener scratchListener;
+
+    /**
+     * The connection's event loop. Sketch upload state is only touched from tasks on this loop.
+     */
+    private final EventLoop eventLoop;
+
+    /**
+     * Executor that {@link BeanListener} events and serial message results are delivered on.
+     * Defaults to the main thread.
+     */
+    private volatile Executor callbackExecutor;
+
     /**
      * Last known Android Context (Activity)
      */
@@ -217,10 +279,79 @@ public class Bean implements Parcelable {
      * call in order and guarantee each callback is called exactly once.
      * </p>
      */
-    private HashMap<BeanMessageID, List<Callback<?>>> beanCallbacks = new HashMap<>(16);
+    private final HashMap<BeanMessageID, List<Callback<?>>> beanCallbacks = new HashMap<>(16);
+
+    // Callers waiting for the RSSI read in flight
+    private final List<Callback<Integer>> rssiCallbacks = new ArrayList<>();
+
+    /**
+     * Routes incoming messages to a handler by message ID. Holds the SDK's own handlers and any
+     * registered through {@link #registerMessageHandler(int, MessageHandler)}.
+     */
+    private final MessageDispatcher dispatcher = new MessageDispatcher();
+
+
+    /**
+     * Collects serial messages while batched delivery is enabled, null otherwise.
+     */
+    private volatile SerialBatcher serialBatcher;
 
+    /**
+     * Held while a message is added to {@link #serialBatcher} and while it is replaced.
+     */
+    private final Object serialBatchLock = new Object();
+
+    /**
+     * Receives batched serial messages. Set together with {@link #serialBatcher}.
+     */
+    private SerialBatchListener serialBatchListener;
+
+    /**
+     * The time, in ms, that serial messages are collected before a batch is delivered.
+     */
+    private int serialBatchWindow;
+
+    /**
+     * Delivers the current serial batch, if it holds any messages. Must be run on the callback
+     * executor.
+     */
+    private final Runnable flushSerialBatch = new Runnable() {
+        @Override
+        public void run() {
+            SerialBatcher batcher = serialBatcher;
+            SerialBatchListener listener = serialBatchListener;
+            if (batcher == null || listener == null) {
+                return;
+            }
+            List<byte[]> messages = batcher.drain();
+            if (!messages.isEmpty()) {
+                listener.onSerialMessagesReceived(messages);
+            }
+        }
+    };
 
-    // These class variables are used for sketch uploads.
+    /**
+     * Hands {@link #flushSerialBatch} to the callback executor when a batch window ends.
+     */
+    private final Runnable deliverSerialBatch = new Runnable() {
+        @Override
+        public void run() {
+            callbackExecutor.execute(flushSerialBatch);
+        }
+    };
+
+    /**
+     * The stream opened by {@link #openSerialOutputStream(int)}, if any.
+     */
+    private volatile SerialOutputStream serialOutputStream;
+
+    /**
+     * The stream opened by {@link #openSerialInputStream(int, SerialInputStream.OverflowPolicy)},
+     * if any. Serial data goes to this stream instead of the listeners while it is open.
+     */
+    private volatile SerialInputStream serialInputStream;
+
+    // These class variables are used for sketch uploads. Only touch them from the event loop.
     /**
      * The maximum amount of time, in ms, that passes between state updates from the Bean before
      * sketch upload process is aborted
@@ -240,20 +371,21 @@ public class Bean implements Parcelable {
     private static final int MAX_BLOCK_SIZE_BYTES = 64;
 
     /**
-     * State of the current sketch upload process.
+     * State of the current sketch upload process. Volatile so the connection mode controller can
+     * check it from other threads.
      */
-    private SketchUploadState sketchUploadState = SketchUploadState.INACTIVE;
+    private volatile SketchUploadState sketchUploadState = SketchUploadState.INACTIVE;
 
     /**
      * sketchStateTimeout throws an error if too much time passes without an update from the Bean
      * asking programming to begin
      */
-    private Timer sketchStateTimeout;
+    private EventLoop.Timeout sketchStateTimeout;
 
     /**
      * Sends the next block of sketch data
      */
-    private Timer sketchBlockSendTimeout;
+    private EventLoop.Timeout sketchBlockSendTimeout;
 
     /**
      * Holds all blocks of sketch data being sent to Bean
@@ -275,6 +407,66 @@ public class Bean implements Parcelable {
      */
     private Runnable onSketchUploadComplete;
 
+    /**
+     * Serial bytes waiting to be sent above which the connection is treated as streaming
+     */
+    private static final int BULK_PENDING_BYTES = 256;
+
+    /**
+     * How long after the last command the connection stays interactive, in ms
+     */
+    private static final long DEFAULT_CONNECTION_IDLE_TIMEOUT = 5000;
+
+    private volatile boolean automaticConnectionMode = true;
+
+    /**
+     * Trace of the last connection attempt, kept when its GattClient is released.
+     */
+    private volatile ConnectionTrace lastConnectionTrace;
+
+    /**
+     * Scratch banks the app wants change notifications for. Enabled again on each connection.
+     * All banks by default, so {@link BeanListener#onScratchValueChanged(ScratchBank, byte[])}
+     * works without any setup.
+     */
+    private final Set<ScratchBank> scratchSubscriptions = EnumSet.allOf(ScratchBank.class);
+
+    /**
+     * Last known scratch bank values, answered from instead of reading the Bean when fresh.
+     */
+    private final ScratchMirror scratchMirror = new ScratchMirror();
+
+    /**
+     * How long a scratch value without notifications may be answered from the mirror, in ms.
+     */
+    private volatile int scratchMaxAge = 0;
+
+    /**
+     * Switches the connection between bulk, interactive and idle parameters.
+     */
+    private final ConnectionModeController connectionModes = new ConnectionModeController(
+            new ConnectionModeController.Workload() {
+                @Override
+                public boolean isBulk() {
+                    SerialInputStream input = serialInputStream;
+                    return sketchUploadState != SketchUploadState.INACTIVE ||
+                            firmwareUpdateInProgress() ||
+                            (input != null && input.isOpen()) ||
+                            getPendingSerialBytes() > BULK_PENDING_BYTES;
+                }
+            },
+            new ConnectionModeController.Applier() {
+                @Override
+                public void apply(ConnectionMode mode) {
+                    GattClient client = gattClient;
+                    if (client != null && automaticConnectionMode) {
+                        Log.i(TAG, "Connection mode: " + mode);
+                        client.requestConnectionMode(mode);
+                    }
+                }
+            },
+            DEFAULT_CONNECTION_IDLE_TIMEOUT);
+
     /**
      * Create a Bean using its {@link android.bluetooth.BluetoothDevice}
      * The Bean will not be connected until {@link #connect(android.content.Context, BeanListener)} is called.
@@ -283,8 +475,10 @@ public class Bean implements Parcelable {
      */
     public Bean(BluetoothDevice device) {
         this.device = device;
-        this.handler = new Handler(Looper.getMainLooper());
-        this.gattClient = new GattClient(handler, device);
+        this.handler = mainHandler();
+        this.callbackExecutor = CallbackExecutors.mainThread();
+        this.eventLoop = new EventLoop();
+        this.clientInjected = false;
         init();
     }
 
@@ -296,15 +490,29 @@ public class Bean implements Parcelable {
         this.device = device;
         this.gattClient = client;
         this.handler = handler;
+        this.callbackExecutor = CallbackExecutors.fromHandler(handler);
+        this.eventLoop = client.getEventLoop();
+        this.clientInjected = true;
         init();
     }
 
+    private static synchronized Handler mainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
     private void init() {
 
-        GattClient.ConnectionListener connectionListener = new GattClient.ConnectionListener() {
+        registerBuiltInHandlers();
+
+        connectionListener = new GattClient.ConnectionListener() {
             @Override
             public void onConnected() {
-                handler.post(new Runnable() {
+                connectionModes.onActivity(SystemClock.elapsedRealtime());
+                subscribeScratchBanks();
+                callbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         beanListener.onConnected();
@@ -314,7 +522,8 @@ public class Bean implements Parcelable {
 
             @Override
             public void onConnectionFailed() {
-                handler.post(new Runnable() {
+                releaseClient();
+                callbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         beanListener.onConnectionFailed();
@@ -324,34 +533,57 @@ public class Bean implements Parcelable {
 
             @Override
             public void onDisconnected() {
-                beanCallbacks.clear();
-                handler.post(new Runnable() {
+                connectionModes.reset();
+                releaseClient();
+                synchronized (beanCallbacks) {
+                    beanCallbacks.clear();
+                }
+                failRssiCallbacks();
+                scratchMirror.clearLive();
+                SerialOutputStream stream = serialOutputStream;
+                if (stream != null) {
+                    stream.onDisconnected();
+                }
+                // The ended stream stops receiving, so serial data on the next connection goes
+                // to the listeners again
+                SerialInputStream input;
+                synchronized (Bean.this) {
+                    input = serialInputStream;
+                    serialInputStream = null;
+                }
+                if (input != null) {
+                    input.onDisconnected();
+                }
+                callbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
+                        flushSerialBatch.run();
                         beanListener.onDisconnected();
                     }
                 });
             }
         };
 
-        GattSerialTransportProfile.SerialListener serialListener = new GattSerialTransportProfile.SerialListener() {
+        serialListener = new GattSerialTransportProfile.SerialListener() {
 
             @Override
             public void onMessageReceived(final byte[] data) {
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        handleMessage(data);
+                if (MessageDispatcher.messageId(data) == BeanMessageID.SERIAL_DATA.getRawValue()) {
+                    SerialInputStream input = serialInputStream;
+                    if (input != null) {
+                        input.receive(data, 2, data.length - 2);
+                        return;
                     }
-                });
-            }
+                    if (serialBatcher != null &&
+                            batchSerialMessage(Arrays.copyOfRange(data, 2, data.length))) {
+                        return;
+                    }
+                }
 
-            @Override
-            public void onScratchValueChanged(final ScratchBank bank, final byte[] value) {
-                handler.post(new Runnable() {
+                callbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
-                        beanListener.onScratchValueChanged(bank, value);
+                        handleMessage(data);
                     }
                 });
             }
@@ -360,7 +592,7 @@ public class Bean implements Parcelable {
             public void onError(String message) {
                 Log.e(TAG, message);
 
-                handler.post(new Runnable() {
+                callbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         beanListener.onError(BeanError.GATT_SERIAL_TRANSPORT_ERROR);
@@ -370,76 +602,263 @@ public class Bean implements Parcelable {
 
             @Override
             public void onReadRemoteRssi(final int rssi) {
-                handler.post(new Runnable() {
+                final List<Callback<Integer>> callbacks;
+                synchronized (rssiCallbacks) {
+                    callbacks = new ArrayList<>(rssiCallbacks);
+                    rssiCallbacks.clear();
+                }
+                callbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         beanListener.onReadRemoteRssi(rssi);
+                        for (Callback<Integer> callback : callbacks) {
+                            callback.onResult(rssi);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onTransmitProgress(int pendingBytes) {
+                SerialOutputStream stream = serialOutputStream;
+                if (stream != null) {
+                    stream.onTransmitProgress(pendingBytes);
+                }
+            }
+        };
+
+        scratchListener = new ScratchProfile.ScratchListener() {
+            @Override
+            public void onScratchValueChanged(final ScratchBank bank, final byte[] value) {
+                scratchMirror.update(bank, value, SystemClock.elapsedRealtime());
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        beanListener.onScratchValueChanged(bank, value);
                     }
                 });
             }
         };
 
-        gattClient.setListener(connectionListener);
-        gattClient.getSerialProfile().setListener(serialListener);
+        if (gattClient != null) {
+            gattClient.setListener(connectionListener);
+            gattClient.getSerialProfile().setListener(serialListener);
+            ScratchProfile scratch = gattClient.getScratchProfile();
+            if (scratch != null) {
+                scratch.setListener(scratchListener);
+            }
+        }
     }
 
     /**
-     * Handles incoming messages from the Bean and dispatches them to the proper handlers.
-     * @param data The raw byte data received from the Bean
+     * Get this Bean's GattClient, creating it and its profiles if needed. Only connecting may
+     * create a client; everything else uses {@link #gattClient} and fails if it is null, since a
+     * client created without connecting would never be released.
+     *
+     * @return The GattClient
      */
-    private void handleMessage(byte[] data) {
-        Buffer buffer = new Buffer();
-        buffer.write(data);
-        int type = (buffer.readShort() & 0xffff) & ~(APP_MSG_RESPONSE_BIT);
+    private synchronized GattClient client() {
+        if (gattClient == null) {
+            GattClient client = new GattClient(handler, device, eventLoop);
+            for (Map.Entry<UUID, ProfileFactory> entry : customProfiles.entrySet()) {
+                client.registerProfile(entry.getKey(), entry.getValue());
+            }
+            client.setListener(connectionListener);
+            client.getSerialProfile().setListener(serialListener);
+            client.getScratchProfile().setListener(scratchListener);
+            gattClient = client;
+        }
+        return gattClient;
+    }
 
-        if (type == BeanMessageID.SERIAL_DATA.getRawValue()) {
-            beanListener.onSerialMessageReceived(buffer.readByteArray());
+    /**
+     * Enable notifications for the scratch banks in {@link #scratchSubscriptions}.
+     */
+    private void subscribeScratchBanks() {
+        GattClient client = gattClient;
+        if (client == null) {
+            return;
+        }
+        ScratchProfile scratch = client.getScratchProfile();
+        if (scratch == null) {
+            return;
+        }
+        synchronized (scratchSubscriptions) {
+            for (ScratchBank bank : scratchSubscriptions) {
+                if (scratch.enableNotifications(bank.getRawValue())) {
+                    scratchMirror.setLive(bank, true);
+                }
+            }
+        }
+    }
 
-        } else if (type == BeanMessageID.BT_GET_CONFIG.getRawValue()) {
-            returnConfig(buffer);
+    /**
+     * Drop the GattClient after the Bean disconnects. It is kept while a firmware update is in
+     * progress, since the update reconnects through it.
+     */
+    private synchronized void releaseClient() {
+        GattClient client = gattClient;
+        if (clientInjected || client == null || client.oadInProgress()) {
+            return;
+        }
+        lastConnectionTrace = client.getConnectionTrace();
+        client.close();
+        gattClient = null;
+    }
 
-        } else if (type == BeanMessageID.CC_TEMP_READ.getRawValue()) {
-            returnTemperature(buffer);
+    /**
+     * Add a serial message to the current batch, scheduling delivery of the batch when needed.
+     * Only the first message of a batch and the message that fills it cause a callback to be
+     * scheduled.
+     *
+     * @param message   The serial message payload
+     * @return          false if batching is off and the message wasn't taken
+     */
+    private boolean batchSerialMessage(byte[] message) {
+        SerialBatcher.Result result;
+        // Held while adding, so a batcher being replaced can't take a message after its final
+        // drain
+        synchronized (serialBatchLock) {
+            SerialBatcher batcher = serialBatcher;
+            if (batcher == null) {
+                return false;
+            }
+            result = batcher.add(message);
+        }
+        switch (result) {
+            case WINDOW_STARTED:
+                handler.postDelayed(deliverSerialBatch, serialBatchWindow);
+                break;
+            case FULL:
+                handler.removeCallbacks(deliverSerialBatch);
+                deliverSerialBatch.run();
+                break;
+            case QUEUED:
+                break;
+        }
+        return true;
+    }
 
-        } else if (type == BeanMessageID.BL_GET_META.getRawValue()) {
-            returnMetadata(buffer);
+    /**
+     * Register the handlers for the message types the SDK understands. Each handler decodes its
+     * payload directly from the received byte array.
+     */
+    private void registerBuiltInHandlers() {
 
-        } else if (type == BeanMessageID.BT_GET_SCRATCH.getRawValue()) {
-            returnScratchData(buffer);
+        dispatcher.register(BeanMessageID.SERIAL_DATA.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                beanListener.onSerialMessageReceived(Arrays.copyOfRange(data, offset, offset + length));
+            }
+        });
 
-        } else if (type == BeanMessageID.CC_LED_READ_ALL.getRawValue()) {
-            returnLed(buffer);
+        dispatcher.register(BeanMessageID.BT_GET_CONFIG.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnConfig(payload(data, offset, length));
+            }
+        });
 
-        } else if (type == BeanMessageID.CC_ACCEL_READ.getRawValue()) {
-            returnAcceleration(buffer);
+        dispatcher.register(BeanMessageID.CC_TEMP_READ.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnTemperature(data[offset]);
+            }
+        });
 
-        } else if (type == BeanMessageID.CC_ACCEL_GET_RANGE.getRawValue()) {
-            returnAccelerometerRange(buffer);
+        dispatcher.register(BeanMessageID.BL_GET_META.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnMetadata(payload(data, offset, length));
+            }
+        });
 
-        // Ignore CC_LED_WRITE; it appears to be only an ack
+        dispatcher.register(BeanMessageID.BT_GET_SCRATCH.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnScratchData(payload(data, offset, length));
+            }
+        });
 
-        } else if (type == BeanMessageID.CC_GET_AR_POWER.getRawValue()) {
-            returnArduinoPowerState(buffer);
+        dispatcher.register(BeanMessageID.CC_LED_READ_ALL.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnLed(payload(data, offset, length));
+            }
+        });
 
-        } else if (type == BeanMessageID.BL_STATUS.getRawValue()) {
-            try {
-                Status status = Status.fromPayload(buffer);
-                handleStatus(status);
+        dispatcher.register(BeanMessageID.CC_ACCEL_READ.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnAcceleration(payload(data, offset, length));
+            }
+        });
 
-            } catch (NoEnumFoundException e) {
-                Log.e(TAG, "Unable to parse status from buffer: " + buffer.toString());
-                e.printStackTrace();
+        dispatcher.register(BeanMessageID.CC_ACCEL_GET_RANGE.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnAccelerometerRange(data[offset] & 0xff);
+            }
+        });
+
+        // Ignore CC_LED_WRITE; it appears to be only an ack
 
+        dispatcher.register(BeanMessageID.CC_GET_AR_POWER.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                returnArduinoPowerState((data[offset] & 0xff) == 1);
+            }
+        });
+
+        dispatcher.register(BeanMessageID.BL_STATUS.getRawValue(), new MessageHandler() {
+            @Override
+            public void onMessageReceived(int messageId, byte[] data, int offset, int length) {
+                Buffer buffer = payload(data, offset, length);
+                try {
+                    final Status status = Status.fromPayload(buffer);
+                    eventLoop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            handleStatus(status);
+                        }
+                    });
+
+                } catch (NoEnumFoundException e) {
+                    Log.e(TAG, "Unable to parse status from buffer: " + buffer.toString());
+                    e.printStackTrace();
+
+                }
             }
+        });
+    }
+
+    /**
+     * Wrap part of a received message in a {@link okio.Buffer} for message types that are parsed
+     * from one.
+     *
+     * @param data      Raw message bytes
+     * @param offset    Index of the first payload byte
+     * @param length    Number of payload bytes
+     * @return          A buffer holding the payload
+     */
+    private static Buffer payload(byte[] data, int offset, int length) {
+        Buffer buffer = new Buffer();
+        buffer.write(data, offset, length);
+        return buffer;
+    }
 
-        } else {
-            String fourDigitHex = Integer.toHexString(type);
+    /**
+     * Handles incoming messages from the Bean and dispatches them to the proper handlers.
+     * @param data The raw byte data received from the Bean
+     */
+    private void handleMessage(byte[] data) {
+        if (!dispatcher.dispatch(data)) {
+            String fourDigitHex = Integer.toHexString(MessageDispatcher.messageId(data));
             while (fourDigitHex.length() < 4) {
                 fourDigitHex = "0" + fourDigitHex;
             }
             Log.e(TAG, "Received message of unknown type 0x" + fourDigitHex);
             returnError(BeanError.UNKNOWN_MESSAGE_ID);
-
         }
     }
 
@@ -469,7 +888,8 @@ public class Bean implements Parcelable {
             resetSketchStateTimeout();
 
         } else if (beanState == BeanState.COMPLETE) {
-            if (onSketchUploadComplete != null) onSketchUploadComplete.run();
+            final Runnable onComplete = onSketchUploadComplete;
+            if (onComplete != null) callbackExecutor.execute(onComplete);
             resetSketchUploadState();
 
         } else if (beanState == BeanState.ERROR) {
@@ -505,7 +925,7 @@ public class Bean implements Parcelable {
      * state update from the Bean and an error will be fired.
      */
     private void resetSketchStateTimeout() {
-        TimerTask onTimeout = new TimerTask() {
+        Runnable onTimeout = new Runnable() {
             @Override
             public void run() {
                 returnUploadError(BeanError.STATE_TIMEOUT);
@@ -513,15 +933,14 @@ public class Bean implements Parcelable {
         };
 
         stopSketchStateTimeout();
-        sketchStateTimeout = new Timer();
-        sketchStateTimeout.schedule(onTimeout, SKETCH_UPLOAD_STATE_TIMEOUT);
+        sketchStateTimeout = eventLoop.schedule(onTimeout, SKETCH_UPLOAD_STATE_TIMEOUT);
     }
 
     /**
      * Reset the block send timer. When this timer fires, another sketch block is sent.
      */
     private void resetSketchBlockSendTimeout() {
-        TimerTask onTimeout = new TimerTask() {
+        Runnable onTimeout = new Runnable() {
             @Override
             public void run() {
                 sendNextSketchBlock();
@@ -529,8 +948,7 @@ public class Bean implements Parcelable {
         };
 
         stopSketchBlockSendTimeout();
-        sketchBlockSendTimeout = new Timer();
-        sketchBlockSendTimeout.schedule(onTimeout, SKETCH_BLOCK_SEND_INTERVAL);
+        sketchBlockSendTimeout = eventLoop.schedule(onTimeout, SKETCH_BLOCK_SEND_INTERVAL);
     }
 
     /**
@@ -544,9 +962,15 @@ public class Bean implements Parcelable {
 
         resetSketchBlockSendTimeout();
 
-        int blocksSent = currSketchBlockNum + 1;
-        int totalBlocks = sketchBlocksToSend.size();
-        onSketchUploadProgress.onResult(UploadProgress.create(blocksSent, totalBlocks));
+        final Callback<UploadProgress> onProgress = onSketchUploadProgress;
+        final UploadProgress progress = UploadProgress.create(currSketchBlockNum + 1,
+                sketchBlocksToSend.size());
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onProgress.onResult(progress);
+            }
+        });
 
         currSketchBlockNum++;
         if ( currSketchBlockNum >= sketchBlocksToSend.size() ) {
@@ -554,6 +978,16 @@ public class Bean implements Parcelable {
         }
     }
 
+    /**
+     * Runs {@link #resetSketchUploadState()} on the event loop.
+     */
+    private final Runnable resetSketchUploadState = new Runnable() {
+        @Override
+        public void run() {
+            resetSketchUploadState();
+        }
+    };
+
     /**
      * Reset local variables and kill timers that are used for uploading sketches.
      */
@@ -567,23 +1001,27 @@ public class Bean implements Parcelable {
 
     /**
      * Call the onResult callback for {@link com.punchthrough.bean.sdk.Bean#readArduinoPowerState(com.punchthrough.bean.sdk.message.Callback)}.
-     * @param buffer Raw message bytes from the Bean
+     * @param enabled The power state reported by the Bean
      */
-    private void returnArduinoPowerState(Buffer buffer) {
+    private void returnArduinoPowerState(boolean enabled) {
         Callback<Boolean> callback = getFirstCallback(BeanMessageID.CC_GET_AR_POWER);
         if (callback != null) {
-            callback.onResult((buffer.readByte() & 0xff) == 1);
+            callback.onResult(enabled);
         }
     }
 
     /**
      * Call the onResult callback for {@link com.punchthrough.bean.sdk.Bean#readAccelerometerRange(com.punchthrough.bean.sdk.message.Callback)}.
-     * @param buffer Raw message bytes from the Bean
+     * @param range The raw range value reported by the Bean
      */
-    private void returnAccelerometerRange(Buffer buffer) {
-        Callback<Integer> callback = getFirstCallback(BeanMessageID.CC_ACCEL_GET_RANGE);
+    private void returnAccelerometerRange(int range) {
+        Callback<AccelerometerRange> callback = getFirstCallback(BeanMessageID.CC_ACCEL_GET_RANGE);
         if (callback != null) {
-            callback.onResult(buffer.readByte() & 0xff);
+            try {
+                callback.onResult(EnumParse.enumWithRawValue(AccelerometerRange.class, range));
+            } catch (NoEnumFoundException e) {
+                Log.e(TAG, "Unknown accelerometer range: " + range);
+            }
         }
     }
 
@@ -614,9 +1052,16 @@ public class Bean implements Parcelable {
      * @param buffer Raw message bytes from the Bean
      */
     private void returnScratchData(Buffer buffer) {
+        ScratchData data = ScratchData.fromPayload(buffer);
+        try {
+            ScratchBank bank = EnumParse.enumWithRawValue(ScratchBank.class, data.number());
+            scratchMirror.update(bank, data.data(), SystemClock.elapsedRealtime());
+        } catch (NoEnumFoundException e) {
+            Log.e(TAG, "Unknown scratch bank: " + data.number());
+        }
         Callback<ScratchData> callback = getFirstCallback(BeanMessageID.BT_GET_SCRATCH);
         if (callback != null) {
-            callback.onResult(ScratchData.fromPayload(buffer));
+            callback.onResult(data);
         }
     }
 
@@ -633,12 +1078,12 @@ public class Bean implements Parcelable {
 
     /**
      * Call the onResult callback for {@link com.punchthrough.bean.sdk.Bean#readTemperature(com.punchthrough.bean.sdk.message.Callback)} (com.punchthrough.bean.sdk.message.Callback)}.
-     * @param buffer Raw message bytes from the Bean
+     * @param temperature The signed temperature byte reported by the Bean
      */
-    private void returnTemperature(Buffer buffer) {
+    private void returnTemperature(byte temperature) {
         Callback<Integer> callback = getFirstCallback(BeanMessageID.CC_TEMP_READ);
         if (callback != null) {
-            callback.onResult((int) buffer.readByte());
+            callback.onResult((int) temperature);
         }
     }
 
@@ -659,7 +1104,7 @@ public class Bean implements Parcelable {
      * @param error The type of error that occurred
      */
     private void returnError(BeanError error) {
-        resetSketchUploadState();
+        eventLoop.execute(resetSketchUploadState);
         beanListener.onError(error);
     }
 
@@ -669,9 +1114,14 @@ public class Bean implements Parcelable {
      *
      * @param error The type of error that occurred
      */
-    private void returnUploadError(BeanError error) {
+    private void returnUploadError(final BeanError error) {
         resetSketchUploadState();
-        returnError(error);
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                beanListener.onError(error);
+            }
+        });
     }
 
     /**
@@ -682,12 +1132,14 @@ public class Bean implements Parcelable {
      * @param callback  The callback to store
      */
     private void addCallback(BeanMessageID type, Callback<?> callback) {
-        List<Callback<?>> callbacks = beanCallbacks.get(type);
-        if (callbacks == null) {
-            callbacks = new ArrayList<>(16);
-            beanCallbacks.put(type, callbacks);
+        synchronized (beanCallbacks) {
+            List<Callback<?>> callbacks = beanCallbacks.get(type);
+            if (callbacks == null) {
+                callbacks = new ArrayList<>(16);
+                beanCallbacks.put(type, callbacks);
+            }
+            callbacks.add(callback);
         }
-        callbacks.add(callback);
     }
 
     /**
@@ -700,34 +1152,67 @@ public class Bean implements Parcelable {
      */
     @SuppressWarnings("unchecked")
     private <T> Callback<T> getFirstCallback(BeanMessageID type) {
-        List<Callback<?>> callbacks = beanCallbacks.get(type);
-        if (callbacks == null || callbacks.isEmpty()) {
-            Log.w(TAG, "Got response without callback!");
-            return null;
+        synchronized (beanCallbacks) {
+            List<Callback<?>> callbacks = beanCallbacks.get(type);
+            if (callbacks == null || callbacks.isEmpty()) {
+                Log.w(TAG, "Got response without callback!");
+                return null;
+            }
+            return (Callback<T>) callbacks.remove(0);
+        }
+    }
+
+    /**
+     * Remove a callback that is still waiting for a reply.
+     *
+     * @param type      The {@link com.punchthrough.bean.sdk.internal.BeanMessageID} the callback
+     *                  was added for
+     * @param callback  The callback to remove
+     * @return          false if the callback wasn't waiting, e.g. because it was already answered
+     */
+    private boolean removeCallback(BeanMessageID type, Callback<?> callback) {
+        synchronized (beanCallbacks) {
+            List<Callback<?>> callbacks = beanCallbacks.get(type);
+            return callbacks != null && callbacks.remove(callback);
+        }
+    }
+
+    /**
+     * Send a message whose reply answers a callback. If the message is dropped, the callback is
+     * taken back out and called with null, so it can't take the reply meant for a later caller.
+     *
+     * @param type      The {@link com.punchthrough.bean.sdk.internal.BeanMessageID} for the message
+     * @param payload   The message payload to send, or null for none
+     * @param callback  The callback for the reply
+     */
+    private <T> void sendRequest(BeanMessageID type, Buffer payload, Callback<T> callback) {
+        addCallback(type, callback);
+        if (!sendMessage(type, payload) && removeCallback(type, callback)) {
+            resultNotConnected(callback);
         }
-        return (Callback<T>) callbacks.remove(0);
     }
 
     /**
      * Send a message to Bean with a payload.
      * @param type      The {@link com.punchthrough.bean.sdk.internal.BeanMessageID} for the message
      * @param message   The message payload to send
+     * @return          false if the message was dropped because the Bean isn't connected
      */
-    private void sendMessage(BeanMessageID type, Message message) {
+    private boolean sendMessage(BeanMessageID type, Message message) {
         Buffer buffer = new Buffer();
         buffer.writeByte((type.getRawValue() >> 8) & 0xff);
         buffer.writeByte(type.getRawValue() & 0xff);
         buffer.write(message.toPayload());
-        GattSerialMessage serialMessage = GattSerialMessage.fromPayload(buffer.readByteArray());
-        gattClient.getSerialProfile().sendMessage(serialMessage.getBuffer());
+        return sendSerialMessage(GattSerialMessage.fromPayload(buffer.readByteArray()));
     }
 
     /**
      * Send a message to Bean with a payload.
      * @param type      The {@link com.punchthrough.bean.sdk.internal.BeanMessageID} for the message
      * @param payload   The message payload to send
+     * @return          false if the message was dropped because the Bean isn't connected
      */
-    private void sendMessage(BeanMessageID type, Buffer payload) {
+    private boolean sendMessage(BeanMessageID type, Buffer payload) {
         Buffer buffer = new Buffer();
         buffer.writeByte((type.getRawValue() >> 8) & 0xff);
         buffer.writeByte(type.getRawValue() & 0xff);
@@ -738,8 +1223,27 @@ public class Bean implements Parcelable {
                 throw new RuntimeException(e);
             }
         }
-        GattSerialMessage serialMessage = GattSerialMessage.fromPayload(buffer.readByteArray());
-        gattClient.getSerialProfile().sendMessage(serialMessage.getBuffer());
+        return sendSerialMessage(GattSerialMessage.fromPayload(buffer.readByteArray()));
+    }
+
+    /**
+     * Hand a framed message to the serial transport. Dropped if the Bean has never connected or
+     * has disconnected.
+     *
+     * @param message The framed message
+     * @return        false if the message was dropped
+     */
+    private boolean sendSerialMessage(GattSerialMessage message) {
+        GattClient client = gattClient;
+        if (client == null) {
+            Log.w(TAG, "Bean is not connected, dropping message");
+            return false;
+        }
+        if (!client.getSerialProfile().sendMessage(message.getBuffer())) {
+            return false;
+        }
+        connectionModes.onActivity(SystemClock.elapsedRealtime());
+        return true;
     }
 
     /**
@@ -750,6 +1254,68 @@ public class Bean implements Parcelable {
         sendMessage(type, (Buffer) null);
     }
 
+    /**
+     * Queue a slice of data to be sent to the Bean as a serial message.
+     *
+     * @param data      The data to send
+     * @param offset    Index of the first byte to send
+     * @param length    Number of bytes to send
+     */
+    void writeSerialData(byte[] data, int offset, int length) {
+        Buffer buffer = new Buffer();
+        buffer.write(data, offset, length);
+        sendMessage(BeanMessageID.SERIAL_DATA, buffer);
+    }
+
+    /**
+     * @return The number of bytes queued in the serial transport and not yet sent
+     */
+    int getPendingSerialBytes() {
+        GattClient client = gattClient;
+        return client == null ? 0 : client.getSerialProfile().getPendingBytes();
+    }
+
+    /**
+     * Stop routing serial data to a stream that has been closed.
+     *
+     * @param stream The closed stream
+     */
+    void onSerialInputStreamClosed(SerialInputStream stream) {
+        synchronized (this) {
+            if (serialInputStream == stream) {
+                serialInputStream = null;
+            }
+        }
+    }
+
+    /**
+     * Run a callback on this Bean's callback executor.
+     *
+     * @param callback The callback to run
+     */
+    void deliverCallback(Runnable callback) {
+        callbackExecutor.execute(callback);
+    }
+
+    /**
+     * Make sure a message ID isn't one the SDK handles itself, and can be received at all.
+     *
+     * @param messageId The 16-bit message ID
+     * @throws IllegalArgumentException if the ID is one of the Bean's own message IDs, or has the
+     *                                  response bit set
+     */
+    private void checkCustomMessageId(int messageId) {
+        if ((messageId & APP_MSG_RESPONSE_BIT) != 0) {
+            throw new IllegalArgumentException("Message ID has the response bit set: " + messageId);
+        }
+        try {
+            BeanMessageID reserved = EnumParse.enumWithRawValue(BeanMessageID.class, messageId);
+            throw new IllegalArgumentException("Message ID is reserved for " + reserved.name());
+        } catch (NoEnumFoundException e) {
+            // Not one of ours, OK to use
+        }
+    }
+
     /****************************************************************************
                                     PUBLIC API
      ****************************************************************************/
@@ -759,7 +1325,8 @@ public class Bean implements Parcelable {
     }
 
     public boolean isConnected() {
-        return gattClient.isConnected();
+        GattClient client = gattClient;
+        return client != null && client.isConnected();
     }
 
     public Context getLastKnownContext() {
@@ -770,6 +1337,27 @@ public class Bean implements Parcelable {
         return beanListener;
     }
 
+    /**
+     * <p>
+     * Choose the thread that {@link BeanListener} events, {@link SerialBatchListener} batches,
+     * message handlers and the results of serial requests such as {@link #readLed(Callback)} are
+     * delivered on for this Bean. By default they are delivered on the main thread.
+     *
+     * </p><p>
+     *
+     * See {@link CallbackExecutors} for common choices, including delivering directly on the
+     * Bluetooth callback thread.
+     * </p>
+     *
+     * @param executor The executor to deliver callbacks on
+     */
+    public void setCallbackExecutor(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+        callbackExecutor = executor;
+    }
+
     /**
      * Attempt to connect to this Bean.
      *
@@ -777,16 +1365,52 @@ public class Bean implements Parcelable {
      * @param listener the Bean listener
      */
     public void connect(Context context, BeanListener listener) {
+        connect(context, listener, false);
+    }
+
+    /**
+     * Connect directly or in the background. See
+     * {@link GattClient#connect(Context, BluetoothDevice, boolean)}.
+     */
+    void connect(Context context, BeanListener listener, boolean autoConnect) {
         lastKnownContext = context;
         beanListener = listener;
-        gattClient.connect(context, device);
+        client().connect(context, device, autoConnect);
     }
 
     /**
      * Disconnect the Bean
      */
     public void disconnect() {
-        gattClient.disconnect();
+        GattClient client = gattClient;
+        if (client != null) {
+            client.disconnect();
+        }
+    }
+
+    /**
+     * <p>
+     * Export the timeline of the current connection attempt, or of the last one if none is in
+     * progress, as Chrome trace-event JSON. Attempts that failed or ended in a disconnect can
+     * still be exported until the next attempt starts. It covers <code>connectGatt</code>, the connection
+     * state change, service discovery, each profile's setup and every GATT operation queued
+     * before {@link BeanListener#onConnected()} is called, with the time each operation waited
+     * in the queue.
+     *
+     * </p><p>
+     *
+     * Save the text to a file and open it in chrome://tracing or the Perfetto UI.
+     * </p>
+     *
+     * @return The trace JSON, or null if this Bean has never been connected
+     */
+    public String getConnectionTrace() {
+        GattClient client = gattClient;
+        ConnectionTrace trace = client == null ? null : client.getConnectionTrace();
+        if (trace == null) {
+            trace = lastConnectionTrace;
+        }
+        return trace == null ? null : trace.toJson();
     }
 
     /**
@@ -802,7 +1426,81 @@ public class Bean implements Parcelable {
     *  Read the RSSI for a connected remote device. Value will be returned in {@link BeanListener#onReadRemoteRssi(int)}.
     */
     public void readRemoteRssi() {
-        gattClient.readRemoteRssi();
+        GattClient client = gattClient;
+        if (client != null) {
+            client.readRemoteRssi();
+        }
+    }
+
+    /**
+     * Read the RSSI for a connected remote device. The value is also passed to
+     * {@link BeanListener#onReadRemoteRssi(int)}. Callers waiting at the same time share one read.
+     *
+     * @param callback the callback for the RSSI, in dBm, or null if the Bean isn't connected
+     */
+    public void readRemoteRssi(final Callback<Integer> callback) {
+        GattClient client = gattClient;
+        if (client == null) {
+            resultNotConnected(callback);
+            return;
+        }
+        synchronized (rssiCallbacks) {
+            rssiCallbacks.add(callback);
+            if (rssiCallbacks.size() > 1) {
+                return;
+            }
+        }
+        if (!client.readRemoteRssi()) {
+            failRssiCallbacks();
+        }
+    }
+
+    /**
+     * Call a callback with null on the callback executor, for reads that need a connection.
+     */
+    private <T> void resultNotConnected(final Callback<T> callback) {
+        Log.w(TAG, "Bean is not connected, can't read");
+        deliverResult(callback, null);
+    }
+
+    /**
+     * Call a callback on the callback executor. Profile results arrive on the Bluetooth thread, or
+     * on the caller's thread when they are cached.
+     */
+    private <T> void deliverResult(final Callback<T> callback, final T result) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+
+    private DeviceProfile deviceProfile() {
+        GattClient client = gattClient;
+        return client == null ? null : client.getDeviceProfile();
+    }
+
+    /**
+     * Call every caller waiting for an RSSI read with null, e.g. because the Bean disconnected.
+     */
+    private void failRssiCallbacks() {
+        final List<Callback<Integer>> callbacks;
+        synchronized (rssiCallbacks) {
+            callbacks = new ArrayList<>(rssiCallbacks);
+            rssiCallbacks.clear();
+        }
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback<Integer> callback : callbacks) {
+                    callback.onResult(null);
+                }
+            }
+        });
     }
 
     /**
@@ -811,8 +1509,7 @@ public class Bean implements Parcelable {
      * @param callback the callback for the result
      */
     public void readRadioConfig(Callback<RadioConfig> callback) {
-        addCallback(BeanMessageID.BT_GET_CONFIG, callback);
-        sendMessageWithoutPayload(BeanMessageID.BT_GET_CONFIG);
+        sendRequest(BeanMessageID.BT_GET_CONFIG, null, callback);
     }
 
     /**
@@ -835,8 +1532,7 @@ public class Bean implements Parcelable {
      *                 result
      */
     public void readLed(Callback<LedColor> callback) {
-        addCallback(BeanMessageID.CC_LED_READ_ALL, callback);
-        sendMessageWithoutPayload(BeanMessageID.CC_LED_READ_ALL);
+        sendRequest(BeanMessageID.CC_LED_READ_ALL, null, callback);
     }
 
     /**
@@ -856,8 +1552,7 @@ public class Bean implements Parcelable {
      * @param callback the callback for the temperature result, in degrees Celsius
      */
     public void readTemperature(Callback<Integer> callback) {
-        addCallback(BeanMessageID.CC_TEMP_READ, callback);
-        sendMessageWithoutPayload(BeanMessageID.CC_TEMP_READ);
+        sendRequest(BeanMessageID.CC_TEMP_READ, null, callback);
     }
 
     /**
@@ -867,8 +1562,7 @@ public class Bean implements Parcelable {
      *                 result
      */
     public void readAcceleration(Callback<Acceleration> callback) {
-        addCallback(BeanMessageID.CC_ACCEL_READ, callback);
-        sendMessageWithoutPayload(BeanMessageID.CC_ACCEL_READ);
+        sendRequest(BeanMessageID.CC_ACCEL_READ, null, callback);
     }
 
     /**
@@ -878,22 +1572,51 @@ public class Bean implements Parcelable {
      *                 result
      */
     public void readSketchMetadata(Callback<SketchMetadata> callback) {
-        addCallback(BeanMessageID.BL_GET_META, callback);
-        sendMessageWithoutPayload(BeanMessageID.BL_GET_META);
+        sendRequest(BeanMessageID.BL_GET_META, null, callback);
     }
 
     /**
-     * Request a scratch bank data value.
+     * Request a scratch bank data value. The value is answered locally, without asking the
+     * Bean, if notifications for the bank are enabled (see
+     * {@link #setScratchNotificationBanks(ScratchBank...)}) and its value is known, or if it was
+     * received or written within {@link #setScratchCacheMaxAge(int)}. Otherwise the bank's
+     * characteristic is read directly; reads of a bank already being read share its result.
      *
      * @param bank     the {@link com.punchthrough.bean.sdk.message.ScratchBank} for which data is
      *                 being requested
      * @param callback the callback for the result
      */
-    public void readScratchData(ScratchBank bank, Callback<ScratchData> callback) {
-        addCallback(BeanMessageID.BT_GET_SCRATCH, callback);
+    public void readScratchData(ScratchBank bank, final Callback<ScratchData> callback) {
+        if (scratchMirror.isFresh(bank, SystemClock.elapsedRealtime(), scratchMaxAge)) {
+            final ScratchData data = scratchMirror.get(bank);
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onResult(data);
+                }
+            });
+            return;
+        }
+        final ScratchBank readBank = bank;
+        ScratchProfile scratch = scratchProfile();
+        if (scratch != null && scratch.read(bank.getRawValue(), new ScratchProfile.ReadCallback() {
+            @Override
+            public void onRead(byte[] value) {
+                scratchMirror.update(readBank, value, SystemClock.elapsedRealtime());
+                final ScratchData data = ScratchData.create(readBank, value);
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResult(data);
+                    }
+                });
+            }
+        })) {
+            return;
+        }
         Buffer buffer = new Buffer();
         buffer.writeByte(intToByte(bank.getRawValue()));
-        sendMessage(BeanMessageID.BT_GET_SCRATCH, buffer);
+        sendRequest(BeanMessageID.BT_GET_SCRATCH, buffer, callback);
     }
 
     /**
@@ -913,19 +1636,18 @@ public class Bean implements Parcelable {
      * @param callback the callback for the result
      */
     public void readAccelerometerRange(Callback<AccelerometerRange> callback) {
-        addCallback(BeanMessageID.CC_ACCEL_GET_RANGE, callback);
-        sendMessageWithoutPayload(BeanMessageID.CC_ACCEL_GET_RANGE);
+        sendRequest(BeanMessageID.CC_ACCEL_GET_RANGE, null, callback);
     }
 
     /**
-     * Set a scratch bank data value with raw bytes.
+     * Set a scratch bank data value with raw bytes. The bank's characteristic is written directly;
+     * if values are set faster than the Bean takes them, only the newest waiting value is written.
      *
      * @param bank The {@link com.punchthrough.bean.sdk.message.ScratchBank} being set
      * @param data The bytes to write into the scratch bank
      */
     public void setScratchData(ScratchBank bank, byte[] data) {
-        ScratchData sd = ScratchData.create(bank, data);
-        sendMessage(BeanMessageID.BT_SET_SCRATCH, sd);
+        writeScratch(bank, ScratchData.create(bank, data));
     }
 
     /**
@@ -935,8 +1657,28 @@ public class Bean implements Parcelable {
      * @param data The string data to write into the scratch bank as UTF-8
      */
     public void setScratchData(ScratchBank bank, String data) {
-        ScratchData sd = ScratchData.create(bank, data);
-        sendMessage(BeanMessageID.BT_SET_SCRATCH, sd);
+        writeScratch(bank, ScratchData.create(bank, data));
+    }
+
+    /**
+     * Write a scratch bank straight to its characteristic, or with a serial message if the Bean's
+     * scratch characteristics can't be written directly. The mirror only takes the value if the
+     * write was actually queued.
+     */
+    private void writeScratch(ScratchBank bank, ScratchData sd) {
+        ScratchProfile scratch = scratchProfile();
+        boolean queued = scratch != null && scratch.write(sd.number(), sd.data());
+        if (!queued) {
+            queued = sendMessage(BeanMessageID.BT_SET_SCRATCH, sd);
+        }
+        if (queued) {
+            scratchMirror.update(bank, sd.data(), SystemClock.elapsedRealtime());
+        }
+    }
+
+    private ScratchProfile scratchProfile() {
+        GattClient client = gattClient;
+        return client == null ? null : client.getScratchProfile();
     }
 
     /**
@@ -977,6 +1719,272 @@ public class Bean implements Parcelable {
         sendMessage(BeanMessageID.SERIAL_DATA, buffer);
     }
 
+    /**
+     * Open a stream that writes serial data to the Bean with flow control. Writes block, or
+     * {@link SerialOutputStream#tryWrite(byte[], int, int)} writes partially, once
+     * <code>capacity</code> bytes are waiting to be sent. Opening a new stream closes the previous
+     * one.
+     *
+     * @param capacity  The maximum number of bytes, including transport framing, waiting to be
+     *                  sent at once
+     * @return          The stream
+     */
+    public SerialOutputStream openSerialOutputStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        SerialOutputStream stream = new SerialOutputStream(this, capacity);
+        SerialOutputStream previous = serialOutputStream;
+        serialOutputStream = stream;
+        if (previous != null) {
+            previous.close();
+        }
+        return stream;
+    }
+
+    /**
+     * Open a stream that buffers serial data from the Bean until it is read. While the stream is
+     * open, serial data is delivered to it instead of
+     * {@link BeanListener#onSerialMessageReceived(byte[])} or a {@link SerialBatchListener}.
+     * Opening a new stream closes the previous one. The stream ends when the Bean disconnects;
+     * open a new one after reconnecting to keep streaming.
+     *
+     * @param capacity  The maximum number of bytes buffered
+     * @param policy    What to do with data that arrives while the buffer is full
+     * @return          The stream
+     */
+    public SerialInputStream openSerialInputStream(int capacity,
+                                                   SerialInputStream.OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (policy == null) {
+            throw new NullPointerException("Overflow policy cannot be null");
+        }
+        SerialInputStream stream = new SerialInputStream(this, capacity, policy);
+        SerialInputStream previous;
+        synchronized (this) {
+            previous = serialInputStream;
+            serialInputStream = stream;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+        connectionModes.update(SystemClock.elapsedRealtime());
+        return stream;
+    }
+
+    /**
+     * <p>
+     * Receive {@link BeanListener#onScratchValueChanged(ScratchBank, byte[])} events for scratch
+     * banks. All banks are enabled by default; this re-enables banks left out with
+     * {@link #setScratchNotificationBanks(ScratchBank...)}.
+     *
+     * </p><p>
+     *
+     * Banks stay enabled for the lifetime of this Bean object and are enabled again each time it
+     * connects.
+     * </p>
+     *
+     * @param banks The banks to watch
+     */
+    public void enableScratchNotifications(ScratchBank... banks) {
+        synchronized (scratchSubscriptions) {
+            Collections.addAll(scratchSubscriptions, banks);
+        }
+        if (isConnected()) {
+            subscribeScratchBanks();
+        }
+    }
+
+    /**
+     * Choose the scratch banks that are subscribed to when the Bean connects. Apps that never
+     * watch some banks can leave them out so connecting doesn't spend time subscribing to them;
+     * pass no banks to skip scratch notifications entirely. Banks that are already subscribed
+     * stay subscribed until the Bean disconnects.
+     *
+     * @param banks The banks to watch
+     */
+    public void setScratchNotificationBanks(ScratchBank... banks) {
+        synchronized (scratchSubscriptions) {
+            scratchSubscriptions.clear();
+            Collections.addAll(scratchSubscriptions, banks);
+        }
+        if (isConnected()) {
+            subscribeScratchBanks();
+        }
+    }
+
+    /**
+     * Let {@link #readScratchData(ScratchBank, Callback)} answer banks without notifications
+     * from their last known value, if it was received or written recently enough. The default,
+     * 0, always reads such banks from the Bean.
+     *
+     * @param maxAgeMillis How old a value may be, in ms
+     */
+    public void setScratchCacheMaxAge(int maxAgeMillis) {
+        scratchMaxAge = maxAgeMillis;
+    }
+
+    /**
+     * Get a scratch bank's change counter. It goes up each time the bank is seen with a
+     * different value, through notifications, reads or writes from this app.
+     *
+     * @param bank  The bank
+     * @return      The version, 0 if the bank's value has never been known
+     */
+    public long getScratchVersion(ScratchBank bank) {
+        return scratchMirror.getVersion(bank);
+    }
+
+    /**
+     * Wait for a scratch bank to change. Notifications for the bank are enabled if they aren't
+     * already. See {@link #awaitScratchChange(ScratchBank, long, int, Callback)}.
+     *
+     * @param bank          The bank
+     * @param timeoutMillis How long to wait, in ms
+     * @param callback      Called with the new value, or with null if the timeout passes first
+     */
+    public void awaitScratchChange(ScratchBank bank, int timeoutMillis,
+                                   Callback<ScratchData> callback) {
+        awaitScratchChange(bank, scratchMirror.getVersion(bank), timeoutMillis, callback);
+    }
+
+    /**
+     * Wait for a scratch bank's version to go past a version from
+     * {@link #getScratchVersion(ScratchBank)}, so changes between calls aren't missed.
+     * Notifications for the bank are enabled if they aren't already.
+     *
+     * @param bank          The bank
+     * @param sinceVersion  The last version seen; if the bank is already past it, the callback
+     *                      is called right away
+     * @param timeoutMillis How long to wait, in ms
+     * @param callback      Called on the callback executor with the new value, or with null if
+     *                      the timeout passes first
+     */
+    public void awaitScratchChange(ScratchBank bank, long sinceVersion, int timeoutMillis,
+                                   final Callback<ScratchData> callback) {
+        enableScratchNotifications(bank);
+        scratchMirror.await(bank, sinceVersion, timeoutMillis, new Callback<ScratchData>() {
+            @Override
+            public void onResult(final ScratchData result) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Add a profile for a custom GATT service on this Bean. Register it before connecting; the
+     * profile is created when its service is discovered.
+     *
+     * @param serviceUuid   The UUID of the service the profile handles
+     * @param factory       Creates the profile
+     * @throws IllegalArgumentException if the service is one the SDK handles itself
+     */
+    public synchronized void registerProfile(UUID serviceUuid, ProfileFactory factory) {
+        // Checked here too, since without a client nothing else would catch it until connect()
+        if (GattClient.isBuiltInService(serviceUuid)) {
+            throw new IllegalArgumentException("Service is handled by the SDK: " + serviceUuid);
+        }
+        if (gattClient != null) {
+            gattClient.registerProfile(serviceUuid, factory);
+        }
+        customProfiles.put(serviceUuid, factory);
+    }
+
+    /**
+     * Get the profile that handles a GATT service, including profiles added with
+     * {@link #registerProfile(UUID, ProfileFactory)}.
+     *
+     * @param serviceUuid   The service UUID
+     * @return              The profile, or null if the Bean isn't connected or no profile handles
+     *                      the service
+     */
+    public BaseProfile getProfile(UUID serviceUuid) {
+        GattClient client = gattClient;
+        return client == null ? null : client.getProfile(serviceUuid);
+    }
+
+    /**
+     * Register a handler for messages with a custom or vendor-specific message ID, e.g. messages
+     * sent by a sketch that extends the Bean's message protocol. Handlers are called on the same
+     * thread as {@link BeanListener} callbacks.
+     *
+     * @param messageId The 16-bit message ID, without the response bit
+     * @param handler   The handler to call when a message with this ID is received
+     * @throws IllegalArgumentException if the ID is one of the Bean's own message IDs, or has the
+     *                                  response bit (0x0080) set
+     */
+    public void registerMessageHandler(int messageId, MessageHandler handler) {
+        checkCustomMessageId(messageId);
+        dispatcher.register(messageId, handler);
+    }
+
+    /**
+     * Remove a handler registered with {@link #registerMessageHandler(int, MessageHandler)}.
+     * Messages with this ID will be reported as {@link BeanError#UNKNOWN_MESSAGE_ID} again.
+     *
+     * @param messageId The 16-bit message ID
+     * @throws IllegalArgumentException if the ID is one of the Bean's own message IDs, or has the
+     *                                  response bit (0x0080) set
+     */
+    public void unregisterMessageHandler(int messageId) {
+        checkCustomMessageId(messageId);
+        dispatcher.unregister(messageId);
+    }
+
+    /**
+     * <p>
+     * Deliver serial messages from the Bean in batches instead of one at a time.
+     *
+     * </p><p>
+     *
+     * Messages are collected for up to <code>windowMillis</code> after the first message of a
+     * batch arrives, or until <code>maxBytes</code> of payload have been collected, and are then
+     * delivered together to {@link SerialBatchListener#onSerialMessagesReceived(java.util.List)}.
+     * While batching is enabled, {@link BeanListener#onSerialMessageReceived(byte[])} is not
+     * called. Any pending batch is delivered before
+     * {@link BeanListener#onDisconnected()}.
+     * </p>
+     *
+     * @param listener      The listener for batches, or null to go back to delivering messages
+     *                      one at a time
+     * @param windowMillis  Maximum time, in ms, a message waits in a batch
+     * @param maxBytes      Payload size, in bytes, at which a batch is delivered immediately
+     */
+    public void setSerialBatchListener(final SerialBatchListener listener, final int windowMillis,
+                                       final int maxBytes) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SerialBatcher oldBatcher;
+                SerialBatchListener oldListener = serialBatchListener;
+
+                handler.removeCallbacks(deliverSerialBatch);
+                synchronized (serialBatchLock) {
+                    oldBatcher = serialBatcher;
+                    serialBatchListener = listener;
+                    serialBatchWindow = windowMillis;
+                    serialBatcher = listener == null ? null : new SerialBatcher(maxBytes);
+                }
+
+                // Deliver whatever was collected under the old settings. It is unpublished, so
+                // nothing can be added to it after this drain.
+                if (oldBatcher != null && oldListener != null) {
+                    List<byte[]> messages = oldBatcher.drain();
+                    if (!messages.isEmpty()) {
+                        oldListener.onSerialMessagesReceived(messages);
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Set the Bean's security code.
      *
@@ -1008,41 +2016,59 @@ public class Bean implements Parcelable {
     /**
      * Read the device information (hardware, firmware and software version)
      *
-     * @param callback the callback for the result
+     * @param callback the callback for the result, called with null if the Bean isn't connected
+     *                 or disconnects before the versions are read
      */
     public void readDeviceInfo(final Callback<DeviceInfo> callback) {
-        gattClient.getDeviceProfile().getDeviceInfo(new DeviceInfoCallback() {
+        DeviceProfile profile = deviceProfile();
+        if (profile == null) {
+            resultNotConnected(callback);
+            return;
+        }
+        profile.getDeviceInfo(new DeviceInfoCallback() {
             @Override
             public void onDeviceInfo(DeviceInfo info) {
-                callback.onResult(info);
+                deliverResult(callback, info);
             }
         });
     }
 
     /**
-     * Read the Bean hardware version
+     * Read the Bean firmware version
      *
-     * @param callback the callback for the version string
+     * @param callback the callback for the version string, called with null if the Bean isn't
+     *                 connected or disconnects before it is read
      */
     public void readFirmwareVersion(final Callback<String> callback) {
-        gattClient.getDeviceProfile().getFirmwareVersion(new DeviceProfile.VersionCallback() {
+        DeviceProfile profile = deviceProfile();
+        if (profile == null) {
+            resultNotConnected(callback);
+            return;
+        }
+        profile.getFirmwareVersion(new DeviceProfile.VersionCallback() {
             @Override
             public void onComplete(String version) {
-                callback.onResult(version);
+                deliverResult(callback, version);
             }
         });
     }
 
     /**
-     * Read Bean firmware version
+     * Read Bean hardware version
      *
-     * @param callback the callback for the version string
+     * @param callback the callback for the version string, called with null if the Bean isn't
+     *                 connected or disconnects before it is read
      */
     public void readHardwareVersion(final Callback<String> callback) {
-        gattClient.getDeviceProfile().getHardwareVersion(new DeviceProfile.VersionCallback() {
+        DeviceProfile profile = deviceProfile();
+        if (profile == null) {
+            resultNotConnected(callback);
+            return;
+        }
+        profile.getHardwareVersion(new DeviceProfile.VersionCallback() {
             @Override
             public void onComplete(String version) {
-                callback.onResult(version);
+                deliverResult(callback, version);
             }
         });
     }
@@ -1064,25 +2090,128 @@ public class Bean implements Parcelable {
      * @param callback the callback for the power state result: true if the Arduino is on
      */
     public void readArduinoPowerState(final Callback<Boolean> callback) {
-        addCallback(BeanMessageID.CC_GET_AR_POWER, callback);
-        sendMessageWithoutPayload(BeanMessageID.CC_GET_AR_POWER);
+        sendRequest(BeanMessageID.CC_GET_AR_POWER, null, callback);
     }
 
     /**
      * Read the battery level.
      *
      * @param callback the callback for the {@link com.punchthrough.bean.sdk.message.BatteryLevel}
-     *                 result
+     *                 result, or null if the Bean isn't connected
      */
     public void readBatteryLevel(final Callback<BatteryLevel> callback) {
-        gattClient.getBatteryProfile().getBatteryLevel(new BatteryLevelCallback() {
+        GattClient client = gattClient;
+        BatteryProfile profile = client == null ? null : client.getBatteryProfile();
+        if (profile == null || !profile.isReady()) {
+            resultNotConnected(callback);
+            return;
+        }
+        profile.getBatteryLevel(new BatteryLevelCallback() {
             @Override
             public void onBatteryLevel(int percentage) {
-                callback.onResult(new BatteryLevel(percentage));
+                deliverResult(callback, new BatteryLevel(percentage));
             }
         });
     }
 
+    /**
+     * <p>
+     * Take several readings at once. All reads are sent back to back without waiting for each
+     * other's results, and the callback is called once, with every result that arrived.
+     *
+     * </p><p>
+     *
+     * If some results haven't arrived after <code>timeoutMillis</code>, the callback gets a
+     * partial snapshot; {@link SensorSnapshot#getMissing()} lists what is missing.
+     * </p>
+     *
+     * @param readings      The readings to take
+     * @param timeoutMillis How long to wait for all results, in ms
+     * @param callback      Called with the snapshot, on the callback executor
+     */
+    public void readSensorSnapshot(Set<SensorSnapshot.Reading> readings, int timeoutMillis,
+                                   Callback<SensorSnapshot> callback) {
+        SensorSnapshotRequest request = new SensorSnapshotRequest(readings,
+                SystemClock.elapsedRealtime(), callbackExecutor, callback);
+        request.start(timeoutMillis, snapshotCleanup);
+
+        // The battery read goes first so it isn't queued behind the serial writes
+        if (readings.contains(SensorSnapshot.Reading.BATTERY)) {
+            readBatteryLevel(request.<BatteryLevel>collect(SensorSnapshot.Reading.BATTERY));
+        }
+        if (readings.contains(SensorSnapshot.Reading.LED)) {
+            readLed(request.<LedColor>collect(SensorSnapshot.Reading.LED));
+        }
+        if (readings.contains(SensorSnapshot.Reading.TEMPERATURE)) {
+            readTemperature(request.<Integer>collect(SensorSnapshot.Reading.TEMPERATURE));
+        }
+        if (readings.contains(SensorSnapshot.Reading.ACCELERATION)) {
+            readAcceleration(request.<Acceleration>collect(SensorSnapshot.Reading.ACCELERATION));
+        }
+        if (readings.contains(SensorSnapshot.Reading.ACCELEROMETER_RANGE)) {
+            readAccelerometerRange(request.<AccelerometerRange>collect(
+                    SensorSnapshot.Reading.ACCELEROMETER_RANGE));
+        }
+        if (readings.contains(SensorSnapshot.Reading.ARDUINO_POWER)) {
+            readArduinoPowerState(request.<Boolean>collect(SensorSnapshot.Reading.ARDUINO_POWER));
+        }
+        if (readings.contains(SensorSnapshot.Reading.RADIO_CONFIG)) {
+            readRadioConfig(request.<RadioConfig>collect(SensorSnapshot.Reading.RADIO_CONFIG));
+        }
+        if (readings.contains(SensorSnapshot.Reading.REMOTE_RSSI)) {
+            readRemoteRssi(request.<Integer>collect(SensorSnapshot.Reading.REMOTE_RSSI));
+        }
+    }
+
+    /**
+     * Take the reads of a timed out snapshot back out of {@link #beanCallbacks}, so replies that
+     * arrive late go to the next caller rather than the abandoned snapshot.
+     */
+    private final SensorSnapshotRequest.Cleanup snapshotCleanup =
+            new SensorSnapshotRequest.Cleanup() {
+        @Override
+        public void abandon(SensorSnapshot.Reading reading, Callback<?> callback) {
+            BeanMessageID type = snapshotMessageId(reading);
+            if (type != null) {
+                removeCallback(type, callback);
+            }
+        }
+    };
+
+    /**
+     * @param reading   A snapshot reading
+     * @return          The serial message that reads it, or null if it isn't read over serial
+     */
+    private static BeanMessageID snapshotMessageId(SensorSnapshot.Reading reading) {
+        switch (reading) {
+            case LED:
+                return BeanMessageID.CC_LED_READ_ALL;
+            case TEMPERATURE:
+                return BeanMessageID.CC_TEMP_READ;
+            case ACCELERATION:
+                return BeanMessageID.CC_ACCEL_READ;
+            case ACCELEROMETER_RANGE:
+                return BeanMessageID.CC_ACCEL_GET_RANGE;
+            case ARDUINO_POWER:
+                return BeanMessageID.CC_GET_AR_POWER;
+            case RADIO_CONFIG:
+                return BeanMessageID.BT_GET_CONFIG;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Take every reading a {@link SensorSnapshot} can include. See
+     * {@link #readSensorSnapshot(Set, int, Callback)}.
+     *
+     * @param timeoutMillis How long to wait for all results, in ms
+     * @param callback      Called with the snapshot, on the callback executor
+     */
+    public void readSensorSnapshot(int timeoutMillis, Callback<SensorSnapshot> callback) {
+        readSensorSnapshot(EnumSet.allOf(SensorSnapshot.Reading.class), timeoutMillis, callback);
+    }
+
     /**
      * End the Arduino's serial gate, allowing serial data from the Arduino to be read by the
      * connected Android client.
@@ -1104,7 +2233,24 @@ public class Bean implements Parcelable {
      * @param onProgress    Called with progress while the sketch upload is occurring
      * @param onComplete    Called when the sketch upload is complete
      */
-    public void programWithSketch(SketchHex hex, Callback<UploadProgress> onProgress, Runnable onComplete) {
+    public void programWithSketch(final SketchHex hex, final Callback<UploadProgress> onProgress,
+                                  final Runnable onComplete) {
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                startSketchUpload(hex, onProgress, onComplete);
+            }
+        });
+    }
+
+    /**
+     * Start a sketch upload. Runs on the event loop.
+     *
+     * @param hex           The sketch to be sent to the Bean
+     * @param onProgress    Called with progress while the sketch upload is occurring
+     * @param onComplete    Called when the sketch upload is complete
+     */
+    private void startSketchUpload(SketchHex hex, Callback<UploadProgress> onProgress, Runnable onComplete) {
 
         // Resetting client state means we have a clean state to start. Variables are cleared and
         // the state timeout timer will not fire during firmware uploads.
@@ -1129,6 +2275,7 @@ public class Bean implements Parcelable {
         }
 
         sendMessage(BeanMessageID.BL_CMD_START, payload);
+        connectionModes.update(SystemClock.elapsedRealtime());
 
     }
 
@@ -1137,14 +2284,69 @@ public class Bean implements Parcelable {
      *
      * @param bundle        The firmware package holding A and B images to be sent to the Bean
      * @param listener      OADListener to alert the client of OAD state
+     * @return              The approval for the update, or null if the Bean isn't connected, in
+     *                      which case the listener gets {@link BeanError#NOT_CONNECTED}
      */
     public OADProfile.OADApproval programWithFirmware(FirmwareBundle bundle, OADProfile.OADListener listener) {
-        return gattClient.getOADProfile().programWithFirmware(bundle, listener);
+        GattClient client = gattClient;
+        OADProfile profile = client == null ? null : client.getOADProfile();
+        if (profile == null) {
+            listener.error(BeanError.NOT_CONNECTED);
+            return null;
+        }
+        OADProfile.OADApproval approval = profile.programWithFirmware(bundle, listener);
+        connectionModes.update(SystemClock.elapsedRealtime());
+        return approval;
     }
 
-    public boolean firmwareUpdateInProgress() {
-        return gattClient.getOADProfile() != null && gattClient.getOADProfile().uploadInProgress();
+    /**
+     * <p>
+     * Let the SDK tune the connection for what the Bean is doing. This is on by default.
+     *
+     * </p><p>
+     *
+     * Sketch uploads, firmware updates, serial input streams and large serial writes use
+     * {@link ConnectionMode#BULK}, the fastest connection interval. Commands use
+     * {@link ConnectionMode#INTERACTIVE}, and the connection drops to {@link ConnectionMode#IDLE}
+     * to save power once nothing has been sent for a while. Modes are requested from the
+     * Bluetooth stack with <code>BluetoothGatt.requestConnectionPriority</code>, so they only take
+     * effect on Android 5.0 and later.
+     * </p>
+     *
+     * @param enabled true to switch modes automatically
+     */
+    public void setAutomaticConnectionMode(boolean enabled) {
+        automaticConnectionMode = enabled;
+        if (enabled && isConnected()) {
+            connectionModes.reset();
+            connectionModes.onActivity(SystemClock.elapsedRealtime());
+        }
+    }
 
+    /**
+     * Set how long the connection stays interactive after the last command before it switches
+     * to {@link ConnectionMode#IDLE}. The default is 5 seconds.
+     *
+     * @param millis The idle timeout, in ms
+     */
+    public void setConnectionIdleTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative: " + millis);
+        }
+        connectionModes.setIdleTimeout(millis);
+    }
+
+    /**
+     * @return The connection mode chosen for the current workload, or null if the Bean isn't
+     *         connected
+     */
+    public ConnectionMode getConnectionMode() {
+        return connectionModes.getMode();
+    }
+
+    public boolean firmwareUpdateInProgress() {
+        GattClient client = gattClient;
+        return client != null && client.oadInProgress();
     }
 
     /**
@@ -0,0 +1,44 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.punchthrough.bean.sdk;
+
+import java.util.List;
+
+/**
+ * Receives discovered Beans in periodic batches. Set one with
+ * {@link BeanManager#setDiscoveryBatchListener(BeanDiscoveryBatchListener, long)}.
+ */
+public interface BeanDiscoveryBatchListener {
+
+    /**
+     * Called with the Beans that were discovered, or whose signal strength changed, during one
+     * batch window. Not called for windows where nothing changed. Use
+     * {@link BeanManager#getSmoothedRssi(Bean)} for each Bean's current signal strength.
+     *
+     * @param beans the changed Beans, each listed once
+     */
+    public void onBeansChanged(List<Bean> beans);
+}
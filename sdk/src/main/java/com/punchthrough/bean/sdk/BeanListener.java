@@ -58,7 +58,9 @@ public interface BeanListener {
     public void onSerialMessageReceived(byte[] data);
 
     /**
-     * Called when one of the scratch characteristics of the Bean has updated its value.
+     * Called when one of the scratch characteristics of the Bean has updated its value. Called
+     * for every bank unless {@link Bean#setScratchNotificationBanks(ScratchBank...)} leaves it
+     * out.
      *
      * @param bank  the {@link com.punchthrough.bean.sdk.message.ScratchBank} that was updated
      * @param value the bank's new value
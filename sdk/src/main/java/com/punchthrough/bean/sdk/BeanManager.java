@@ -25,18 +25,33 @@
 package com.punchthrough.bean.sdk;
 
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothAdapter.LeScanCallback;
 import android.bluetooth.BluetoothDevice;
+import android.content.Context;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import com.punchthrough.bean.sdk.internal.ble.ConnectLimiter;
+import com.punchthrough.bean.sdk.internal.ble.GattLayoutCache;
+import com.punchthrough.bean.sdk.internal.device.DeviceInfoCache;
+import com.punchthrough.bean.sdk.internal.discovery.AdvertisementData;
+import com.punchthrough.bean.sdk.internal.discovery.AdvertisementParser;
+import com.punchthrough.bean.sdk.internal.discovery.DiscoveredBeans;
+import com.punchthrough.bean.sdk.internal.discovery.DiscoveryThrottle;
+import com.punchthrough.bean.sdk.internal.discovery.FilteredScanBackend;
+import com.punchthrough.bean.sdk.internal.discovery.LegacyScanBackend;
+import com.punchthrough.bean.sdk.internal.discovery.ScanBackend;
+import com.punchthrough.bean.sdk.internal.discovery.TelemetryStore;
+import com.punchthrough.bean.sdk.internal.utility.Scheduler;
+import com.punchthrough.bean.sdk.message.TelemetrySample;
+
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * Singleton object that provides an interface for discovery Beans.
@@ -48,51 +63,143 @@ public class BeanManager {
 
     // Constants
     private static final String TAG = "BeanManager";
-    private static final UUID BEAN_UUID = UUID.fromString("a495ff10-c5b1-4b44-b512-1370f02d74de");
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final long EVICTION_INTERVAL = 1000;  // ms
+    private static final int MAX_TELEMETRY_BEANS = 1024;
+    private static final int DEFAULT_MAX_DIRECT_CONNECTS = 3;
 
     // Dependencies
     private BluetoothAdapter btAdapter;
     private Handler mHandler = new Handler();
-    private BeanDiscoveryListener mListener;
+    private Executor mCallbackExecutor = CallbackExecutors.fromHandler(mHandler);
+    private volatile BeanDiscoveryListener mListener;  // Null during a listener-less scan
+    private volatile BeanDiscoveryBatchListener mBatchListener;
+    private long mBatchInterval;  // ms
+    private volatile TelemetryListener mTelemetryListener;
+    private volatile TelemetryStore mTelemetry;
     private int scanTimeout = 30;  // Seconds
+    private ScanMode mScanMode = ScanMode.BALANCED;
+    private long mReportDelay = 0;  // ms
+    private boolean mLegacyScanForced = false;
+    private ScanBackend mScanner;
 
     // Internal State
     private boolean mScanning = false;
-    private HashMap<String, Bean> mBeans = new HashMap<>(32);
+    private final DiscoveredBeans mBeans = new DiscoveredBeans(DEFAULT_CAPACITY, 0);
+    private volatile long mLastEviction = 0;
+    private final DiscoveryThrottle mThrottle = new DiscoveryThrottle(0, 0);
+    private ScheduledFuture<?> mBatchTask;
+
+    // Beans connected to by address without being discovered
+    private final ConcurrentHashMap<String, Bean> mAddressedBeans = new ConcurrentHashMap<>();
+    private final ConnectLimiter mDirectConnects = new ConnectLimiter(DEFAULT_MAX_DIRECT_CONNECTS);
+
+    // Reused for every advertisement; only touched from the scan callback
+    private final AdvertisementData mAdvertisement = new AdvertisementData();
 
     private BeanManager() {
         btAdapter = BluetoothAdapter.getDefaultAdapter();
     }
 
-    private final LeScanCallback mCallback = new LeScanCallback() {
+    private final DiscoveredBeans.BeanFactory mBeanFactory = new DiscoveredBeans.BeanFactory() {
+        @Override
+        public Bean create(BluetoothDevice device) {
+            // A Bean already connected to by address must not get a second, unconnected twin
+            Bean addressed = mAddressedBeans.get(device.getAddress());
+            return addressed != null ? addressed : new Bean(device);
+        }
+    };
+
+    private final ScanBackend.Listener mScanListener = new ScanBackend.Listener() {
         @Override
-        public void onLeScan(BluetoothDevice device, final int rssi, byte[] scanRecord) {
-            if (isBean(scanRecord)) {
+        public void onAdvertisement(BluetoothDevice device, final int rssi, byte[] scanRecord) {
+            boolean isBean = AdvertisementParser.parse(scanRecord, mAdvertisement);
+
+            if (mTelemetryListener != null && (isBean || mAdvertisement.isBeanBeacon())) {
+                recordTelemetry(device.getAddress(), rssi);
+            }
 
-                final Bean bean;
+            if (isBean) {
 
-                if (mBeans.containsKey(device.getAddress())) {
+                DiscoveredBeans.Entry known = mBeans.get(device.getAddress());
+                Bean updating = known != null
+                        ? known.getBean()
+                        : mAddressedBeans.get(device.getAddress());
+                if (updating != null && updating.firmwareUpdateInProgress()) {
                     // We already know about this bean
-                    bean = mBeans.get(device.getAddress());
-                    if (bean.firmwareUpdateInProgress()) {
-                        cancelDiscovery();
-                        bean.connect(bean.getLastKnownContext(), bean.getBeanListener());
-                    }
+                    Bean bean = updating;
+                    cancelDiscovery();
+                    bean.connect(bean.getLastKnownContext(), bean.getBeanListener());
+                }
 
-                } else {
-                    // New Bean
-                    bean = new Bean(device);
-                    mBeans.put(device.getAddress(), bean);
+                // Looking up the device name is an IPC, so only do it for new Beans. Known Beans
+                // are renamed from the advertised name, which is only decoded when it changes.
+                long now = SystemClock.elapsedRealtime();
+                String name = null;
+                if (known == null) {
+                    name = device.getName();
+                } else if (mAdvertisement.hasLocalName() &&
+                        !mAdvertisement.localNameEquals(known.getName())) {
+                    name = mAdvertisement.getLocalName();
                 }
+                DiscoveredBeans.Entry entry = mBeans.record(device.getAddress(), name, rssi, now,
+                        device, mBeanFactory);
 
-                mHandler.post(new Runnable() {
+                if (now - mLastEviction > EVICTION_INTERVAL) {
+                    mLastEviction = now;
+                    mBeans.evict(now);
+                }
+
+                if (!mThrottle.shouldReport(entry, now)) {
+                    return;
+                }
+                if (mBatchListener != null) {
+                    mThrottle.markChanged(entry);
+                }
+
+                final BeanDiscoveryListener listener = mListener;
+                if (listener == null) {
+                    return;
+                }
+                final Bean bean = entry.getBean();
+                final int reportedRssi = mThrottle.isDisabled() ? rssi : entry.getSmoothedRssi();
+                mCallbackExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
-                        mListener.onBeanDiscovered(bean, rssi);
+                        listener.onBeanDiscovered(bean, reportedRssi);
                     }
                 });
             }
         }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mScanning) {
+                        return;
+                    }
+                    if (mScanner instanceof FilteredScanBackend) {
+                        // Some controllers can't filter; scan for everything instead
+                        Log.w(TAG, "Filtered scan failed, falling back to legacy scan");
+                        mScanner.stop();
+                        mScanner = new LegacyScanBackend(btAdapter);
+                        if (mScanner.start(mScanListener)) {
+                            return;
+                        }
+                    }
+                    cancelDiscovery();
+                }
+            });
+        }
+    };
+
+    private final Runnable mBatchFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushBatch();
+        }
     };
 
     private Runnable scanTimeoutCallback = new Runnable() {
@@ -110,8 +217,16 @@ public class BeanManager {
      */
     private boolean scan() {
 
-        if (btAdapter.startLeScan(mCallback)) {
+        if (FilteredScanBackend.isSupported() && !mLegacyScanForced) {
+            mScanner = new FilteredScanBackend(btAdapter, mScanMode, mReportDelay,
+                    mTelemetryListener != null);
+        } else {
+            mScanner = new LegacyScanBackend(btAdapter);
+        }
+
+        if (mScanner.start(mScanListener)) {
             mScanning = true;
+            startBatching();
             Log.i(TAG, "BLE scan started successfully");
 
             if (mHandler.postDelayed(scanTimeoutCallback, scanTimeout * 1000)) {
@@ -137,6 +252,237 @@ public class BeanManager {
         Log.i(TAG, String.format("New scan timeout set: %d seconds", scanTimeout));
     }
 
+    /**
+     * Set the scan mode used by discoveries started after this call. Ignored before Android 5.0.
+     * The default is {@link ScanMode#BALANCED}.
+     *
+     * @param mode The scan mode
+     */
+    public void setScanMode(ScanMode mode) {
+        if (mode == null) {
+            throw new NullPointerException("Scan mode cannot be null");
+        }
+        mScanMode = mode;
+    }
+
+    /**
+     * Let the Bluetooth controller hold advertisements and report them in batches, so the app is
+     * woken less often. Discovery events are delayed by up to this long. Applies to discoveries
+     * started after this call, and is ignored if the controller can't batch results. Advertisements
+     * still held when discovery stops are not reported. The default is 0, which reports each
+     * advertisement as it arrives.
+     *
+     * @param millis The longest time results may be held, in ms
+     */
+    public void setScanReportDelay(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Report delay cannot be negative: " + millis);
+        }
+        mReportDelay = millis;
+    }
+
+    /**
+     * Scan with the pre-Android 5.0 API even when a newer one is available. The legacy scan
+     * reports every nearby device and filters Beans in the app, which uses more power but works
+     * around controllers with broken hardware filtering.
+     *
+     * @param forced true to always use the legacy scan
+     */
+    public void setLegacyScanForced(boolean forced) {
+        mLegacyScanForced = forced;
+    }
+
+    /**
+     * <p>
+     * Limit how often {@link BeanDiscoveryListener#onBeanDiscovered(Bean, int)} is called for
+     * Beans that are already known.
+     *
+     * </p><p>
+     *
+     * A Bean is always reported the first time it is seen. After that, it is reported at most
+     * once every <code>minIntervalMillis</code>, and only if its smoothed signal strength has
+     * changed by at least <code>rssiThreshold</code> dBm since it was last reported. While
+     * throttling is on, the reported RSSI is the smoothed value rather than the raw reading.
+     * Throttling is off, and every advertisement is reported, when both values are 0 (the
+     * default).
+     * </p>
+     *
+     * @param minIntervalMillis Shortest time between reports for one Bean, in ms
+     * @param rssiThreshold     Smallest signal strength change, in dBm, worth reporting again
+     */
+    public void setDiscoveryThrottle(long minIntervalMillis, int rssiThreshold) {
+        mThrottle.set(minIntervalMillis, rssiThreshold);
+    }
+
+    /**
+     * Receive discovered Beans in batches, in addition to the individual
+     * {@link BeanDiscoveryListener} events. Every <code>windowMillis</code> during discovery, the
+     * Beans reported in that window are delivered together, each listed once. Beans filtered out by
+     * {@link #setDiscoveryThrottle(long, int)} are not included. The last batch is delivered before
+     * {@link BeanDiscoveryListener#onDiscoveryComplete()}.
+     *
+     * @param listener      The batch listener, or null to stop batching
+     * @param windowMillis  How often batches are delivered, in ms
+     */
+    public void setDiscoveryBatchListener(BeanDiscoveryBatchListener listener, long windowMillis) {
+        if (listener != null && windowMillis <= 0) {
+            throw new IllegalArgumentException("Batch window must be positive: " + windowMillis);
+        }
+        stopBatching();
+        mBatchListener = listener;
+        mBatchInterval = windowMillis;
+        if (mScanning) {
+            startBatching();
+        }
+    }
+
+    /**
+     * <p>
+     * Decode telemetry from Bean advertisements without connecting. While a discovery is running,
+     * each advertisement that carries iBeacon fields or manufacturer data is passed to the
+     * listener and added to the Bean's history, which can be read with
+     * {@link #getTelemetry(String)}.
+     *
+     * </p><p>
+     *
+     * Beans in iBeacon mode don't advertise the Bean service, so they are only reported when
+     * telemetry is on. Set the listener before starting discovery so the scan includes them.
+     * </p>
+     *
+     * @param listener          The telemetry listener, or null to stop decoding telemetry and
+     *                          clear the history
+     * @param samplesPerBean    How many recent samples to keep for each Bean
+     */
+    public void setTelemetryListener(TelemetryListener listener, int samplesPerBean) {
+        if (listener == null) {
+            mTelemetryListener = null;
+            mTelemetry = null;
+            return;
+        }
+        TelemetryStore store = mTelemetry;
+        if (store == null || store.getSamplesPerDevice() != samplesPerBean) {
+            mTelemetry = new TelemetryStore(samplesPerBean, MAX_TELEMETRY_BEANS);
+        }
+        mTelemetryListener = listener;
+    }
+
+    /**
+     * Get the recent telemetry samples from a Bean.
+     *
+     * @param address   The Bean's Bluetooth address
+     * @return          The samples, oldest first; empty if telemetry is off or none were received
+     */
+    public List<TelemetrySample> getTelemetry(String address) {
+        TelemetryStore store = mTelemetry;
+        return store == null ? Collections.<TelemetrySample>emptyList() : store.get(address);
+    }
+
+    /**
+     * <p>
+     * Remember the GATT layout of each Bean connected to, so reconnecting is faster.
+     *
+     * </p><p>
+     *
+     * Normally, every connection clears Android's cached copy of the Bean's GATT table and
+     * discovers it again. With the cache on, a Bean whose layout is known skips that, and bonded
+     * Beans also skip rewriting their notification settings. The layout is checked after each
+     * connection, and is forgotten if it changed, if the Bean reports new firmware, or when a
+     * firmware update starts. Layouts are stored in the app's private preferences.
+     * </p>
+     *
+     * @param context   Any context from the app
+     * @param enabled   true to use the cache
+     */
+    public void setGattLayoutCacheEnabled(Context context, boolean enabled) {
+        if (enabled) {
+            GattLayoutCache.enable(context);
+        } else {
+            GattLayoutCache.disable();
+        }
+    }
+
+    /**
+     * <p>
+     * Remember each Bean's hardware, software and firmware versions, so
+     * {@link Bean#readDeviceInfo}, {@link Bean#readFirmwareVersion} and
+     * {@link Bean#readHardwareVersion} don't read them over the air again. Firmware update checks
+     * always read the firmware version from the Bean.
+     *
+     * </p><p>
+     *
+     * Versions are forgotten when a firmware update starts or finishes, when a version read from
+     * the Bean differs from the stored one, and when the layout cache
+     * (see {@link #setGattLayoutCacheEnabled(Context, boolean)}) finds that a Bean's GATT layout
+     * changed. Versions are stored in the app's private preferences.
+     * </p>
+     *
+     * @param context   Any context from the app
+     * @param enabled   true to use the cache
+     */
+    public void setDeviceInfoCacheEnabled(Context context, boolean enabled) {
+        if (enabled) {
+            DeviceInfoCache.enable(context);
+        } else {
+            DeviceInfoCache.disable();
+        }
+    }
+
+    /**
+     * <p>
+     * Connect to a Bean by its Bluetooth address, without discovering it first. This is useful
+     * when the addresses of the Beans to use are already known, e.g. saved from an earlier
+     * discovery.
+     *
+     * </p><p>
+     *
+     * A discovered Bean with this address is reused. Otherwise a Bean is created, and later calls
+     * with the same address, and discoveries that find it, return it. At most {@link #setMaxDirectConnects(int)} direct connects
+     * run at once; others wait their turn.
+     * </p>
+     *
+     * @param context   The Android context
+     * @param address   The Bean's Bluetooth address, e.g. "00:11:22:AA:BB:CC"
+     * @param policy    How to connect
+     * @param listener  The Bean listener
+     * @return          The Bean being connected to
+     * @throws IllegalArgumentException if the address isn't a valid Bluetooth address
+     */
+    public Bean connectToAddress(Context context, String address, ConnectionPolicy policy,
+                                 BeanListener listener) {
+        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+            throw new IllegalArgumentException("Invalid Bluetooth address: " + address);
+        }
+
+        Bean bean;
+        DiscoveredBeans.Entry entry = mBeans.get(address);
+        if (entry != null) {
+            bean = entry.getBean();
+        } else {
+            bean = mAddressedBeans.get(address);
+            if (bean == null) {
+                Bean created = new Bean(btAdapter.getRemoteDevice(address));
+                bean = mAddressedBeans.putIfAbsent(address, created);
+                if (bean == null) {
+                    bean = created;
+                }
+            }
+        }
+
+        new AddressConnection(bean, context, policy, listener, mDirectConnects).start();
+        return bean;
+    }
+
+    /**
+     * Set how many direct connects started by
+     * {@link #connectToAddress(Context, String, ConnectionPolicy, BeanListener)} may run at once.
+     * A slot is held until the connection succeeds or fails. The default is 3.
+     *
+     * @param max The most direct connects at once
+     */
+    public void setMaxDirectConnects(int max) {
+        mDirectConnects.setLimit(max);
+    }
+
     /**
      * Get the shared {@link BeanManager} instance.
      *
@@ -154,6 +500,22 @@ public class BeanManager {
         return mHandler;
     }
 
+    /**
+     * Choose the thread that {@link BeanDiscoveryListener} events are delivered on. By default
+     * they are delivered on the thread that first called {@link #getInstance()}.
+     *
+     * See {@link CallbackExecutors} for common choices, including delivering directly on the
+     * Bluetooth scan callback thread.
+     *
+     * @param executor The executor to deliver discovery events on
+     */
+    public void setCallbackExecutor(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+        mCallbackExecutor = executor;
+    }
+
     /**
      * Start discovering nearby Beans. If a discovery is in progress, it will be canceled. A
      * discovery will run for a limited time after which
@@ -173,7 +535,9 @@ public class BeanManager {
     }
 
     /**
-     * Start discovering nearby Beans using an existing BeanListener.
+     * Start discovering nearby Beans without a listener. Nothing is reported; the scan only
+     * reconnects Beans that are in the middle of a firmware update. Works whether or not
+     * {@link #startDiscovery(BeanDiscoveryListener)} was called before.
      *
      * Currently this function is only used by OADProfile to start scanning after
      * the Bean disconnects during the OAD process.
@@ -184,10 +548,7 @@ public class BeanManager {
             return true;
         }
 
-        if (mListener == null) {
-            throw new NullPointerException("Listener cannot be null");
-        }
-
+        mListener = null;
         return scan();
     }
 
@@ -199,97 +560,178 @@ public class BeanManager {
 
         if (mScanning) {
             Log.i(TAG, "Cancelling discovery process");
-            BluetoothAdapter.getDefaultAdapter().stopLeScan(mCallback);
+            mScanner.stop();
             mScanning = false;
-            boolean success = mHandler.post(new Runnable() {
+            stopBatching();
+            final BeanDiscoveryListener listener = mListener;
+            if (listener == null) {
+                return;
+            }
+            mCallbackExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    mListener.onDiscoveryComplete();
+                    listener.onDiscoveryComplete();
                 }
             });
-            if (!success) {
-                Log.e(TAG, "Failed to post Discovery Complete callback!");
-            }
         } else {
             Log.e(TAG, "No discovery in progress");
         }
     }
 
     /**
-     * Return the Beans found since the last scan started.
+     * Return the Beans that have been discovered and not yet forgotten or evicted. The collection
+     * is a snapshot shared with other callers and can't be modified.
      *
      * @return a collection of Beans found
      */
     public Collection<Bean> getBeans() {
-        return new ArrayList<>(mBeans.values());
+        mBeans.evict(SystemClock.elapsedRealtime());
+        return mBeans.beans();
     }
 
     /**
-     * Clear the Beans that this BeanManager has discovered.
+     * Return the discovered Beans whose advertised name starts with a prefix.
+     *
+     * @param prefix    The name prefix, case sensitive
+     * @return          The matching Beans
      */
-    public void forgetBeans() {
-        mBeans.clear();
+    public List<Bean> getBeansWithNamePrefix(String prefix) {
+        mBeans.evict(SystemClock.elapsedRealtime());
+        return beansOf(mBeans.withNamePrefix(prefix));
     }
 
     /**
-     * Determines if a {@link android.bluetooth.BluetoothDevice} is a Bean based on its scan record
-     * value.
+     * Return the discovered Beans whose smoothed signal strength is at least a threshold.
      *
-     * @param scanRecord    The scanRecord provided by
-     *                      {@link android.bluetooth.BluetoothAdapter.LeScanCallback}
-     * @return              true if device is a Bean
+     * @param minRssi   The minimum RSSI, in dBm
+     * @return          The matching Beans
      */
-    private boolean isBean(byte[] scanRecord) {
-        List<UUID> uuids = parseUUIDs(scanRecord);
-        return uuids.contains(BEAN_UUID);
-    }
-
-    private List<UUID> parseUUIDs(final byte[] advertisedData) {
-        List<UUID> uuids = new ArrayList<>();
-
-        int offset = 0;
-        while (offset < (advertisedData.length - 2)) {
-            int len = advertisedData[offset++];
-            if (len == 0)
-                break;
-
-            int type = advertisedData[offset++];
-            switch (type) {
-                case 0x02: // Partial list of 16-bit UUIDs
-                case 0x03: // Complete list of 16-bit UUIDs
-                    while (len > 1) {
-                        int uuid16 = advertisedData[offset++];
-                        uuid16 += (advertisedData[offset++] << 8);
-                        len -= 2;
-                        uuids.add(UUID.fromString(String.format(
-                                "%08x-0000-1000-8000-00805f9b34fb", uuid16)));
-                    }
-                    break;
-                case 0x06:// Partial list of 128-bit UUIDs
-                case 0x07:// Complete list of 128-bit UUIDs
-                    // Loop through the advertised 128-bit UUID's.
-                    while (len >= 16) {
-                        try {
-                            // Wrap the advertised bits and order them.
-                            ByteBuffer buffer = ByteBuffer.wrap(advertisedData,
-                                    offset++, 16).order(ByteOrder.LITTLE_ENDIAN);
-                            long mostSignificantBit = buffer.getLong();
-                            long leastSignificantBit = buffer.getLong();
-                            uuids.add(new UUID(leastSignificantBit,
-                                    mostSignificantBit));
-                        } finally {
-                            // Move the offset to read the next uuid.
-                            offset += 15;
-                            len -= 16;
-                        }
-                    }
-                    break;
-                default:
-                    offset += (len - 1);
-                    break;
+    public List<Bean> getBeansWithRssiAtLeast(int minRssi) {
+        mBeans.evict(SystemClock.elapsedRealtime());
+        return beansOf(mBeans.withRssiAtLeast(minRssi));
+    }
+
+    /**
+     * Return the discovered Beans that advertised recently.
+     *
+     * @param millis    How far back to look, in ms
+     * @return          The Beans seen in the last <code>millis</code> ms
+     */
+    public List<Bean> getBeansSeenWithin(long millis) {
+        long now = SystemClock.elapsedRealtime();
+        mBeans.evict(now);
+        return beansOf(mBeans.seenSince(now - millis));
+    }
+
+    /**
+     * Get the smoothed signal strength of a discovered Bean.
+     *
+     * @param bean  The Bean
+     * @return      The moving average of the Bean's advertisement RSSI, in dBm, or null if the
+     *              Bean isn't in the discovered set
+     */
+    public Integer getSmoothedRssi(Bean bean) {
+        DiscoveredBeans.Entry entry = mBeans.get(bean.getDevice().getAddress());
+        return entry == null ? null : entry.getSmoothedRssi();
+    }
+
+    /**
+     * Set the maximum number of discovered Beans kept. When more are found, the least recently
+     * seen Beans are forgotten first. Connected Beans are never forgotten. The default is 256.
+     *
+     * @param capacity The maximum number of Beans
+     */
+    public void setDiscoveredBeanCapacity(int capacity) {
+        mBeans.setCapacity(capacity);
+    }
+
+    /**
+     * Set how long a discovered Bean is kept after its last advertisement. Connected Beans are
+     * never forgotten. By default Beans are kept until they are evicted for space.
+     *
+     * @param millis The time to keep Beans, in ms, or 0 to keep them indefinitely
+     */
+    public void setDiscoveredBeanTtl(long millis) {
+        mBeans.setTtl(millis);
+    }
+
+    /**
+     * Clear the Beans that this BeanManager has discovered, and Beans connected to by address
+     * that are not connected now.
+     */
+    public void forgetBeans() {
+        mBeans.clear();
+        for (Bean bean : mAddressedBeans.values()) {
+            if (!bean.isConnected()) {
+                mAddressedBeans.remove(bean.getDevice().getAddress(), bean);
+            }
+        }
+    }
+
+    private void recordTelemetry(final String address, int rssi) {
+        TelemetryStore store = mTelemetry;
+        final TelemetryListener listener = mTelemetryListener;
+        if (store == null || listener == null) {
+            return;
+        }
+
+        AdvertisementData ad = mAdvertisement;
+        final TelemetrySample sample;
+        if (ad.isBeanBeacon()) {
+            sample = TelemetrySample.create(SystemClock.elapsedRealtime(), rssi,
+                    ad.getBeaconMajor(), ad.getBeaconMinor(), ad.getManufacturerId(), new byte[0]);
+        } else if (ad.getManufacturerId() != AdvertisementData.NO_MANUFACTURER) {
+            sample = TelemetrySample.create(SystemClock.elapsedRealtime(), rssi,
+                    TelemetrySample.NO_BEACON, TelemetrySample.NO_BEACON, ad.getManufacturerId(),
+                    ad.copyManufacturerData());
+        } else {
+            return;
+        }
+        store.add(address, sample);
+
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onTelemetryReceived(address, sample);
             }
+        });
+    }
+
+    private synchronized void startBatching() {
+        if (mBatchListener != null && mBatchTask == null) {
+            mThrottle.drainChanged();
+            mBatchTask = Scheduler.scheduleAtFixedRate(mBatchFlush, mBatchInterval, mBatchInterval);
+        }
+    }
+
+    private synchronized void stopBatching() {
+        if (mBatchTask != null) {
+            Scheduler.cancel(mBatchTask);
+            mBatchTask = null;
+            flushBatch();
         }
+    }
 
-        return uuids;
+    private void flushBatch() {
+        final BeanDiscoveryBatchListener listener = mBatchListener;
+        List<DiscoveredBeans.Entry> changed = mThrottle.drainChanged();
+        if (listener == null || changed.isEmpty()) {
+            return;
+        }
+        final List<Bean> beans = beansOf(changed);
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onBeansChanged(beans);
+            }
+        });
+    }
+
+    private static List<Bean> beansOf(List<DiscoveredBeans.Entry> entries) {
+        List<Bean> beans = new ArrayList<>(entries.size());
+        for (DiscoveredBeans.Entry entry : entries) {
+            beans.add(entry.getBean());
+        }
+        return beans;
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.punchthrough.bean.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executors that can be passed to {@link Bean#setCallbackExecutor(Executor)} and
+ * {@link BeanManager#setCallbackExecutor(Executor)} to choose the thread that listeners and
+ * callbacks are called on.
+ */
+public final class CallbackExecutors {
+
+    private static final String TAG = "CallbackExecutors";
+
+    private static Executor mainThread;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private CallbackExecutors() {}
+
+    /**
+     * Deliver callbacks on the main (UI) thread. This is the default.
+     *
+     * @return An executor that posts to the main Looper
+     */
+    public static synchronized Executor mainThread() {
+        if (mainThread == null) {
+            mainThread = fromHandler(new Handler(Looper.getMainLooper()));
+        }
+        return mainThread;
+    }
+
+    /**
+     * Deliver callbacks directly on the thread that produced them. Serial messages and other
+     * results decoded from serial data arrive on the Bean's event loop thread; GATT results, such
+     * as version reads and scratch notifications, arrive on the Bluetooth (Binder) callback
+     * thread. Callbacks must return quickly and must not block, or they will hold up
+     * communication with the Bean.
+     *
+     * @return An executor that runs callbacks immediately on the calling thread
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Deliver callbacks on the thread of a given {@link android.os.Handler}, e.g. a
+     * {@link android.os.HandlerThread} owned by a background service.
+     *
+     * @param handler   The Handler to post callbacks to
+     * @return          An executor that posts to the Handler
+     */
+    public static Executor fromHandler(final Handler handler) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!handler.post(command)) {
+                    Log.e(TAG, "Failed to post callback, Looper is exiting");
+                }
+            }
+        };
+    }
+}
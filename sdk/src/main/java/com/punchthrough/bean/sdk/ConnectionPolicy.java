@@ -0,0 +1,51 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.punchthrough.bean.sdk;
+
+/**
+ * How {@link BeanManager#connectToAddress(android.content.Context, String, ConnectionPolicy,
+ * BeanListener)} connects to a Bean.
+ */
+public enum ConnectionPolicy {
+
+    /**
+     * Connect directly. Fastest when the Bean is in range, but fails if it isn't found within
+     * about 30 seconds. Direct connects count against
+     * {@link BeanManager#setMaxDirectConnects(int)}.
+     */
+    DIRECT,
+
+    /**
+     * Let the Bluetooth stack connect in the background whenever the Bean comes into range. Never
+     * times out, but can take longer to connect.
+     */
+    AUTO,
+
+    /**
+     * Try a direct connection first, and fall back to a background connection if it fails.
+     */
+    DIRECT_THEN_AUTO
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.punchthrough.bean.sdk;
+
+import android.os.SystemClock;
+
+import com.punchthrough.bean.sdk.internal.sampling.SamplingPlan;
+import com.punchthrough.bean.sdk.internal.utility.Scheduler;
+import com.punchthrough.bean.sdk.message.Callback;
+import com.punchthrough.bean.sdk.message.SamplingStats;
+import com.punchthrough.bean.sdk.message.SensorSnapshot;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * <p>
+ * Polls readings from connected Beans at set rates, in place of a polling loop per reading.
+ *
+ * </p><p>
+ *
+ * Periods are rounded up to a multiple of the scheduler's tick, and readings are taken at
+ * multiples of their period, so readings with related periods are due at the same time. All
+ * readings due from a Bean are taken together with {@link Bean#readSensorSnapshot}, which sends
+ * them back to back instead of each poll queueing on the radio separately.
+ *
+ * </p><p>
+ *
+ * Each Bean has at most one batch of reads outstanding. Readings that fall due while it is still
+ * waiting are dropped rather than queued, and a batch is given up on after the shortest period of
+ * the Bean's readings, or half a second if that is shorter, which leaves time for a serial round
+ * trip at slow connection intervals. {@link #getStats(Bean, SensorSnapshot.Reading)} reports the rate actually
+ * achieved and how many samples were dropped.
+ * </p>
+ */
+public class SamplingScheduler {
+
+    private static final int DEFAULT_TICK_MILLIS = 100;
+
+    // Shortest time a batch is waited for; a serial request and its reply take several
+    // connection events, which can be 100 ms apart or more
+    private static final int MIN_BATCH_TIMEOUT_MILLIS = 500;
+
+    /**
+     * Receives samples from a {@link SamplingScheduler}.
+     */
+    public static interface SampleListener {
+        /**
+         * Called with the readings taken from a Bean in one batch, on the Bean's callback
+         * executor. Readings that didn't arrive in time are null.
+         *
+         * @param bean      The Bean
+         * @param snapshot  The readings
+         */
+        public void onSample(Bean bean, SensorSnapshot snapshot);
+    }
+
+    private final SamplingPlan<Bean> plan;
+    private final SampleListener listener;
+
+    // Only started or stopped with "this" held, together with the plan change that calls for it
+    private ScheduledFuture<?> ticker;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    /**
+     * @param listener Receives the samples
+     */
+    public SamplingScheduler(SampleListener listener) {
+        this(listener, DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * @param listener      Receives the samples
+     * @param tickMillis    How often to check for due readings, in ms. Periods are rounded up
+     *                      to a multiple of this.
+     */
+    public SamplingScheduler(SampleListener listener, int tickMillis) {
+        this.listener = listener;
+        this.plan = new SamplingPlan<>(tickMillis);
+    }
+
+    /**
+     * Sample a reading from a Bean periodically, replacing any earlier rate for it. Readings are
+     * only taken while the Bean is connected.
+     *
+     * @param bean          The Bean
+     * @param reading       The reading
+     * @param periodMillis  The time between samples, in ms
+     * @return              The period that will be used, after rounding up to the tick
+     */
+    public long sample(Bean bean, SensorSnapshot.Reading reading, int periodMillis) {
+        long period;
+        synchronized (this) {
+            period = plan.set(bean, reading, periodMillis, SystemClock.elapsedRealtime());
+            if (ticker == null) {
+                ticker = Scheduler.scheduleAtFixedRate(tick, plan.getTickMillis(),
+                        plan.getTickMillis());
+            }
+        }
+        return period;
+    }
+
+    /**
+     * Stop sampling a reading from a Bean.
+     *
+     * @param bean      The Bean
+     * @param reading   The reading
+     */
+    public void stopSampling(Bean bean, SensorSnapshot.Reading reading) {
+        plan.remove(bean, reading);
+    }
+
+    /**
+     * Stop sampling every reading from a Bean.
+     *
+     * @param bean The Bean
+     */
+    public void stopSampling(Bean bean) {
+        plan.remove(bean);
+    }
+
+    /**
+     * Stop sampling everything.
+     */
+    public synchronized void stopAll() {
+        for (Bean bean : plan.getDevices()) {
+            plan.remove(bean);
+        }
+        stopTicker();
+    }
+
+    /**
+     * @param bean      The Bean
+     * @param reading   The reading
+     * @return          How sampling the reading is going, or null if it isn't being sampled
+     */
+    public SamplingStats getStats(Bean bean, SensorSnapshot.Reading reading) {
+        return plan.getStats(bean, reading);
+    }
+
+    private void tick() {
+        synchronized (this) {
+            if (plan.isEmpty()) {
+                stopTicker();
+                return;
+            }
+        }
+        long now = SystemClock.elapsedRealtime();
+        for (Map.Entry<Bean, EnumSet<SensorSnapshot.Reading>> due : plan.due(now).entrySet()) {
+            final Bean bean = due.getKey();
+            if (!bean.isConnected()) {
+                plan.completed(bean, null, now);
+                continue;
+            }
+            int timeout = (int) Math.max(plan.shortestPeriod(bean), MIN_BATCH_TIMEOUT_MILLIS);
+            bean.readSensorSnapshot(due.getValue(), timeout, new Callback<SensorSnapshot>() {
+                @Override
+                public void onResult(SensorSnapshot result) {
+                    plan.completed(bean, result, SystemClock.elapsedRealtime());
+                    listener.onSample(bean, result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Must be called with "this" held.
+     */
+    private void stopTicker() {
+        Scheduler.cancel(ticker);
+        ticker = null;
+    }
+}
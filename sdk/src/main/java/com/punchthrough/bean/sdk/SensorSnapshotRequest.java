@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.punchthrough.bean.sdk;
+
+import android.util.Log;
+
+import com.punchthrough.bean.sdk.internal.utility.Scheduler;
+import com.punchthrough.bean.sdk.message.AccelerometerRange;
+import com.punchthrough.bean.sdk.message.Acceleration;
+import com.punchthrough.bean.sdk.message.BatteryLevel;
+import com.punchthrough.bean.sdk.message.Callback;
+import com.punchthrough.bean.sdk.message.LedColor;
+import com.punchthrough.bean.sdk.message.RadioConfig;
+import com.punchthrough.bean.sdk.message.SensorSnapshot;
+import com.punchthrough.bean.sdk.message.SensorSnapshot.Reading;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Collects the results of the reads behind {@link Bean#readSensorSnapshot} and delivers one
+ * {@link SensorSnapshot} when they have all arrived or the timeout passes, whichever is first.
+ * Results arriving after that are dropped, and the callbacks still waiting for them are handed to
+ * a {@link Cleanup} so they don't take replies meant for later reads.
+ */
+class SensorSnapshotRequest {
+
+    private static final String TAG = "SensorSnapshotRequest";
+
+    private final SensorSnapshot.Builder builder;
+    private final Executor executor;
+    private final Callback<SensorSnapshot> callback;
+    private final Map<Reading, Callback<?>> pending = new EnumMap<>(Reading.class);
+    private ScheduledFuture<?> timeout;
+    private boolean done = false;
+
+    SensorSnapshotRequest(Set<Reading> readings, long now, Executor executor,
+                          Callback<SensorSnapshot> callback) {
+        this.builder = new SensorSnapshot.Builder(readings, now);
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    /**
+     * Start the timeout. Call before sending the reads, in case they are answered right away.
+     *
+     * @param timeoutMillis How long to wait for all results
+     */
+    void start(long timeoutMillis) {
+        start(timeoutMillis, null);
+    }
+
+    /**
+     * Start the timeout. Call before sending the reads, in case they are answered right away.
+     *
+     * @param timeoutMillis How long to wait for all results
+     * @param cleanup       Given the callbacks still waiting when the timeout passes, or null
+     */
+    synchronized void start(long timeoutMillis, final Cleanup cleanup) {
+        timeout = Scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                SensorSnapshot snapshot;
+                List<Map.Entry<Reading, Callback<?>>> abandoned;
+                synchronized (SensorSnapshotRequest.this) {
+                    if (done) {
+                        return;
+                    }
+                    done = true;
+                    snapshot = builder.build();
+                    abandoned = new ArrayList<>(pending.entrySet());
+                    pending.clear();
+                }
+                Log.w(TAG, "Snapshot timed out, missing " + snapshot.getMissing());
+                if (cleanup != null) {
+                    for (Map.Entry<Reading, Callback<?>> entry : abandoned) {
+                        cleanup.abandon(entry.getKey(), entry.getValue());
+                    }
+                }
+                deliver(snapshot);
+            }
+        }, timeoutMillis);
+    }
+
+    /**
+     * @param reading   The reading a result is for
+     * @param <T>       The result type for the reading
+     * @return          A callback that adds the result to the snapshot
+     */
+    <T> Callback<T> collect(final Reading reading) {
+        Callback<T> collector = new Callback<T>() {
+            @Override
+            public void onResult(T result) {
+                record(reading, result);
+            }
+        };
+        synchronized (this) {
+            if (!done) {
+                pending.put(reading, collector);
+            }
+        }
+        return collector;
+    }
+
+    private void record(Reading reading, Object value) {
+        SensorSnapshot snapshot = null;
+        synchronized (this) {
+            pending.remove(reading);
+            // A null result means the reading couldn't be taken; it stays missing
+            if (done || value == null) {
+                return;
+            }
+            switch (reading) {
+                case LED:
+                    builder.led((LedColor) value);
+                    break;
+                case TEMPERATURE:
+                    builder.temperature((Integer) value);
+                    break;
+                case ACCELERATION:
+                    builder.acceleration((Acceleration) value);
+                    break;
+                case ACCELEROMETER_RANGE:
+                    builder.accelerometerRange((AccelerometerRange) value);
+                    break;
+                case ARDUINO_POWER:
+                    builder.arduinoPowered((Boolean) value);
+                    break;
+                case BATTERY:
+                    builder.batteryLevel((BatteryLevel) value);
+                    break;
+                case RADIO_CONFIG:
+                    builder.radioConfig((RadioConfig) value);
+                    break;
+                case REMOTE_RSSI:
+                    builder.remoteRssi((Integer) value);
+                    break;
+            }
+            if (builder.isComplete()) {
+                done = true;
+                Scheduler.cancel(timeout);
+                snapshot = builder.build();
+            }
+        }
+        if (snapshot != null) {
+            deliver(snapshot);
+        }
+    }
+
+    /**
+     * Releases the callbacks of a timed out request.
+     */
+    interface Cleanup {
+        /**
+         * @param reading   The reading that didn't arrive
+         * @param callback  The callback that was waiting for it
+         */
+        void abandon(Reading reading, Callback<?> callback);
+    }
+
+    private void deliver(final SensorSnapshot snapshot) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(snapshot);
+            }
+        });
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.punchthrough.bean.sdk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * <p>
+ * Reads serial data from a Bean at the consumer's own pace. Open one with
+ * {@link Bean#openSerialInputStream(int, OverflowPolicy)}. The stream can be used as an
+ * {@link InputStream} or as an okio {@link Source}, e.g. wrapped with
+ * <code>Okio.buffer(stream)</code>.
+ *
+ * </p><p>
+ *
+ * Serial messages are appended to a bounded buffer as they arrive. Reads block until data is
+ * available, the read timeout set through {@link #timeout()} elapses, or the stream ends. The
+ * stream ends when the Bean disconnects or the stream is closed; buffered data can still be read
+ * after a disconnect.
+ * </p>
+ */
+public class SerialInputStream extends InputStream implements Source {
+
+    /**
+     * What to do when serial data arrives faster than it is read and the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest buffered data to make room for new data.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Keep the buffered data and discard new data that doesn't fit.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Discard new data and disconnect from the Bean.
+         */
+        DISCONNECT
+    }
+
+    private final Bean bean;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Object lock = new Object();
+    private final Buffer buffer = new Buffer();
+    private final InputStream bufferStream = buffer.inputStream();
+    private final Timeout timeout = new Timeout();
+
+    private long droppedBytes = 0;
+    private boolean ended = false;
+    private boolean closed = false;
+
+    /**
+     * Create a stream for a Bean. Streams are created by
+     * {@link Bean#openSerialInputStream(int, OverflowPolicy)}.
+     *
+     * @param bean      The Bean to read from
+     * @param capacity  The maximum number of bytes buffered
+     * @param policy    What to do when the buffer is full
+     */
+    SerialInputStream(Bean bean, int capacity, OverflowPolicy policy) {
+        this.bean = bean;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * @return The maximum number of bytes buffered
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The overflow policy of this stream
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The total number of bytes discarded because the buffer was full
+     */
+    public long getDroppedBytes() {
+        synchronized (lock) {
+            return droppedBytes;
+        }
+    }
+
+    /**
+     * The read timeout of this stream. For example, to fail reads that wait longer than half a
+     * second: <code>stream.timeout().timeout(500, TimeUnit.MILLISECONDS)</code>. Reads that time
+     * out throw {@link InterruptedIOException}. No timeout is set by default.
+     *
+     * @return The timeout
+     */
+    @Override
+    public Timeout timeout() {
+        return timeout;
+    }
+
+    @Override
+    public int available() throws IOException {
+        synchronized (lock) {
+            checkNotClosed();
+            return (int) buffer.size();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        synchronized (lock) {
+            if (!awaitData()) {
+                return -1;
+            }
+            return buffer.readByte() & 0xff;
+        }
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        synchronized (lock) {
+            if (!awaitData()) {
+                return -1;
+            }
+            return bufferStream.read(data, offset, length);
+        }
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        if (byteCount < 0) {
+            throw new IllegalArgumentException("byteCount < 0: " + byteCount);
+        }
+        synchronized (lock) {
+            if (!awaitData()) {
+                return -1;
+            }
+            return buffer.read(sink, byteCount);
+        }
+    }
+
+    /**
+     * Close the stream and discard buffered data. Serial data is delivered to
+     * {@link BeanListener#onSerialMessageReceived(byte[])} again once the stream is closed.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buffer.clear();
+            lock.notifyAll();
+        }
+        bean.onSerialInputStreamClosed(this);
+    }
+
+    /**
+     * Called by the Bean with the payload of each serial message. Runs on the connection's event
+     * loop, which also handles the serial transport, so it must not block.
+     *
+     * @param data      Array holding the payload
+     * @param offset    Index of the first payload byte
+     * @param length    Number of payload bytes
+     */
+    void receive(byte[] data, int offset, int length) {
+        boolean overflowed = false;
+        synchronized (lock) {
+            if (closed || ended) {
+                return;
+            }
+            long free = capacity - buffer.size();
+            if (length > free) {
+                switch (policy) {
+                    case DROP_OLDEST:
+                        if (length > capacity) {
+                            droppedBytes += length - capacity;
+                            offset += length - capacity;
+                            length = capacity;
+                        }
+                        long excess = length - free;
+                        buffer.skip(excess);
+                        droppedBytes += excess;
+                        break;
+                    case DROP_NEWEST:
+                        droppedBytes += length - free;
+                        length = (int) free;
+                        break;
+                    case DISCONNECT:
+                        droppedBytes += length;
+                        length = 0;
+                        overflowed = true;
+                        break;
+                }
+            }
+            if (length > 0) {
+                buffer.write(data, offset, length);
+                lock.notifyAll();
+            }
+        }
+        if (overflowed) {
+            bean.disconnect();
+        }
+    }
+
+    /**
+     * @return true until the stream is closed or the Bean disconnects
+     */
+    boolean isOpen() {
+        synchronized (lock) {
+            return !closed && !ended;
+        }
+    }
+
+    /**
+     * Called by the Bean when it disconnects. Buffered data can still be read, after which reads
+     * return end of stream.
+     */
+    void onDisconnected() {
+        synchronized (lock) {
+            ended = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until data is buffered or the stream ends. Must be called with the lock held.
+     *
+     * @return true if data is available, false at end of stream
+     * @throws InterruptedIOException if the read times out or the thread is interrupted
+     * @throws IOException if the stream is closed
+     */
+    private boolean awaitData() throws IOException {
+        long waitNanos = timeout.timeoutNanos();
+        long start = System.nanoTime();
+        if (timeout.hasDeadline()) {
+            long untilDeadline = timeout.deadlineNanoTime() - start;
+            waitNanos = waitNanos == 0 ? untilDeadline : Math.min(waitNanos, untilDeadline);
+        }
+        boolean limited = waitNanos != 0 || timeout.hasDeadline();
+
+        try {
+            while (buffer.size() == 0) {
+                checkNotClosed();
+                if (ended) {
+                    return false;
+                }
+                if (!limited) {
+                    lock.wait();
+                    continue;
+                }
+                long remaining = waitNanos - (System.nanoTime() - start);
+                if (remaining <= 0) {
+                    throw new InterruptedIOException("timeout");
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        }
+        return true;
+    }
+
+    private void checkNotClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.punchthrough.bean.sdk;
+
+import com.punchthrough.bean.sdk.internal.serial.GattSerialTransportProfile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Writes serial data to a Bean with flow control. Open one with
+ * {@link Bean#openSerialOutputStream(int)}.
+ *
+ * </p><p>
+ *
+ * Data is split into serial messages and queued for the Bean's serial transport. The stream keeps
+ * the amount of queued data under a fixed capacity: {@link #write(byte[], int, int)} blocks until
+ * the Bean has caught up, and {@link #tryWrite(byte[], int, int)} accepts only what fits right
+ * now. Don't call the blocking methods on the main thread.
+ * </p>
+ */
+public class SerialOutputStream extends OutputStream {
+
+    /**
+     * Largest payload sent in a single serial message. Longer writes are split.
+     */
+    public static final int MAX_MESSAGE_LENGTH = 64;
+
+    /**
+     * Queued bytes taken by a message with the largest payload: its ID, length header and CRC,
+     * plus one header byte per transport packet.
+     */
+    private static final int MAX_FRAMED_MESSAGE_LENGTH = framedLength(MAX_MESSAGE_LENGTH);
+
+    /**
+     * Receives flow control events for a {@link SerialOutputStream}. Events are delivered on the
+     * Bean's callback executor.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the stream fills up and can't accept more data until the Bean catches up.
+         */
+        public void onBufferFull();
+
+        /**
+         * Called when a full stream has drained to half its capacity and is accepting data again.
+         */
+        public void onDrained();
+
+        /**
+         * Called when all data written to the stream has been sent to the Bean.
+         */
+        public void onFlushed();
+    }
+
+    private final Bean bean;
+    private final int capacity;
+    private final Object lock = new Object();
+
+    private Listener listener;
+    private boolean full = false;
+    private boolean unflushed = false;
+    private boolean closed = false;
+    private boolean lost = false;
+
+    /**
+     * Create a stream for a Bean. Streams are created by {@link Bean#openSerialOutputStream(int)}.
+     *
+     * @param bean      The Bean to write to
+     * @param capacity  The maximum number of bytes, including transport framing, queued at once
+     */
+    SerialOutputStream(Bean bean, int capacity) {
+        this.bean = bean;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Set the listener that receives flow control events for this stream.
+     *
+     * @param listener The listener, or null to stop receiving events
+     */
+    public void setListener(Listener listener) {
+        synchronized (lock) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * @return The maximum number of bytes, including transport framing, queued at once
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * Write data to the Bean, blocking while the stream is full.
+     *
+     * @param data      The data to write
+     * @param offset    Index of the first byte to write
+     * @param length    Number of bytes to write
+     * @throws InterruptedIOException if the thread is interrupted while waiting for space
+     * @throws IOException if the stream is closed or the Bean disconnects
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkBounds(data, offset, length);
+        while (length > 0) {
+            int chunk = Math.min(length, MAX_MESSAGE_LENGTH);
+            synchronized (lock) {
+                while (!hasRoom()) {
+                    markFull();
+                    awaitProgress();
+                }
+                send(data, offset, chunk);
+            }
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Write as much data to the Bean as fits without blocking.
+     *
+     * @param data      The data to write
+     * @param offset    Index of the first byte to write
+     * @param length    Number of bytes to write
+     * @return          The number of bytes accepted. If less than <code>length</code>,
+     *                  {@link Listener#onDrained()} is called when there is room again.
+     * @throws IOException if the stream is closed or the Bean is not connected
+     */
+    public int tryWrite(byte[] data, int offset, int length) throws IOException {
+        checkBounds(data, offset, length);
+        int written = 0;
+        synchronized (lock) {
+            while (written < length) {
+                if (!hasRoom()) {
+                    markFull();
+                    break;
+                }
+                int chunk = Math.min(length - written, MAX_MESSAGE_LENGTH);
+                send(data, offset + written, chunk);
+                written += chunk;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Block until all data written to the stream has been sent to the Bean.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     * @throws IOException if the Bean disconnects before the data is sent
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            while (bean.getPendingSerialBytes() > 0) {
+                checkOpen();
+                awaitProgress();
+            }
+            if (lost) {
+                lost = false;
+                throw new IOException("Bean disconnected before all data was sent");
+            }
+        }
+    }
+
+    /**
+     * Close the stream. Data already written is still sent. Threads blocked in
+     * {@link #write(byte[], int, int)} or {@link #flush()} fail with an {@link IOException}.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Called by the Bean when the serial transport sends a packet or drops its queue.
+     *
+     * @param pendingBytes The number of bytes still queued in the transport
+     */
+    void onTransmitProgress(int pendingBytes) {
+        synchronized (lock) {
+            lock.notifyAll();
+            if (full && pendingBytes <= capacity / 2) {
+                full = false;
+                notifyListener(Event.DRAINED);
+            }
+            if (unflushed && pendingBytes == 0) {
+                unflushed = false;
+                notifyListener(Event.FLUSHED);
+            }
+        }
+    }
+
+    /**
+     * Called by the Bean when it disconnects. Queued data is dropped by the transport.
+     */
+    void onDisconnected() {
+        synchronized (lock) {
+            lost = unflushed;
+            unflushed = false;
+            full = false;
+            lock.notifyAll();
+        }
+    }
+
+    private enum Event { FULL, DRAINED, FLUSHED }
+
+    private boolean hasRoom() throws IOException {
+        checkOpen();
+        int pending = bean.getPendingSerialBytes();
+        // An empty queue always takes one message, however small the capacity
+        return pending == 0 || pending + MAX_FRAMED_MESSAGE_LENGTH <= capacity;
+    }
+
+    private static int framedLength(int payloadLength) {
+        int message = 2 + 2 + payloadLength + 2;
+        int packet = GattSerialTransportProfile.PACKET_TX_MAX_PAYLOAD_LENGTH;
+        return message + (message + packet - 1) / packet;
+    }
+
+    private void send(byte[] data, int offset, int length) {
+        bean.writeSerialData(data, offset, length);
+        unflushed = true;
+    }
+
+    private void markFull() {
+        if (!full) {
+            full = true;
+            notifyListener(Event.FULL);
+        }
+    }
+
+    private void awaitProgress() throws InterruptedIOException {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to Bean");
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        if (!bean.isConnected()) {
+            throw new IOException("Bean is not connected");
+        }
+    }
+
+    private void notifyListener(final Event event) {
+        final Listener l = listener;
+        if (l == null) {
+            return;
+        }
+        bean.deliverCallback(new Runnable() {
+            @Override
+            public void run() {
+                switch (event) {
+                    case FULL:
+                        l.onBufferFull();
+                        break;
+                    case DRAINED:
+                        l.onDrained();
+                        break;
+                    case FLUSHED:
+                        l.onFlushed();
+                        break;
+                }
+            }
+        });
+    }
+
+    private static void checkBounds(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+}
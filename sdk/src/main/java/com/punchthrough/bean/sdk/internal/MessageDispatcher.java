@@ -0,0 +1,104 @@
+package com.punchthrough.bean.sdk.internal;
+
+import com.punchthrough.bean.sdk.message.MessageHandler;
+
+import static com.punchthrough.bean.sdk.internal.Protocol.APP_MSG_RESPONSE_BIT;
+
+/**
+ * Routes messages received from the Bean to the {@link MessageHandler} registered for their ID.
+ *
+ * Message IDs are 16 bits wide, but only a handful of high bytes are in use. Handlers are kept in
+ * a two-level table indexed by the high and low byte of the ID, so lookups are two array reads and
+ * only the pages that hold handlers are allocated. The table is copied on write and published
+ * through a volatile field, so lookups for received messages don't take a lock.
+ */
+public class MessageDispatcher {
+
+    private static final int PAGE_SIZE = 256;
+
+    // Never modified once published; registration replaces it with a changed copy
+    private volatile MessageHandler[][] mPages = new MessageHandler[PAGE_SIZE][];
+
+    /**
+     * Read the message ID from the first two bytes of a raw message.
+     *
+     * @param data  Raw message bytes
+     * @return      The message ID with the response bit cleared
+     */
+    public static int messageId(byte[] data) {
+        return (((data[0] & 0xff) << 8) | (data[1] & 0xff)) & ~(APP_MSG_RESPONSE_BIT);
+    }
+
+    /**
+     * Register a handler for a message ID, replacing any handler already registered for it.
+     *
+     * @param messageId The 16-bit message ID, without the response bit
+     * @param handler   The handler to call for messages with this ID
+     * @throws IllegalArgumentException if the ID doesn't fit in 16 bits or has the response bit set
+     */
+    public synchronized void register(int messageId, MessageHandler handler) {
+        checkId(messageId);
+        put(messageId, handler);
+    }
+
+    /**
+     * Remove the handler registered for a message ID, if any.
+     *
+     * @param messageId The 16-bit message ID, without the response bit
+     * @throws IllegalArgumentException if the ID doesn't fit in 16 bits or has the response bit set
+     */
+    public synchronized void unregister(int messageId) {
+        checkId(messageId);
+        if (mPages[messageId >> 8] != null) {
+            put(messageId, null);
+        }
+    }
+
+    /**
+     * Find the handler registered for a message ID.
+     *
+     * @param messageId The 16-bit message ID
+     * @return          The handler, or null if none is registered
+     */
+    public MessageHandler handlerFor(int messageId) {
+        MessageHandler[] page = mPages[(messageId >> 8) & 0xff];
+        return page == null ? null : page[messageId & 0xff];
+    }
+
+    /**
+     * Dispatch a raw message to the handler registered for its ID.
+     *
+     * @param data  Raw message bytes, starting with the two-byte message ID
+     * @return      true if a handler was found and called, false otherwise
+     */
+    public boolean dispatch(byte[] data) {
+        int messageId = messageId(data);
+        MessageHandler handler = handlerFor(messageId);
+        if (handler == null) {
+            return false;
+        }
+        handler.onMessageReceived(messageId, data, 2, data.length - 2);
+        return true;
+    }
+
+    /**
+     * Publish a copy of the table with one entry changed. Must be called with "this" held.
+     */
+    private void put(int messageId, MessageHandler handler) {
+        int high = messageId >> 8;
+        MessageHandler[][] pages = mPages.clone();
+        pages[high] = pages[high] == null ? new MessageHandler[PAGE_SIZE] : pages[high].clone();
+        pages[high][messageId & 0xff] = handler;
+        mPages = pages;
+    }
+
+    private static void checkId(int messageId) {
+        if (messageId < 0 || messageId > 0xffff) {
+            throw new IllegalArgumentException("Message ID must fit in 16 bits: " + messageId);
+        }
+        if ((messageId & APP_MSG_RESPONSE_BIT) != 0) {
+            // Received IDs have the bit cleared, so a handler for this ID would never be called
+            throw new IllegalArgumentException("Message ID has the response bit set: " + messageId);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.punchthrough.bean.sdk.internal.battery;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.punchthrough.bean.sdk.internal.ble.BaseProfile;
@@ -18,7 +19,9 @@ public class BatteryProfile extends BaseProfile {
     protected static final String TAG = "BatteryProfile";
     protected boolean ready = false;
     private BluetoothGattService mBatteryService;
-    private BatteryLevelCallback mCallback;
+
+    // Callers waiting for the read in flight, which is only queued once for all of them
+    private final List<BatteryLevelCallback> mCallbacks = new ArrayList<>();
 
     public BatteryProfile(GattClient client) {
         super(client);
@@ -35,8 +38,18 @@ public class BatteryProfile extends BaseProfile {
         ready = true;
     }
 
+    @Override
+    public synchronized void onBeanDisconnected() {
+        mCallbacks.clear();
+    }
+
     public void getBatteryLevel(BatteryLevelCallback callback) {
-        mCallback = callback;
+        synchronized (this) {
+            mCallbacks.add(callback);
+            if (mCallbacks.size() > 1) {
+                return;
+            }
+        }
         for (BluetoothGattCharacteristic characteristic : mBatteryService.getCharacteristics()) {
             if (characteristic.getUuid().equals(Constants.UUID_BATTERY_CHARACTERISTIC)) {
                 mGattClient.readCharacteristic(characteristic);
@@ -44,19 +57,28 @@ public class BatteryProfile extends BaseProfile {
         }
     }
 
+    @Override
+    public boolean handlesCharacteristic(BluetoothGattCharacteristic characteristic) {
+        return characteristic.getUuid().equals(Constants.UUID_BATTERY_CHARACTERISTIC);
+    }
+
     @Override
     public void onCharacteristicRead(GattClient client, BluetoothGattCharacteristic characteristic) {
         if (characteristic.getUuid().equals(Constants.UUID_BATTERY_CHARACTERISTIC)) {
             byte[] value = characteristic.getValue();
-            if (mCallback != null) {
-                int percentage = value[0] & 0xff;
-                if (percentage > 100) {
-                    percentage = 100;
-                } else if (percentage < 0) {
-                    percentage = 0;
-                }
-                mCallback.onBatteryLevel(percentage);
-                mCallback = null;
+            List<BatteryLevelCallback> callbacks;
+            synchronized (this) {
+                callbacks = new ArrayList<>(mCallbacks);
+                mCallbacks.clear();
+            }
+            int percentage = value[0] & 0xff;
+            if (percentage > 100) {
+                percentage = 100;
+            } else if (percentage < 0) {
+                percentage = 0;
+            }
+            for (BatteryLevelCallback callback : callbacks) {
+                callback.onBatteryLevel(percentage);
             }
         }
     }
@@ -33,6 +33,18 @@ public class BaseProfile {
 
     public void onBeanConnectionFailed() {}
 
+    /**
+     * Tell {@link GattClient} whether this profile handles a characteristic. After service
+     * discovery, the client sends read, write and change events for a characteristic only to the
+     * profile that claims it. Events for unclaimed characteristics go to every profile.
+     *
+     * @param characteristic A characteristic found during service discovery
+     * @return true if this profile handles events for the characteristic
+     */
+    public boolean handlesCharacteristic(BluetoothGattCharacteristic characteristic) {
+        return false;
+    }
+
     public void onCharacteristicRead(GattClient client, BluetoothGattCharacteristic characteristic) {}
 
     public void onCharacteristicWrite(GattClient client, BluetoothGattCharacteristic characteristic) {}
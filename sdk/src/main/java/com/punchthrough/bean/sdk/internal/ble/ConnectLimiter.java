@@ -0,0 +1,85 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Limits how many connection attempts run at once. Attempts beyond the limit wait in order until
+ * a running attempt finishes.
+ */
+public class ConnectLimiter {
+
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int limit;
+    private int running = 0;
+
+    public ConnectLimiter(int limit) {
+        setLimit(limit);
+    }
+
+    /**
+     * Change the limit. Waiting attempts start if the new limit allows them.
+     *
+     * @param limit The most attempts to run at once
+     */
+    public void setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1: " + limit);
+        }
+        synchronized (this) {
+            this.limit = limit;
+        }
+        startWaiting();
+    }
+
+    /**
+     * Start an attempt now if the limit allows, or queue it. Every started attempt must call
+     * {@link #finish()} exactly once.
+     *
+     * @param attempt Starts the connection attempt
+     */
+    public void submit(Runnable attempt) {
+        synchronized (this) {
+            if (running >= limit) {
+                waiting.add(attempt);
+                return;
+            }
+            running++;
+        }
+        attempt.run();
+    }
+
+    /**
+     * Mark a running attempt as finished, and start the next waiting attempt.
+     */
+    public void finish() {
+        synchronized (this) {
+            if (running > 0) {
+                running--;
+            }
+        }
+        startWaiting();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private void startWaiting() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (running >= limit || waiting.isEmpty()) {
+                    return;
+                }
+                next = waiting.poll();
+                running++;
+            }
+            next.run();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import android.os.SystemClock;
+
+import com.punchthrough.bean.sdk.ConnectionMode;
+import com.punchthrough.bean.sdk.internal.utility.Scheduler;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Picks a {@link ConnectionMode} for a connection from its workload.
+ *
+ * The mode is {@link ConnectionMode#BULK} while the workload says a transfer is running,
+ * {@link ConnectionMode#INTERACTIVE} for a while after the last activity, and
+ * {@link ConnectionMode#IDLE} otherwise. The mode is re-checked on activity and by a timer, and
+ * the applier is only called when it changes. The timer is only moved when it has to fire
+ * sooner, so a stream of activity doesn't reschedule it for every message; a timer that fires
+ * early just re-arms itself for the remaining time.
+ */
+public class ConnectionModeController {
+
+    // How often a running transfer is checked for completion, in ms
+    private static final long BULK_RECHECK_INTERVAL = 1000;
+
+    private final Workload workload;
+    private final Applier applier;
+
+    // Guarded by this
+    private long idleTimeout;
+    private long lastActivity = Long.MIN_VALUE;
+    private ConnectionMode mode;
+    private ScheduledFuture<?> recheck;
+    private long recheckAt;
+
+    private final Runnable recheckTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ConnectionModeController.this) {
+                recheck = null;
+                update(SystemClock.elapsedRealtime());
+            }
+        }
+    };
+
+    /**
+     * @param workload      Tells the controller whether a transfer is running
+     * @param applier       Applies mode changes to the connection
+     * @param idleTimeout   How long after the last activity the connection becomes idle, in ms
+     */
+    public ConnectionModeController(Workload workload, Applier applier, long idleTimeout) {
+        this.workload = workload;
+        this.applier = applier;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return The mode last applied, or null if none has been applied since the last reset
+     */
+    public synchronized ConnectionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Record activity on the connection, e.g. a command being sent.
+     *
+     * @param now The current time, in ms
+     */
+    public synchronized void onActivity(long now) {
+        lastActivity = now;
+        update(now);
+    }
+
+    /**
+     * Re-check the mode, e.g. because a transfer started or ended.
+     *
+     * @param now The current time, in ms
+     */
+    public synchronized void update(long now) {
+        ConnectionMode target;
+        long recheckDelay;
+        if (workload.isBulk()) {
+            target = ConnectionMode.BULK;
+            recheckDelay = BULK_RECHECK_INTERVAL;
+        } else if (lastActivity != Long.MIN_VALUE && now - lastActivity < idleTimeout) {
+            target = ConnectionMode.INTERACTIVE;
+            recheckDelay = lastActivity + idleTimeout - now;
+        } else {
+            target = ConnectionMode.IDLE;
+            recheckDelay = -1;
+        }
+
+        long due = recheckDelay >= 0 ? now + recheckDelay : -1;
+        if (target != mode || recheck == null || due < 0 || due < recheckAt) {
+            Scheduler.cancel(recheck);
+            recheck = due >= 0 ? Scheduler.schedule(recheckTask, recheckDelay) : null;
+            recheckAt = due;
+        }
+
+        if (target != mode) {
+            mode = target;
+            applier.apply(target);
+        }
+    }
+
+    /**
+     * Forget the current mode and stop checking, e.g. after a disconnect.
+     */
+    public synchronized void reset() {
+        Scheduler.cancel(recheck);
+        recheck = null;
+        mode = null;
+        lastActivity = Long.MIN_VALUE;
+    }
+
+    public static interface Workload {
+
+        /**
+         * @return true while a transfer that needs the fastest connection is running
+         */
+        public boolean isBulk();
+    }
+
+    public static interface Applier {
+
+        /**
+         * Apply a new mode to the connection.
+         *
+         * @param mode The new mode
+         */
+        public void apply(ConnectionMode mode);
+    }
+}
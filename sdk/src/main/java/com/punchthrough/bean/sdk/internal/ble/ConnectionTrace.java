@@ -0,0 +1,269 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timeline of one connection attempt, from <code>connectGatt</code> until the Bean is ready or the
+ * attempt fails. Phases and queued GATT operations are recorded as spans with monotonic
+ * timestamps, and the whole attempt can be exported as Chrome trace-event JSON, which
+ * chrome://tracing and the Perfetto UI can open.
+ *
+ * Timestamps are passed in by the caller, in nanoseconds from a monotonic clock such as
+ * <code>SystemClock.elapsedRealtimeNanos()</code>. Recording stops once the attempt is finished
+ * or {@link #MAX_EVENTS} events have been recorded.
+ */
+public class ConnectionTrace {
+
+    /**
+     * Most events kept for one attempt
+     */
+    public static final int MAX_EVENTS = 256;
+
+    /**
+     * Returned by {@link #begin(String, String, long)} when a span wasn't recorded
+     */
+    public static final int NO_SPAN = -1;
+
+    public static final String CATEGORY_CONNECTION = "connection";
+    public static final String CATEGORY_PROFILE = "profile";
+    public static final String CATEGORY_GATT = "gatt";
+
+    // Chrome shows each tid as its own row; GATT operations get a row of their own
+    private static final int TID_CONNECTION = 1;
+    private static final int TID_GATT = 2;
+
+    private static class Event {
+        final String name;
+        final String category;
+        final long start;
+        long end = -1;
+        long queued = -1;
+
+        Event(String name, String category, long start) {
+            this.name = name;
+            this.category = category;
+            this.start = start;
+        }
+
+        boolean isInstant() {
+            return end == start;
+        }
+    }
+
+    private final String address;
+    private final boolean autoConnect;
+    private final long startNanos;
+    private final List<Event> events = new ArrayList<>();
+    private long endNanos = -1;
+    private String outcome;
+
+    /**
+     * @param address       The Bean's address
+     * @param autoConnect   Whether the attempt is a background connection
+     * @param now           When the attempt started
+     */
+    public ConnectionTrace(String address, boolean autoConnect, long now) {
+        this.address = address;
+        this.autoConnect = autoConnect;
+        this.startNanos = now;
+    }
+
+    /**
+     * Start a span.
+     *
+     * @param name      What the span measures
+     * @param category  One of the <code>CATEGORY_</code> constants
+     * @param now       The current time
+     * @return          An id for {@link #end(int, long)}, or {@link #NO_SPAN} if the trace is full
+     *                  or finished
+     */
+    public synchronized int begin(String name, String category, long now) {
+        if (endNanos >= 0 || events.size() >= MAX_EVENTS) {
+            return NO_SPAN;
+        }
+        events.add(new Event(name, category, now));
+        return events.size() - 1;
+    }
+
+    /**
+     * Start a span for a GATT operation that waited in the operation queue.
+     *
+     * @param name      The operation
+     * @param queuedAt  When the operation was queued
+     * @param now       When it started
+     * @return          An id for {@link #end(int, long)}, or {@link #NO_SPAN}
+     */
+    public synchronized int beginOperation(String name, long queuedAt, long now) {
+        int span = begin(name, CATEGORY_GATT, now);
+        if (span != NO_SPAN) {
+            events.get(span).queued = queuedAt;
+        }
+        return span;
+    }
+
+    /**
+     * End a span. Spans that were already ended are left alone.
+     *
+     * @param span  The id from {@link #begin(String, String, long)}
+     * @param now   The current time
+     */
+    public synchronized void end(int span, long now) {
+        if (span < 0 || span >= events.size()) {
+            return;
+        }
+        Event event = events.get(span);
+        if (event.end < 0) {
+            event.end = now;
+        }
+    }
+
+    /**
+     * Record something that happened at one point in time.
+     *
+     * @param name      What happened
+     * @param category  One of the <code>CATEGORY_</code> constants
+     * @param now       The current time
+     */
+    public synchronized void instant(String name, String category, long now) {
+        end(begin(name, category, now), now);
+    }
+
+    /**
+     * End the attempt. Open spans are ended now, and nothing more is recorded.
+     *
+     * @param outcome   How the attempt ended, e.g. "connected" or "failed"
+     * @param now       The current time
+     */
+    public synchronized void finish(String outcome, long now) {
+        if (endNanos >= 0) {
+            return;
+        }
+        for (Event event : events) {
+            if (event.end < 0) {
+                event.end = now;
+            }
+        }
+        this.outcome = outcome;
+        this.endNanos = now;
+    }
+
+    public synchronized boolean isFinished() {
+        return endNanos >= 0;
+    }
+
+    /**
+     * @return How the attempt ended, or null if it hasn't
+     */
+    public synchronized String getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return Length of the attempt in nanoseconds, or -1 if it hasn't finished
+     */
+    public synchronized long getDurationNanos() {
+        return endNanos < 0 ? -1 : endNanos - startNanos;
+    }
+
+    /**
+     * Add up the time spent in spans with a name.
+     *
+     * @param name  The span name
+     * @return      Total nanoseconds in ended spans with that name
+     */
+    public synchronized long getTotalNanos(String name) {
+        long total = 0;
+        for (Event event : events) {
+            if (event.end >= 0 && event.name.equals(name)) {
+                total += event.end - event.start;
+            }
+        }
+        return total;
+    }
+
+    public synchronized int getEventCount() {
+        return events.size();
+    }
+
+    /**
+     * Export the attempt as a Chrome trace-event JSON object. Timestamps are in microseconds of
+     * the monotonic clock, so traces of several attempts line up when merged. Spans still open
+     * are exported as begin events.
+     *
+     * @return The JSON text
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder(128 + events.size() * 96);
+        json.append("{\"traceEvents\":[");
+        appendMetadata(json, "process_name", 0, address);
+        json.append(',');
+        appendMetadata(json, "thread_name", TID_CONNECTION, "connection");
+        json.append(',');
+        appendMetadata(json, "thread_name", TID_GATT, "gatt operations");
+
+        json.append(",{\"name\":\"attempt\",\"cat\":\"").append(CATEGORY_CONNECTION).append('"');
+        if (endNanos >= 0) {
+            json.append(",\"ph\":\"X\",\"ts\":").append(micros(startNanos))
+                    .append(",\"dur\":").append(micros(endNanos - startNanos));
+        } else {
+            json.append(",\"ph\":\"B\",\"ts\":").append(micros(startNanos));
+        }
+        json.append(",\"pid\":0,\"tid\":").append(TID_CONNECTION)
+                .append(",\"args\":{\"autoConnect\":").append(autoConnect);
+        if (outcome != null) {
+            json.append(",\"outcome\":");
+            appendString(json, outcome);
+        }
+        json.append("}}");
+
+        for (Event event : events) {
+            int tid = CATEGORY_GATT.equals(event.category) ? TID_GATT : TID_CONNECTION;
+            json.append(",{\"name\":");
+            appendString(json, event.name);
+            json.append(",\"cat\":\"").append(event.category).append('"');
+            if (event.isInstant()) {
+                json.append(",\"ph\":\"i\",\"s\":\"t\",\"ts\":").append(micros(event.start));
+            } else if (event.end < 0) {
+                json.append(",\"ph\":\"B\",\"ts\":").append(micros(event.start));
+            } else {
+                json.append(",\"ph\":\"X\",\"ts\":").append(micros(event.start))
+                        .append(",\"dur\":").append(micros(event.end - event.start));
+            }
+            json.append(",\"pid\":0,\"tid\":").append(tid);
+            if (event.queued >= 0) {
+                json.append(",\"args\":{\"queuedUs\":")
+                        .append(micros(event.start - event.queued)).append('}');
+            }
+            json.append('}');
+        }
+        json.append("],\"displayTimeUnit\":\"ms\"}");
+        return json.toString();
+    }
+
+    private static void appendMetadata(StringBuilder json, String kind, int tid, String name) {
+        json.append("{\"name\":\"").append(kind).append("\",\"ph\":\"M\",\"pid\":0,\"tid\":")
+                .append(tid).append(",\"args\":{\"name\":");
+        appendString(json, name);
+        json.append("}}");
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+}
@@ -6,24 +6,33 @@ import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.punchthrough.bean.sdk.ConnectionMode;
 import com.punchthrough.bean.sdk.internal.battery.BatteryProfile;
+import com.punchthrough.bean.sdk.internal.device.DeviceInfoCache;
 import com.punchthrough.bean.sdk.internal.device.DeviceProfile;
-import com.punchthrough.bean.sdk.internal.exception.UnimplementedProfileException;
 import com.punchthrough.bean.sdk.internal.scratch.ScratchProfile;
 import com.punchthrough.bean.sdk.internal.serial.GattSerialTransportProfile;
 import com.punchthrough.bean.sdk.internal.upload.firmware.OADProfile;
 import com.punchthrough.bean.sdk.internal.utility.Constants;
+import com.punchthrough.bean.sdk.internal.utility.EventLoop;
 import com.punchthrough.bean.sdk.internal.utility.Watchdog;
 
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -34,15 +43,26 @@ public class GattClient {
 
     private static final String TAG = "GattClient";
 
+    // Services whose profiles are built into the SDK and can't be replaced
+    private static final List<UUID> BUILT_IN_SERVICES = Arrays.asList(
+            Constants.UUID_SERIAL_SERVICE,
+            Constants.UUID_DEVICE_INFO_SERVICE,
+            Constants.UUID_BATTERY_SERVICE,
+            Constants.UUID_SCRATCH_SERVICE,
+            Constants.UUID_OAD_SERVICE
+    );
+
     // Profiles
-    private final GattSerialTransportProfile mSerialProfile;
-    private final DeviceProfile mDeviceProfile;
-    private final BatteryProfile mBatteryProfile;
-    private final OADProfile mOADProfile;
-    private final ScratchProfile mScratchProfile;
-    private List<BaseProfile> mProfiles = new ArrayList<>(10);
+    private final ProfileRegistry mRegistry = new ProfileRegistry(this);
+    private final List<BaseProfile> mProfiles = mRegistry.profiles();
+
+    // Characteristic instances, found during service discovery, mapped to the profile that
+    // handles them. Replaced as a whole, never modified.
+    private volatile Map<BluetoothGattCharacteristic, BaseProfile> mRoutes =
+            new IdentityHashMap<>();
 
     // Internal dependencies
+    private final EventLoop mEventLoop;
     private BluetoothGatt mGatt;
     private ConnectionListener connectionListener;
     private BluetoothDevice device;
@@ -50,36 +70,77 @@ public class GattClient {
     // Internal state
     private Queue<Runnable> mOperationsQueue = new ArrayDeque<>(32);
     private boolean mOperationInProgress = false;
-    private boolean mConnected = false;
+    private volatile boolean mConnected = false;
+
+    // Signature of the layout this Bean had last time, if the layout cache knows it. While set,
+    // Android's GATT table cache is trusted instead of being refreshed on connect. Set by the
+    // connecting thread and read in GATT callbacks.
+    private volatile String mExpectedLayout;
+    private volatile boolean mLayoutVerified = false;
+
+    // Characteristics with notifications enabled on this connection
+    private final Set<BluetoothGattCharacteristic> mSubscribed =
+            Collections.newSetFromMap(new IdentityHashMap<BluetoothGattCharacteristic, Boolean>());
+
+    // Timeline of the connection attempt in progress, null once it has finished
+    private volatile ConnectionTrace mTrace;
+    private volatile ConnectionTrace mLastTrace;
+    private int mConnectSpan = ConnectionTrace.NO_SPAN;
+    private int mDiscoverySpan = ConnectionTrace.NO_SPAN;
+    private int mOperationSpan = ConnectionTrace.NO_SPAN;
 
     public GattClient(Handler handler, BluetoothDevice device) {
+        this(handler, device, new EventLoop());
+    }
+
+    /**
+     * @param handler   Handler for the connection's delayed tasks
+     * @param device    The device to connect to
+     * @param eventLoop The event loop that owns the connection's transport state
+     */
+    public GattClient(final Handler handler, BluetoothDevice device, EventLoop eventLoop) {
         this.device = device;
-        mSerialProfile = new GattSerialTransportProfile(this, handler);
-        mDeviceProfile = new DeviceProfile(this);
-        mBatteryProfile = new BatteryProfile(this);
-        mOADProfile = new OADProfile(this, new Watchdog(handler));
-        mScratchProfile = new ScratchProfile(this);
-        mProfiles.add(mSerialProfile);
-        mProfiles.add(mDeviceProfile);
-        mProfiles.add(mBatteryProfile);
-        mProfiles.add(mScratchProfile);
-        mProfiles.add(mOADProfile);
-    }
-
-    private BaseProfile profileForUUID(UUID uuid) throws UnimplementedProfileException {
-        if (uuid.equals(Constants.UUID_OAD_SERVICE)) {
-            return mOADProfile;
-        } else if (uuid.equals(Constants.UUID_SERIAL_SERVICE)) {
-            return mSerialProfile;
-        } else if (uuid.equals(Constants.UUID_BATTERY_SERVICE)) {
-            return mBatteryProfile;
-        } else if (uuid.equals(Constants.UUID_SCRATCH_SERVICE)) {
-            return mScratchProfile;
-        } else if (uuid.equals(Constants.UUID_DEVICE_INFO_SERVICE)) {
-            return mDeviceProfile;
-        } else {
-            throw new UnimplementedProfileException("No profile with UUID: " + uuid.toString());
-        }
+        this.mEventLoop = eventLoop;
+        mRegistry.register(Constants.UUID_SERIAL_SERVICE, new ProfileFactory() {
+            @Override
+            public BaseProfile create(GattClient client) {
+                return new GattSerialTransportProfile(client, mEventLoop);
+            }
+        });
+        mRegistry.register(Constants.UUID_DEVICE_INFO_SERVICE, new ProfileFactory() {
+            @Override
+            public BaseProfile create(GattClient client) {
+                return new DeviceProfile(client);
+            }
+        });
+        mRegistry.register(Constants.UUID_BATTERY_SERVICE, new ProfileFactory() {
+            @Override
+            public BaseProfile create(GattClient client) {
+                return new BatteryProfile(client);
+            }
+        });
+        mRegistry.register(Constants.UUID_SCRATCH_SERVICE, new ProfileFactory() {
+            @Override
+            public BaseProfile create(GattClient client) {
+                return new ScratchProfile(client);
+            }
+        });
+        mRegistry.register(Constants.UUID_OAD_SERVICE, new ProfileFactory() {
+            @Override
+            public BaseProfile create(GattClient client) {
+                return new OADProfile(client, new Watchdog(handler));
+            }
+        });
+    }
+
+    /**
+     * Check for an OAD update without creating the OAD profile.
+     *
+     * @return true if the OAD profile exists and is uploading firmware
+     */
+    public boolean oadInProgress() {
+        OADProfile oad = (OADProfile) mRegistry.peek(Constants.UUID_OAD_SERVICE);
+        return oad != null && oad.uploadInProgress();
     }
 
     /**
@@ -115,9 +176,16 @@ public class GattClient {
 
         @Override
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            ConnectionTrace trace = mTrace;
+            if (trace != null) {
+                trace.end(mConnectSpan, now());
+                trace.instant("onConnectionStateChange " + status + "/" + newState,
+                        ConnectionTrace.CATEGORY_CONNECTION, now());
+            }
 
             if (status != BluetoothGatt.GATT_SUCCESS) {
-                if (getOADProfile().uploadInProgress()) {
+                finishTrace("failed");
+                if (oadInProgress()) {
                     // Since an OAD update is currently in progress, only alert the OAD Profile
                     // of the Bean disconnecting, not the ConnectionListener(s)
                     getOADProfile().onBeanConnectionFailed();
@@ -135,13 +203,18 @@ public class GattClient {
                 // Bean is connected, before alerting the ConnectionListener(s), we must
                 // discover available services (lookup GATT table).
                 Log.i(TAG, "Discovering Services!");
-                mGatt.discoverServices();
+                startDiscovery();
             }
 
             if (newState == BluetoothGatt.STATE_DISCONNECTED) {
+                finishTrace("disconnected");
                 mOperationsQueue.clear();
                 mOperationInProgress = false;
                 mConnected = false;
+                mRoutes = new IdentityHashMap<>();
+                synchronized (mSubscribed) {
+                    mSubscribed.clear();
+                }
                 connectionListener.onDisconnected();
                 for (BaseProfile profile : mProfiles) {
                     profile.onBeanDisconnected();
@@ -151,13 +224,22 @@ public class GattClient {
 
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            ConnectionTrace trace = mTrace;
+            if (trace != null) {
+                trace.end(mDiscoverySpan, now());
+            }
 
             if (status != BluetoothGatt.GATT_SUCCESS) {
                 Log.e(TAG, "Failed to discover services!");
+                finishTrace("discovery failed");
                 disconnect();
             } else {
                 Log.i(TAG, "Service discovery complete!");
 
+                if (!checkLayout()) {
+                    return;
+                }
+
                 for (BaseProfile profile : mProfiles) {
                     profile.clearReady();
                 }
@@ -166,18 +248,27 @@ public class GattClient {
                 // that may be necessary such as looking up available characteristics.
                 Log.i(TAG, "Starting to setup each available profile!");
                 for (BluetoothGattService service : mGatt.getServices()) {
-                    try {
-                        BaseProfile profile = profileForUUID(service.getUuid());
+                    BaseProfile profile = mRegistry.get(service.getUuid());
+                    if (profile != null) {
+                        int span = trace == null ? ConnectionTrace.NO_SPAN : trace.begin(
+                                "onProfileReady " + profile.getName(),
+                                ConnectionTrace.CATEGORY_PROFILE, now());
                         profile.onProfileReady();
+                        if (trace != null) {
+                            trace.end(span, now());
+                        }
                         Log.i(TAG, "Profile ready: " + profile.getName());
-                    } catch (UnimplementedProfileException e) {
-                        Log.e(TAG, "No profile with UUID: " + service.getUuid().toString());
+                    } else {
+                        Log.i(TAG, "No profile with UUID: " + service.getUuid().toString());
                     }
                 }
 
-                if (mOADProfile.uploadInProgress()) {
+                buildRoutes();
+
+                if (oadInProgress()) {
                     Log.i(TAG, "OAD In progress, continuing OAD process without calling ConnectionListener.onConnected()");
-                    mOADProfile.continueOAD();
+                    finishTrace("resumed OAD");
+                    getOADProfile().continueOAD();
                 } else {
 
                     for (BaseProfile profile : mProfiles) {
@@ -186,6 +277,7 @@ public class GattClient {
                         }
                     }
 
+                    finishTrace("connected");
                     connectionListener.onConnected();
                 }
             }
@@ -247,13 +339,55 @@ public class GattClient {
         }
     };
 
+    /**
+     * Compare the discovered layout with the one in the layout cache, if it is enabled.
+     *
+     * @return false if Android's cached GATT table was stale and discovery was restarted
+     */
+    private boolean checkLayout() {
+        GattLayoutCache cache = GattLayoutCache.shared();
+        mLayoutVerified = false;
+        if (cache == null) {
+            return true;
+        }
+
+        String signature = GattLayoutCache.signature(mGatt.getServices());
+        if (mExpectedLayout != null && !mExpectedLayout.equals(signature)) {
+            Log.i(TAG, "GATT layout changed, discovering services again");
+            invalidateCaches();
+            mExpectedLayout = null;
+            refreshDeviceCache(mGatt);
+            startDiscovery();
+            return false;
+        }
+
+        mLayoutVerified = mExpectedLayout != null;
+        cache.putSignature(bleAddress(), signature);
+        return true;
+    }
+
     private void fireDescriptorRead(BluetoothGattDescriptor descriptor) {
         for (BaseProfile profile : mProfiles) {
             profile.onDescriptorRead(this, descriptor);
         }
     }
 
-    private synchronized void queueOperation(Runnable operation) {
+    private void startDiscovery() {
+        ConnectionTrace trace = mTrace;
+        if (trace != null) {
+            trace.end(mDiscoverySpan, now());
+            mDiscoverySpan = trace.begin("discoverServices", ConnectionTrace.CATEGORY_CONNECTION,
+                    now());
+        }
+        mGatt.discoverServices();
+    }
+
+    private synchronized void queueOperation(Runnable operation, String kind, Object target) {
+        ConnectionTrace trace = mTrace;
+        if (trace != null) {
+            String name = target == null ? kind : kind + " " + traceLabel(target);
+            operation = new TracedOperation(operation, name, now());
+        }
         mOperationsQueue.offer(operation);
         if (!mOperationInProgress) {
             executeNextOperation();
@@ -261,34 +395,124 @@ public class GattClient {
     }
 
     private synchronized void executeNextOperation() {
+        ConnectionTrace trace = mTrace;
+        if (trace != null) {
+            trace.end(mOperationSpan, now());
+            mOperationSpan = ConnectionTrace.NO_SPAN;
+        }
         Runnable operation = mOperationsQueue.poll();
         if (operation != null) {
             mOperationInProgress = true;
+            if (trace != null && operation instanceof TracedOperation) {
+                TracedOperation traced = (TracedOperation) operation;
+                mOperationSpan = trace.beginOperation(traced.name, traced.queuedAt, now());
+            }
             operation.run();
         } else {
             mOperationInProgress = false;
         }
     }
 
+    // Descriptors are labelled with their characteristic, since most of them are CCCDs
+    private static UUID traceLabel(Object target) {
+        if (target instanceof BluetoothGattDescriptor) {
+            BluetoothGattDescriptor descriptor = (BluetoothGattDescriptor) target;
+            BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+            return characteristic != null ? characteristic.getUuid() : descriptor.getUuid();
+        }
+        if (target instanceof BluetoothGattCharacteristic) {
+            return ((BluetoothGattCharacteristic) target).getUuid();
+        }
+        return null;
+    }
+
+    private void finishTrace(String outcome) {
+        ConnectionTrace trace = mTrace;
+        if (trace == null) {
+            return;
+        }
+        mTrace = null;
+        trace.finish(outcome, now());
+        mLastTrace = trace;
+        Log.i(TAG, "Connection attempt " + outcome + " after "
+                + trace.getDurationNanos() / 1000000 + " ms");
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    // A queued GATT operation, labelled for the connection trace
+    private static class TracedOperation implements Runnable {
+        final Runnable operation;
+        final String name;
+        final long queuedAt;
+
+        TracedOperation(Runnable operation, String name, long queuedAt) {
+            this.operation = operation;
+            this.name = name;
+            this.queuedAt = queuedAt;
+        }
+
+        @Override
+        public void run() {
+            operation.run();
+        }
+    }
+
     private void fireDescriptorWrite(BluetoothGattDescriptor descriptor) {
         for (BaseProfile profile : mProfiles) {
             profile.onDescriptorWrite(this, descriptor);
         }
     }
 
+    /**
+     * Map every discovered characteristic to the profile that handles it, so characteristic
+     * events can be sent to one profile instead of all of them.
+     */
+    private void buildRoutes() {
+        Map<BluetoothGattCharacteristic, BaseProfile> routes = new IdentityHashMap<>();
+        for (BluetoothGattService service : mGatt.getServices()) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                for (BaseProfile profile : mProfiles) {
+                    if (profile.handlesCharacteristic(characteristic)) {
+                        routes.put(characteristic, profile);
+                        break;
+                    }
+                }
+            }
+        }
+        mRoutes = routes;
+    }
+
     private void fireCharacteristicChanged(BluetoothGattCharacteristic characteristic) {
+        BaseProfile route = mRoutes.get(characteristic);
+        if (route != null) {
+            route.onCharacteristicChanged(this, characteristic);
+            return;
+        }
         for (BaseProfile profile : mProfiles) {
             profile.onCharacteristicChanged(this, characteristic);
         }
     }
 
     private void fireCharacteristicWrite(BluetoothGattCharacteristic characteristic) {
+        BaseProfile route = mRoutes.get(characteristic);
+        if (route != null) {
+            route.onCharacteristicWrite(this, characteristic);
+            return;
+        }
         for (BaseProfile profile : mProfiles) {
             profile.onCharacteristicWrite(this, characteristic);
         }
     }
 
     private void fireCharacteristicsRead(BluetoothGattCharacteristic characteristic) {
+        BaseProfile route = mRoutes.get(characteristic);
+        if (route != null) {
+            route.onCharacteristicRead(this, characteristic);
+            return;
+        }
         for (BaseProfile profile : mProfiles) {
             profile.onCharacteristicRead(this, characteristic);
         }
@@ -309,16 +533,47 @@ public class GattClient {
     }
 
     public void connect(Context context, BluetoothDevice device) {
+        connect(context, device, false);
+    }
+
+    /**
+     * Open a GATT connection to a device.
+     *
+     * @param context       The Android context
+     * @param device        The device to connect to
+     * @param autoConnect   false to connect directly, which fails if the device isn't found
+     *                      within about 30 seconds. true to let the Bluetooth stack connect in
+     *                      the background whenever the device comes into range.
+     */
+    public void connect(Context context, BluetoothDevice device, boolean autoConnect) {
         if (mGatt != null) {
             mGatt.disconnect();
             mGatt.close();
             mConnected = false;
         }
 
+        GattLayoutCache cache = GattLayoutCache.shared();
+        mExpectedLayout = cache == null ? null : cache.getSignature(device.getAddress());
+        mLayoutVerified = false;
+
+        finishTrace("replaced");
+        ConnectionTrace trace = new ConnectionTrace(device.getAddress(), autoConnect, now());
+        mConnectSpan = ConnectionTrace.NO_SPAN;
+        mDiscoverySpan = ConnectionTrace.NO_SPAN;
+        mOperationSpan = ConnectionTrace.NO_SPAN;
+        mTrace = trace;
+
         Log.i(TAG, "Gatt connection started");
-        mGatt = device.connectGatt(context, false, mBluetoothGattCallback);
-        Log.i(TAG, "Refreshing GATT Cache");
-        refreshDeviceCache(mGatt);
+        int span = trace.begin("connectGatt", ConnectionTrace.CATEGORY_CONNECTION, now());
+        mGatt = device.connectGatt(context, autoConnect, mBluetoothGattCallback);
+        trace.end(span, now());
+        mConnectSpan = trace.begin("waiting for link", ConnectionTrace.CATEGORY_CONNECTION, now());
+        if (mExpectedLayout == null) {
+            Log.i(TAG, "Refreshing GATT Cache");
+            refreshDeviceCache(mGatt);
+        } else {
+            Log.i(TAG, "Known GATT layout, using Android's GATT cache");
+        }
     }
 
     /**
@@ -350,7 +605,7 @@ public class GattClient {
                     mGatt.readCharacteristic(characteristic);
                 }
             }
-        });
+        }, "readCharacteristic", characteristic);
         return true;
     }
 
@@ -364,7 +619,7 @@ public class GattClient {
                     mGatt.writeCharacteristic(characteristic);
                 }
             }
-        });
+        }, "writeCharacteristic", characteristic);
         return true;
     }
 
@@ -376,7 +631,7 @@ public class GattClient {
                     mGatt.readDescriptor(descriptor);
                 }
             }
-        });
+        }, "readDescriptor", descriptor);
         return true;
     }
 
@@ -390,12 +645,132 @@ public class GattClient {
                     mGatt.writeDescriptor(descriptor);
                 }
             }
-        });
+        }, "writeDescriptor", descriptor);
+        return true;
+    }
+
+    /**
+     * Turn on notifications for a characteristic. The client characteristic configuration
+     * descriptor is only written if the Bean might not remember it: a bonded Bean keeps its
+     * CCCD values between connections, so it doesn't need writing again if this connection's
+     * layout matched the layout cache. Characteristics already enabled on this connection are
+     * skipped.
+     *
+     * @param characteristic    The characteristic
+     * @return                  false if notifications couldn't be turned on locally or the
+     *                          descriptor write couldn't be queued
+     */
+    public boolean enableNotifications(BluetoothGattCharacteristic characteristic) {
+        synchronized (mSubscribed) {
+            if (mSubscribed.contains(characteristic)) {
+                return true;
+            }
+        }
+        if (!setCharacteristicNotification(characteristic, true)) {
+            return false;
+        }
+        if (!mLayoutVerified || device.getBondState() != BluetoothDevice.BOND_BONDED) {
+            BluetoothGattDescriptor descriptor =
+                    characteristic.getDescriptor(Constants.UUID_CLIENT_CHAR_CONFIG);
+            if (descriptor == null) {
+                return false;
+            }
+            descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            if (!writeDescriptor(descriptor)) {
+                return false;
+            }
+        }
+        synchronized (mSubscribed) {
+            mSubscribed.add(characteristic);
+        }
         return true;
     }
 
+    /**
+     * @param characteristic    A characteristic
+     * @return                  true if notifications were enabled for it on this connection
+     */
+    public boolean isSubscribed(BluetoothGattCharacteristic characteristic) {
+        synchronized (mSubscribed) {
+            return mSubscribed.contains(characteristic);
+        }
+    }
+
+    /**
+     * Tell the layout cache which firmware version the Bean reported. A Bean whose firmware has
+     * changed has its cached layout dropped.
+     *
+     * @param version The firmware version from the Device Information Service
+     */
+    public void onFirmwareVersionRead(String version) {
+        GattLayoutCache cache = GattLayoutCache.shared();
+        if (cache != null && version != null) {
+            cache.putFirmwareVersion(bleAddress(), version);
+        }
+    }
+
+    /**
+     * Drop this Bean's cached layout and device information, e.g. because its firmware is being
+     * replaced.
+     */
+    public void invalidateCaches() {
+        GattLayoutCache cache = GattLayoutCache.shared();
+        if (cache != null) {
+            cache.invalidate(bleAddress());
+        }
+        DeviceInfoCache deviceInfo = DeviceInfoCache.shared();
+        if (deviceInfo != null) {
+            deviceInfo.invalidate(bleAddress());
+        }
+    }
+
+    /**
+     * Ask the Bluetooth stack for connection parameters suited to a mode. The central sets the
+     * connection interval, so this changes the Bean's side of the link too. Only supported on
+     * Android 5.0 and later.
+     *
+     * @param mode  The connection mode
+     * @return      false if the request couldn't be made
+     */
+    public boolean requestConnectionMode(ConnectionMode mode) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        BluetoothGatt gatt = mGatt;
+        return gatt != null && mConnected && requestConnectionPriority(gatt, mode);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean requestConnectionPriority(BluetoothGatt gatt, ConnectionMode mode) {
+        int priority;
+        switch (mode) {
+            case BULK:
+                priority = BluetoothGatt.CONNECTION_PRIORITY_HIGH;
+                break;
+            case IDLE:
+                priority = BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER;
+                break;
+            default:
+                priority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+                break;
+        }
+        return gatt.requestConnectionPriority(priority);
+    }
+
     public boolean readRemoteRssi() {
-        return mGatt.readRemoteRssi();
+        if (mGatt == null || !mConnected) {
+            return false;
+        }
+        // Queued like the other operations, since its callback starts the next one
+        queueOperation(new Runnable() {
+            @Override
+            public void run() {
+                if (mGatt != null) {
+                    mGatt.readRemoteRssi();
+                }
+            }
+        }, "readRemoteRssi", null);
+        return true;
     }
 
     public boolean setCharacteristicNotification(BluetoothGattCharacteristic characteristic, boolean enable) {
@@ -403,7 +778,9 @@ public class GattClient {
     }
 
     public void disconnect() {
-        mGatt.disconnect();
+        if (mGatt != null) {
+            mGatt.disconnect();
+        }
     }
 
     public synchronized void close() {
@@ -413,20 +790,77 @@ public class GattClient {
         mGatt = null;
     }
 
+    /**
+     * Get the timeline of the connection attempt in progress, or of the last one if none is.
+     *
+     * @return The trace, or null if no connection has been attempted
+     */
+    public ConnectionTrace getConnectionTrace() {
+        ConnectionTrace trace = mTrace;
+        return trace != null ? trace : mLastTrace;
+    }
+
     public GattSerialTransportProfile getSerialProfile() {
-        return mSerialProfile;
+        return (GattSerialTransportProfile) mRegistry.get(Constants.UUID_SERIAL_SERVICE);
     }
 
     public DeviceProfile getDeviceProfile() {
-        return mDeviceProfile;
+        return (DeviceProfile) mRegistry.get(Constants.UUID_DEVICE_INFO_SERVICE);
     }
 
     public BatteryProfile getBatteryProfile() {
-        return mBatteryProfile;
+        return (BatteryProfile) mRegistry.get(Constants.UUID_BATTERY_SERVICE);
+    }
+
+    public ScratchProfile getScratchProfile() {
+        return (ScratchProfile) mRegistry.get(Constants.UUID_SCRATCH_SERVICE);
     }
 
     public OADProfile getOADProfile() {
-        return mOADProfile;
+        return (OADProfile) mRegistry.get(Constants.UUID_OAD_SERVICE);
+    }
+
+    /**
+     * Get the profile that handles a service, creating it if needed.
+     *
+     * @param serviceUuid   The service UUID
+     * @return              The profile, or null if no profile is registered for the service
+     */
+    public BaseProfile getProfile(UUID serviceUuid) {
+        return mRegistry.get(serviceUuid);
+    }
+
+    /**
+     * Add a profile for a service the SDK doesn't handle itself. The profile is created when the
+     * service is discovered or the profile is first asked for, and gets the same connection and
+     * characteristic events as the built-in profiles.
+     *
+     * @param serviceUuid   The service UUID
+     * @param factory       Creates the profile
+     * @throws IllegalArgumentException if the service is one the SDK handles itself
+     */
+    public void registerProfile(UUID serviceUuid, ProfileFactory factory) {
+        if (isBuiltInService(serviceUuid)) {
+            throw new IllegalArgumentException("Service is handled by the SDK: " + serviceUuid);
+        }
+        mRegistry.register(serviceUuid, factory);
+    }
+
+    /**
+     * @param serviceUuid   The service UUID
+     * @return              true if the service is handled by a profile built into the SDK
+     */
+    public static boolean isBuiltInService(UUID serviceUuid) {
+        return BUILT_IN_SERVICES.contains(serviceUuid);
+    }
+
+    /**
+     * Get the event loop that owns this connection's transport and upload state.
+     *
+     * @return The connection's event loop
+     */
+    public EventLoop getEventLoop() {
+        return mEventLoop;
     }
 
     // This listener is only for communicating with the Bean class
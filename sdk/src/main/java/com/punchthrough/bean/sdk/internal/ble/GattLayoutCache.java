@@ -0,0 +1,165 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers the GATT layout of Beans that have been connected to before, keyed by address.
+ *
+ * Android keeps its own cache of each device's GATT table, which {@link GattClient} normally
+ * clears on every connect in case the Bean's firmware has changed. When this cache knows a Bean's
+ * layout, the client trusts Android's table instead, and checks it against the stored signature
+ * once services are discovered. Entries are dropped when the signature doesn't match, when the
+ * Bean reports a different firmware version, and when a firmware update starts.
+ *
+ * The cache is off until {@link #enable(Context)} is called.
+ */
+public class GattLayoutCache {
+
+    private static final String TAG = "GattLayoutCache";
+    private static final String PREFS_NAME = "com.punchthrough.bean.sdk.gatt_layouts";
+    private static final String SEPARATOR = "|";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile GattLayoutCache shared;
+
+    private final SharedPreferences prefs;
+
+    public GattLayoutCache(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Turn on the shared cache, stored in the app's private preferences.
+     *
+     * @param context Any context from the app
+     */
+    public static void enable(Context context) {
+        if (shared == null) {
+            SharedPreferences prefs = context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            shared = new GattLayoutCache(prefs);
+        }
+    }
+
+    /**
+     * Turn off the shared cache. Stored layouts are kept for the next time it is enabled.
+     */
+    public static void disable() {
+        shared = null;
+    }
+
+    /**
+     * @return The shared cache, or null if it isn't enabled
+     */
+    public static GattLayoutCache shared() {
+        return shared;
+    }
+
+    /**
+     * Compute a signature of a GATT table: its services, characteristics, characteristic
+     * properties and descriptors, in discovery order.
+     *
+     * @param services  The discovered services
+     * @return          A short hex string that changes whenever the layout does
+     */
+    public static String signature(List<BluetoothGattService> services) {
+        CRC32 crc = new CRC32();
+        StringBuilder layout = new StringBuilder();
+        for (BluetoothGattService service : services) {
+            layout.append('S').append(service.getUuid());
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                layout.append('C').append(characteristic.getUuid())
+                        .append(':').append(characteristic.getProperties());
+                for (BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
+                    layout.append('D').append(descriptor.getUuid());
+                }
+            }
+        }
+        crc.update(layout.toString().getBytes(UTF_8));
+        return services.size() + "-" + Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Get the stored signature for a Bean.
+     *
+     * @param address   The Bean's address
+     * @return          The signature, or null if the Bean's layout isn't known
+     */
+    public String getSignature(String address) {
+        String entry = prefs.getString(address, null);
+        return entry == null ? null : entry.substring(0, entry.indexOf(SEPARATOR));
+    }
+
+    /**
+     * Get the firmware version stored with a Bean's layout.
+     *
+     * @param address   The Bean's address
+     * @return          The version, or null if the layout or version isn't known
+     */
+    public String getFirmwareVersion(String address) {
+        String entry = prefs.getString(address, null);
+        if (entry == null) {
+            return null;
+        }
+        String version = entry.substring(entry.indexOf(SEPARATOR) + 1);
+        return version.isEmpty() ? null : version;
+    }
+
+    /**
+     * Store a Bean's layout, keeping the firmware version already stored with it.
+     *
+     * @param address   The Bean's address
+     * @param signature The layout signature, from {@link #signature(List)}
+     */
+    public void putSignature(String address, String signature) {
+        if (signature.equals(getSignature(address))) {
+            return;
+        }
+        String version = getFirmwareVersion(address);
+        write(address, signature, version);
+    }
+
+    /**
+     * Record the firmware version a Bean reported. If a different version was stored with the
+     * Bean's layout, the layout is dropped, since new firmware may have changed it.
+     *
+     * @param address   The Bean's address
+     * @param version   The firmware version
+     */
+    public void putFirmwareVersion(String address, String version) {
+        String signature = getSignature(address);
+        if (signature == null) {
+            return;
+        }
+        String stored = getFirmwareVersion(address);
+        if (stored == null) {
+            write(address, signature, version);
+        } else if (!stored.equals(version)) {
+            Log.i(TAG, "Firmware changed from " + stored + " to " + version + ", forgetting layout");
+            invalidate(address);
+        }
+    }
+
+    /**
+     * Forget a Bean's layout, so the next connection discovers it from scratch.
+     *
+     * @param address The Bean's address
+     */
+    public void invalidate(String address) {
+        prefs.edit().remove(address).apply();
+    }
+
+    private void write(String address, String signature, String version) {
+        String entry = signature + SEPARATOR + (version == null ? "" : version);
+        prefs.edit().putString(address, entry).apply();
+    }
+}
@@ -0,0 +1,16 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+/**
+ * Creates the profile that handles one GATT service. Register factories with
+ * {@link ProfileRegistry#register(java.util.UUID, ProfileFactory)}.
+ */
+public interface ProfileFactory {
+
+    /**
+     * Create a profile for a connection.
+     *
+     * @param client    The connection's GATT client
+     * @return          The new profile
+     */
+    public BaseProfile create(GattClient client);
+}
@@ -0,0 +1,74 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the profiles of one {@link GattClient}, keyed by the UUID of the service each one
+ * handles. Profiles are created from their {@link ProfileFactory} the first time they are needed,
+ * either when asked for or when their service is discovered.
+ */
+public class ProfileRegistry {
+
+    private final GattClient client;
+    private final Map<UUID, ProfileFactory> factories = new HashMap<>();
+    private final Map<UUID, BaseProfile> profiles = new HashMap<>();
+
+    // Created profiles in creation order, safe to iterate while profiles are added
+    private final List<BaseProfile> created = new CopyOnWriteArrayList<>();
+
+    public ProfileRegistry(GattClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Register the factory for a service's profile, replacing any factory registered before.
+     * A profile already created for the service is kept.
+     *
+     * @param serviceUuid   The service UUID
+     * @param factory       Creates the profile for the service
+     */
+    public synchronized void register(UUID serviceUuid, ProfileFactory factory) {
+        factories.put(serviceUuid, factory);
+    }
+
+    /**
+     * Get the profile for a service, creating it if needed.
+     *
+     * @param serviceUuid   The service UUID
+     * @return              The profile, or null if no factory is registered for the service
+     */
+    public synchronized BaseProfile get(UUID serviceUuid) {
+        BaseProfile profile = profiles.get(serviceUuid);
+        if (profile == null) {
+            ProfileFactory factory = factories.get(serviceUuid);
+            if (factory == null) {
+                return null;
+            }
+            profile = factory.create(client);
+            profiles.put(serviceUuid, profile);
+            created.add(profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Get the profile for a service only if it has already been created.
+     *
+     * @param serviceUuid   The service UUID
+     * @return              The profile, or null if it hasn't been created
+     */
+    public synchronized BaseProfile peek(UUID serviceUuid) {
+        return profiles.get(serviceUuid);
+    }
+
+    /**
+     * @return The profiles created so far, in creation order
+     */
+    public List<BaseProfile> profiles() {
+        return created;
+    }
+}
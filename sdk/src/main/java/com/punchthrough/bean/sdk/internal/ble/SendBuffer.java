@@ -3,12 +3,11 @@ package com.punchthrough.bean.sdk.internal.ble;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.util.Log;
 
+import com.punchthrough.bean.sdk.internal.utility.Scheduler;
 import com.punchthrough.bean.sdk.message.Callback;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class SendBuffer {
 
@@ -21,7 +20,6 @@ public class SendBuffer {
     private final List<Integer> ids = new ArrayList<>();
     private final Callback<Integer> onPacketSent;
 
-    private Timer sendTimer = new Timer();
     private int retries;
 
     /**
@@ -63,7 +61,7 @@ public class SendBuffer {
      *               now
      */
     private void scheduleSendTask(boolean runNow) {
-        TimerTask task = new TimerTask() {
+        Runnable task = new Runnable() {
             @Override
             public void run() {
 
@@ -104,7 +102,7 @@ public class SendBuffer {
             task.run();
 
         } else {
-            sendTimer.schedule(task, SEND_INTERVAL);
+            Scheduler.schedule(task, SEND_INTERVAL);
 
         }
     }
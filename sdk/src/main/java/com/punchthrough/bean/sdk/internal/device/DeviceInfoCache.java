@@ -0,0 +1,113 @@
+package com.punchthrough.bean.sdk.internal.device;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.punchthrough.bean.sdk.internal.utility.Constants;
+
+import java.util.UUID;
+
+/**
+ * Remembers the Device Information Service values of Beans that have been read before, keyed by
+ * address, so they don't have to be read over the air on every connection.
+ *
+ * Hardware, software and firmware versions only change when the Bean's firmware does, so entries
+ * are dropped when a firmware update starts or finishes, when a version read from the Bean
+ * differs from the stored one, and when the Bean's GATT layout turns out to have changed.
+ *
+ * The cache is off until {@link #enable(Context)} is called.
+ */
+public class DeviceInfoCache {
+
+    private static final String PREFS_NAME = "com.punchthrough.bean.sdk.device_info";
+
+    private static final UUID[] CHARACTERISTICS = {
+            Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION,
+            Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION,
+            Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION
+    };
+    private static final String[] KEYS = {"/hw", "/sw", "/fw"};
+
+    private static volatile DeviceInfoCache shared;
+
+    private final SharedPreferences prefs;
+
+    public DeviceInfoCache(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Turn on the shared cache, stored in the app's private preferences.
+     *
+     * @param context Any context from the app
+     */
+    public static void enable(Context context) {
+        if (shared == null) {
+            SharedPreferences prefs = context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            shared = new DeviceInfoCache(prefs);
+        }
+    }
+
+    /**
+     * Turn off the shared cache. Stored values are kept for the next time it is enabled.
+     */
+    public static void disable() {
+        shared = null;
+    }
+
+    /**
+     * @return The shared cache, or null if it isn't enabled
+     */
+    public static DeviceInfoCache shared() {
+        return shared;
+    }
+
+    /**
+     * Get a stored value.
+     *
+     * @param address           The Bean's address
+     * @param characteristic    UUID of the hardware, software or firmware version characteristic
+     * @return                  The value, or null if it isn't known
+     */
+    public String get(String address, UUID characteristic) {
+        String key = key(address, characteristic);
+        return key == null ? null : prefs.getString(key, null);
+    }
+
+    /**
+     * Store a value read from a Bean.
+     *
+     * @param address           The Bean's address
+     * @param characteristic    UUID of the hardware, software or firmware version characteristic
+     * @param value             The value
+     */
+    public void put(String address, UUID characteristic, String value) {
+        String key = key(address, characteristic);
+        if (key != null && value != null && !value.equals(prefs.getString(key, null))) {
+            prefs.edit().putString(key, value).apply();
+        }
+    }
+
+    /**
+     * Forget everything stored for a Bean.
+     *
+     * @param address The Bean's address
+     */
+    public void invalidate(String address) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String suffix : KEYS) {
+            editor.remove(address + suffix);
+        }
+        editor.apply();
+    }
+
+    private static String key(String address, UUID characteristic) {
+        for (int i = 0; i < CHARACTERISTICS.length; i++) {
+            if (CHARACTERISTICS[i].equals(characteristic)) {
+                return address + KEYS[i];
+            }
+        }
+        return null;
+    }
+}
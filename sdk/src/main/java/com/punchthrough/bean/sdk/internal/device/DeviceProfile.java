@@ -4,7 +4,13 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import com.punchthrough.bean.sdk.internal.ble.BaseProfile;
 import com.punchthrough.bean.sdk.internal.ble.GattClient;
@@ -19,14 +25,21 @@ public class DeviceProfile extends BaseProfile {
 
     protected static final String TAG = "DeviceProfile";
 
+    private static final UUID[] VERSION_CHARACTERISTICS = {
+            Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION,
+            Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION,
+            Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION
+    };
+
     private boolean ready = false;
-    private String mSoftwareVersion;
-    private String mHardwareVersion;
-    private String mFirmwareVersion;
     private BluetoothGattService mDeviceService;
-    private DeviceInfoCallback deviceInfoCallback;
-    private VersionCallback firmwareVersionCallback;
-    private VersionCallback hardwareVersionCallback;
+
+    // Values read on this connection, and callers waiting for reads. A read is only queued once
+    // no matter how many callers are waiting for it. Guarded by "this".
+    private final Map<UUID, String> mValues = new HashMap<>();
+    private final Map<UUID, List<VersionCallback>> mVersionCallbacks = new HashMap<>();
+    private final List<DeviceInfoCallback> mDeviceInfoCallbacks = new ArrayList<>();
+    private final Set<UUID> mPendingReads = new HashSet<>();
 
     public DeviceProfile(GattClient client) {
         super(client);
@@ -43,60 +56,207 @@ public class DeviceProfile extends BaseProfile {
         ready = true;
     }
 
+    /**
+     * Callers still waiting are called with null, since their reads were lost with the
+     * connection. The Bean usually drops this profile along with its GattClient, so the reads
+     * can't be retried on the next connection.
+     */
     @Override
-    public void onCharacteristicRead(GattClient client, BluetoothGattCharacteristic characteristic) {
+    public void onBeanDisconnected() {
+        List<VersionCallback> versionCallbacks = new ArrayList<>();
+        List<DeviceInfoCallback> infoCallbacks;
+        synchronized (this) {
+            mPendingReads.clear();
+            mValues.clear();
+            for (List<VersionCallback> callbacks : mVersionCallbacks.values()) {
+                versionCallbacks.addAll(callbacks);
+            }
+            mVersionCallbacks.clear();
+            infoCallbacks = new ArrayList<>(mDeviceInfoCallbacks);
+            mDeviceInfoCallbacks.clear();
+        }
+
+        for (VersionCallback callback : versionCallbacks) {
+            callback.onComplete(null);
+        }
+        for (DeviceInfoCallback callback : infoCallbacks) {
+            callback.onDeviceInfo(null);
+        }
+    }
+
+    @Override
+    public boolean handlesCharacteristic(BluetoothGattCharacteristic characteristic) {
+        UUID uuid = characteristic.getUuid();
+        return uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION) ||
+                uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION) ||
+                uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION);
+    }
 
-        if (characteristic.getUuid().equals(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION)) {
+    @Override
+    public void onCharacteristicRead(GattClient client, BluetoothGattCharacteristic characteristic) {
+        UUID uuid = characteristic.getUuid();
+        if (uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION)) {
             Log.i(TAG, "Read response (FW Version): " + Convert.bytesToHexString(characteristic.getValue()));
-            mFirmwareVersion = characteristic.getStringValue(0);
-        } else if (characteristic.getUuid().equals(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION)) {
+        } else if (uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION)) {
             Log.i(TAG, "Read response (HW Version): " + Convert.bytesToHexString(characteristic.getValue()));
-            mHardwareVersion = characteristic.getStringValue(0);
-        } else if (characteristic.getUuid().equals(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION)) {
+        } else if (uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION)) {
             Log.i(TAG, "Read response (SW Version): " + Convert.bytesToHexString(characteristic.getValue()));
-            mSoftwareVersion = characteristic.getStringValue(0);
+        } else {
+            return;
         }
 
-        if (mFirmwareVersion != null && mSoftwareVersion != null && mHardwareVersion != null && deviceInfoCallback != null) {
-            DeviceInfo info = DeviceInfo.create(mHardwareVersion, mSoftwareVersion, mFirmwareVersion);
-            deviceInfoCallback.onDeviceInfo(info);
-            deviceInfoCallback = null;
+        String value = characteristic.getStringValue(0);
+        if (uuid.equals(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION)) {
+            mGattClient.onFirmwareVersionRead(value);
+        }
+        DeviceInfoCache cache = DeviceInfoCache.shared();
+        if (cache != null) {
+            String address = mGattClient.bleAddress();
+            String stored = cache.get(address, uuid);
+            if (stored != null && !stored.equals(value)) {
+                // Reflashed by someone else, so the other stored versions are suspect too
+                Log.i(TAG, "Stored device info is out of date, forgetting it");
+                cache.invalidate(address);
+            }
+            cache.put(address, uuid, value);
         }
 
-        if (mFirmwareVersion != null && firmwareVersionCallback != null) {
-            firmwareVersionCallback.onComplete(mFirmwareVersion);
-            firmwareVersionCallback = null;
+        List<VersionCallback> versionCallbacks;
+        List<DeviceInfoCallback> infoCallbacks = null;
+        DeviceInfo info = null;
+        synchronized (this) {
+            mValues.put(uuid, value);
+            mPendingReads.remove(uuid);
+            versionCallbacks = mVersionCallbacks.remove(uuid);
+            if (!mDeviceInfoCallbacks.isEmpty()) {
+                info = deviceInfo();
+                if (info != null) {
+                    infoCallbacks = new ArrayList<>(mDeviceInfoCallbacks);
+                    mDeviceInfoCallbacks.clear();
+                }
+            }
         }
 
-        if (mHardwareVersion != null && hardwareVersionCallback != null) {
-            hardwareVersionCallback.onComplete(mHardwareVersion);
-            hardwareVersionCallback = null;
+        if (versionCallbacks != null) {
+            for (VersionCallback callback : versionCallbacks) {
+                callback.onComplete(value);
+            }
+        }
+        if (infoCallbacks != null) {
+            for (DeviceInfoCallback callback : infoCallbacks) {
+                callback.onDeviceInfo(info);
+            }
         }
     }
 
+    /**
+     * Get the hardware, software and firmware versions. Versions in the {@link DeviceInfoCache}
+     * aren't read again. Any number of callers can wait at once; each version is read once for
+     * all of them.
+     *
+     * @param callback Called with the versions, or with null if the Bean disconnects first
+     */
     public void getDeviceInfo(DeviceInfoCallback callback) {
-        deviceInfoCallback = callback;
-        for (BluetoothGattCharacteristic characteristic : mDeviceService.getCharacteristics()) {
-            if (characteristic.getUuid().equals(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION) ||
-                    characteristic.getUuid().equals(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION) ||
-                    characteristic.getUuid().equals(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION)) {
-                mGattClient.readCharacteristic(characteristic);
+        List<UUID> reads = new ArrayList<>();
+        DeviceInfo info;
+        synchronized (this) {
+            for (UUID uuid : VERSION_CHARACTERISTICS) {
+                mValues.remove(uuid);
+                String cached = cached(uuid);
+                if (cached != null) {
+                    mValues.put(uuid, cached);
+                } else {
+                    reads.add(uuid);
+                }
+            }
+            info = deviceInfo();
+            if (info == null) {
+                mDeviceInfoCallbacks.add(callback);
             }
         }
+
+        if (info != null) {
+            callback.onDeviceInfo(info);
+            return;
+        }
+        for (UUID uuid : reads) {
+            requestRead(uuid);
+        }
     }
 
     public void getFirmwareVersion(VersionCallback callback) {
-        firmwareVersionCallback = callback;
-        mGattClient.readCharacteristic(
-                mDeviceService.getCharacteristic(
-                        Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION));
+        getVersion(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION, callback, true);
+    }
+
+    /**
+     * Read the firmware version from the Bean even if the {@link DeviceInfoCache} knows it, for
+     * checks that must not trust a version stored before someone else reflashed the Bean.
+     *
+     * @param callback Called with the version
+     */
+    public void readFirmwareVersion(VersionCallback callback) {
+        getVersion(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION, callback, false);
     }
 
     public void getHardwareVersion(VersionCallback callback) {
-        hardwareVersionCallback = callback;
-        mGattClient.readCharacteristic(
-                mDeviceService.getCharacteristic(
-                        Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION));
+        getVersion(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION, callback, true);
+    }
+
+    private void getVersion(UUID uuid, VersionCallback callback, boolean useCache) {
+        String cached;
+        synchronized (this) {
+            cached = useCache ? cached(uuid) : null;
+            if (cached == null) {
+                List<VersionCallback> callbacks = mVersionCallbacks.get(uuid);
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>();
+                    mVersionCallbacks.put(uuid, callbacks);
+                }
+                callbacks.add(callback);
+            }
+        }
+
+        if (cached != null) {
+            callback.onComplete(cached);
+        } else {
+            requestRead(uuid);
+        }
+    }
+
+    /**
+     * Queue a read of a version characteristic, unless one is already queued.
+     */
+    private void requestRead(UUID uuid) {
+        BluetoothGattService service = mDeviceService;
+        synchronized (this) {
+            if (service == null || !mPendingReads.add(uuid)) {
+                return;
+            }
+        }
+        BluetoothGattCharacteristic characteristic = service.getCharacteristic(uuid);
+        if (characteristic == null) {
+            Log.e(TAG, "Characteristic not found: " + uuid);
+            synchronized (this) {
+                mPendingReads.remove(uuid);
+            }
+            return;
+        }
+        mGattClient.readCharacteristic(characteristic);
+    }
+
+    private String cached(UUID uuid) {
+        DeviceInfoCache cache = DeviceInfoCache.shared();
+        return cache == null ? null : cache.get(mGattClient.bleAddress(), uuid);
+    }
+
+    private DeviceInfo deviceInfo() {
+        String hardware = mValues.get(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION);
+        String software = mValues.get(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION);
+        String firmware = mValues.get(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION);
+        if (hardware == null || software == null || firmware == null) {
+            return null;
+        }
+        return DeviceInfo.create(hardware, software, firmware);
     }
 
     public String getName() {
@@ -111,6 +271,9 @@ public class DeviceProfile extends BaseProfile {
         ready = false;
     }
 
+    /**
+     * Called with a version, or with null if the Bean disconnected before it was read.
+     */
     public static interface VersionCallback {
         public void onComplete(String version);
     }
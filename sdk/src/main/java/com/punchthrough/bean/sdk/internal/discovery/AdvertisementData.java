@@ -0,0 +1,196 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import java.nio.charset.Charset;
+
+/**
+ * Fields of one BLE advertisement, filled in by {@link AdvertisementParser}.
+ *
+ * Instances are meant to be reused from one advertisement to the next, so parsing doesn't
+ * allocate. Variable-length fields are kept as ranges of the original scan record and are only
+ * valid until the record is reused; copy them out with the getters if they are needed later.
+ */
+public class AdvertisementData {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Value of {@link #getTxPower()} when the advertisement doesn't include a TX power level
+     */
+    public static final int NO_TX_POWER = Integer.MIN_VALUE;
+
+    /**
+     * Value of {@link #getManufacturerId()} when the advertisement has no manufacturer data
+     */
+    public static final int NO_MANUFACTURER = -1;
+
+    /**
+     * Value of the iBeacon getters when the advertisement isn't a Bean iBeacon frame
+     */
+    public static final int NO_BEACON = -1;
+
+    byte[] record;
+    boolean beanService;
+    int nameOffset;
+    int nameLength;
+    int txPower;
+    int manufacturerId;
+    int manufacturerOffset;
+    int manufacturerLength;
+    int beaconUuid;
+    int beaconMajor;
+    int beaconMinor;
+    int beaconTxPower;
+
+    public AdvertisementData() {
+        reset(null);
+    }
+
+    void reset(byte[] record) {
+        this.record = record;
+        beanService = false;
+        nameOffset = 0;
+        nameLength = -1;
+        txPower = NO_TX_POWER;
+        manufacturerId = NO_MANUFACTURER;
+        manufacturerOffset = 0;
+        manufacturerLength = 0;
+        beaconUuid = NO_BEACON;
+        beaconMajor = NO_BEACON;
+        beaconMinor = NO_BEACON;
+        beaconTxPower = NO_TX_POWER;
+    }
+
+    /**
+     * @return true if the advertisement lists the Bean's serial service UUID
+     */
+    public boolean hasBeanService() {
+        return beanService;
+    }
+
+    /**
+     * @return true if the advertisement is an iBeacon frame with a Bean iBeacon UUID
+     */
+    public boolean isBeanBeacon() {
+        return beaconUuid != NO_BEACON;
+    }
+
+    /**
+     * @return The configurable 16 bits of the Bean's iBeacon UUID, or {@link #NO_BEACON}
+     */
+    public int getBeaconUuid() {
+        return beaconUuid;
+    }
+
+    /**
+     * @return The iBeacon major value, or {@link #NO_BEACON}
+     */
+    public int getBeaconMajor() {
+        return beaconMajor;
+    }
+
+    /**
+     * @return The iBeacon minor value, or {@link #NO_BEACON}
+     */
+    public int getBeaconMinor() {
+        return beaconMinor;
+    }
+
+    /**
+     * @return The iBeacon measured power at 1 m, in dBm, or {@link #NO_TX_POWER}
+     */
+    public int getBeaconTxPower() {
+        return beaconTxPower;
+    }
+
+    /**
+     * @return true if the advertisement includes a complete or shortened local name
+     */
+    public boolean hasLocalName() {
+        return nameLength >= 0;
+    }
+
+    /**
+     * Decode the advertised local name. Allocates a new String on every call.
+     *
+     * @return The local name, or null if the advertisement doesn't include one
+     */
+    public String getLocalName() {
+        return hasLocalName() ? new String(record, nameOffset, nameLength, UTF_8) : null;
+    }
+
+    /**
+     * Compare the advertised local name to a String without decoding it. Only ASCII names are
+     * compared in place; other names are decoded first.
+     *
+     * @param name  The name to compare with, may be null
+     * @return      true if the advertisement has a local name equal to <code>name</code>
+     */
+    public boolean localNameEquals(String name) {
+        if (!hasLocalName() || name == null) {
+            return false;
+        }
+        if (name.length() != nameLength) {
+            return name.equals(getLocalName());
+        }
+        for (int i = 0; i < nameLength; i++) {
+            int b = record[nameOffset + i];
+            if (b < 0) {
+                return name.equals(getLocalName());
+            }
+            if (b != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The advertised TX power level in dBm, or {@link #NO_TX_POWER}
+     */
+    public int getTxPower() {
+        return txPower;
+    }
+
+    /**
+     * @return The Bluetooth SIG company identifier of the manufacturer data, or
+     *         {@link #NO_MANUFACTURER}
+     */
+    public int getManufacturerId() {
+        return manufacturerId;
+    }
+
+    /**
+     * @return The scan record that the offsets in this object refer to
+     */
+    public byte[] getRecord() {
+        return record;
+    }
+
+    /**
+     * @return Index in {@link #getRecord()} of the manufacturer data after the company identifier
+     */
+    public int getManufacturerDataOffset() {
+        return manufacturerOffset;
+    }
+
+    /**
+     * @return Length of the manufacturer data after the company identifier, 0 if there is none
+     */
+    public int getManufacturerDataLength() {
+        return manufacturerLength;
+    }
+
+    /**
+     * Copy the manufacturer data out of the scan record.
+     *
+     * @return The manufacturer data after the company identifier, or null if there is none
+     */
+    public byte[] copyManufacturerData() {
+        if (manufacturerId == NO_MANUFACTURER) {
+            return null;
+        }
+        byte[] data = new byte[manufacturerLength];
+        System.arraycopy(record, manufacturerOffset, data, 0, manufacturerLength);
+        return data;
+    }
+}
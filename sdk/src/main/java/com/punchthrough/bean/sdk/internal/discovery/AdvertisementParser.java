@@ -0,0 +1,191 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import com.punchthrough.bean.sdk.internal.utility.Constants;
+
+import java.util.UUID;
+
+/**
+ * Parses BLE advertisement data without allocating.
+ *
+ * Advertisements are a list of [length, type, data] structures. The Bean's service UUID is
+ * matched byte by byte against 128-bit UUID lists, in the little-endian order it is sent in.
+ *
+ * Beans in iBeacon mode advertise Apple manufacturer data instead. Their beacon UUID is the Bean
+ * service UUID with a configurable second 16-bit group, sent big-endian.
+ */
+public class AdvertisementParser {
+
+    // AD types, from the Bluetooth Core Specification Supplement
+    private static final int TYPE_UUID128_PARTIAL = 0x06;
+    private static final int TYPE_UUID128_COMPLETE = 0x07;
+    private static final int TYPE_NAME_SHORT = 0x08;
+    private static final int TYPE_NAME_COMPLETE = 0x09;
+    private static final int TYPE_TX_POWER = 0x0A;
+    private static final int TYPE_MANUFACTURER_DATA = 0xFF;
+
+    private static final byte[] BEAN_UUID_LE = littleEndian(Constants.UUID_SERIAL_SERVICE);
+
+    // iBeacon frames: Apple company ID, then type 0x02, length 0x15, UUID, major, minor, power
+    public static final int APPLE_COMPANY_ID = 0x004C;
+    private static final int IBEACON_TYPE = 0x02;
+    private static final int IBEACON_LENGTH = 0x15;
+    private static final byte[] BEAN_BEACON_UUID = bigEndian(Constants.UUID_SERIAL_SERVICE);
+    private static final int BEACON_UUID_CONFIGURABLE_OFFSET = 2;
+
+    private AdvertisementParser() {}
+
+    /**
+     * Parse a scan record.
+     *
+     * @param record    The scan record, as given to the scan callback
+     * @param out       Receives the parsed fields. Its previous contents are cleared.
+     * @return          true if the advertisement lists the Bean's service UUID
+     */
+    public static boolean parse(byte[] record, AdvertisementData out) {
+        out.reset(record);
+        if (record == null) {
+            return false;
+        }
+
+        int offset = 0;
+        while (offset < record.length) {
+            int length = record[offset] & 0xff;
+            if (length == 0 || offset + length >= record.length) {
+                // Zero length marks the end of the significant part; anything else is truncated
+                break;
+            }
+            int type = record[offset + 1] & 0xff;
+            int data = offset + 2;
+            int dataLength = length - 1;
+
+            switch (type) {
+                case TYPE_UUID128_PARTIAL:
+                case TYPE_UUID128_COMPLETE:
+                    for (int i = data; i + 16 <= data + dataLength; i += 16) {
+                        if (matches(record, i, BEAN_UUID_LE)) {
+                            out.beanService = true;
+                        }
+                    }
+                    break;
+                case TYPE_NAME_SHORT:
+                case TYPE_NAME_COMPLETE:
+                    // Prefer the complete name if both are present
+                    if (!out.hasLocalName() || type == TYPE_NAME_COMPLETE) {
+                        out.nameOffset = data;
+                        out.nameLength = dataLength;
+                    }
+                    break;
+                case TYPE_TX_POWER:
+                    if (dataLength >= 1) {
+                        out.txPower = record[data];
+                    }
+                    break;
+                case TYPE_MANUFACTURER_DATA:
+                    if (dataLength >= 2) {
+                        out.manufacturerId = (record[data] & 0xff) | ((record[data + 1] & 0xff) << 8);
+                        out.manufacturerOffset = data + 2;
+                        out.manufacturerLength = dataLength - 2;
+                        if (out.manufacturerId == APPLE_COMPANY_ID) {
+                            parseBeacon(record, out.manufacturerOffset, out.manufacturerLength, out);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            offset += length + 1;
+        }
+
+        return out.beanService;
+    }
+
+    private static void parseBeacon(byte[] record, int offset, int length, AdvertisementData out) {
+        if (length < IBEACON_LENGTH + 2 || (record[offset] & 0xff) != IBEACON_TYPE ||
+                (record[offset + 1] & 0xff) != IBEACON_LENGTH) {
+            return;
+        }
+        int uuid = offset + 2;
+        for (int i = 0; i < BEAN_BEACON_UUID.length; i++) {
+            boolean configurable = i == BEACON_UUID_CONFIGURABLE_OFFSET ||
+                    i == BEACON_UUID_CONFIGURABLE_OFFSET + 1;
+            if (!configurable && record[uuid + i] != BEAN_BEACON_UUID[i]) {
+                return;
+            }
+        }
+        out.beaconUuid = readShortBe(record, uuid + BEACON_UUID_CONFIGURABLE_OFFSET);
+        out.beaconMajor = readShortBe(record, uuid + 16);
+        out.beaconMinor = readShortBe(record, uuid + 18);
+        out.beaconTxPower = record[uuid + 20];
+    }
+
+    private static int readShortBe(byte[] record, int offset) {
+        return ((record[offset] & 0xff) << 8) | (record[offset + 1] & 0xff);
+    }
+
+    private static boolean matches(byte[] record, int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (record[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the manufacturer data that matches a Bean iBeacon frame, for hardware scan filters.
+     * Use with {@link #beanBeaconFilterMask()}.
+     *
+     * @return The manufacturer data to match, after the company identifier
+     */
+    public static byte[] beanBeaconFilterData() {
+        byte[] data = new byte[IBEACON_LENGTH + 2];
+        data[0] = (byte) IBEACON_TYPE;
+        data[1] = (byte) IBEACON_LENGTH;
+        System.arraycopy(BEAN_BEACON_UUID, 0, data, 2, BEAN_BEACON_UUID.length);
+        byte[] mask = beanBeaconFilterMask();
+        for (int i = 0; i < data.length; i++) {
+            data[i] &= mask[i];
+        }
+        return data;
+    }
+
+    /**
+     * Build the mask for {@link #beanBeaconFilterData()}. It leaves the configurable part of the
+     * beacon UUID and the major, minor and power fields open.
+     *
+     * @return The mask
+     */
+    public static byte[] beanBeaconFilterMask() {
+        byte[] mask = new byte[IBEACON_LENGTH + 2];
+        for (int i = 0; i < mask.length; i++) {
+            int uuidIndex = i - 2;
+            boolean open = uuidIndex == BEACON_UUID_CONFIGURABLE_OFFSET ||
+                    uuidIndex == BEACON_UUID_CONFIGURABLE_OFFSET + 1 || uuidIndex >= 16;
+            mask[i] = open ? 0 : (byte) 0xff;
+        }
+        return mask;
+    }
+
+    private static byte[] bigEndian(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (msb >>> (8 * (7 - i)));
+            bytes[8 + i] = (byte) (lsb >>> (8 * (7 - i)));
+        }
+        return bytes;
+    }
+
+    private static byte[] littleEndian(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long lsb = uuid.getLeastSignificantBits();
+        long msb = uuid.getMostSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (lsb >>> (8 * i));
+            bytes[8 + i] = (byte) (msb >>> (8 * i));
+        }
+        return bytes;
+    }
+}
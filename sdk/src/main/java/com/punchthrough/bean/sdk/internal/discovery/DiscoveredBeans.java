@@ -0,0 +1,319 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.punchthrough.bean.sdk.Bean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Beans seen during discovery, with when each was last seen and its smoothed signal strength.
+ *
+ * Safe to use from the scan callback thread and API callers at the same time. Entries expire
+ * once they haven't been seen for the time-to-live, and the least recently seen entries are
+ * evicted when the registry is full. Beans that are connected or being updated are never
+ * evicted.
+ */
+public class DiscoveredBeans {
+
+    /**
+     * Weight of the newest reading in the smoothed RSSI
+     */
+    private static final double RSSI_ALPHA = 0.25;
+
+    /**
+     * Separates name and address in name index keys. Sorts before any character in a name.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * A discovered Bean and what is known about its advertisements.
+     */
+    public static class Entry {
+
+        private final Bean bean;
+        private final String address;
+        private final String name;
+        private volatile long lastSeen;
+        private volatile double smoothedRssi;
+
+        // Updated by DiscoveryThrottle on the scan thread
+        long lastReported = DiscoveryThrottle.NEVER;
+        int reportedRssi;
+
+        Entry(Bean bean, String address, String name, int rssi, long now) {
+            this.bean = bean;
+            this.address = address;
+            this.name = name == null ? "" : name;
+            this.smoothedRssi = rssi;
+            this.lastSeen = now;
+        }
+
+        public Bean getBean() {
+            return bean;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return When the Bean was last seen, on the clock passed to {@link DiscoveredBeans}
+         */
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        /**
+         * @return Exponentially weighted moving average of the Bean's RSSI readings
+         */
+        public int getSmoothedRssi() {
+            return (int) Math.round(smoothedRssi);
+        }
+
+        private String nameKey() {
+            return name + KEY_SEPARATOR + address;
+        }
+
+        private boolean isPinned() {
+            return bean.isConnected() || bean.firmwareUpdateInProgress();
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> byAddress = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Entry> byName = new ConcurrentSkipListMap<>();
+
+    private volatile int capacity;
+    private volatile long ttlMillis;
+
+    // Snapshots of all entries, rebuilt on first read after Beans are added or removed
+    private volatile List<Entry> snapshot = Collections.emptyList();
+    private volatile List<Bean> beanSnapshot = Collections.emptyList();
+    private volatile boolean dirty = false;
+
+    /**
+     * @param capacity  The maximum number of Beans kept
+     * @param ttlMillis How long a Bean is kept after it was last seen, or 0 to keep it until it is
+     *                  evicted for space
+     */
+    public DiscoveredBeans(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setTtl(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Get the Bean discovered at an address.
+     *
+     * @param address   The Bean's Bluetooth address
+     * @return          The entry, or null if no Bean is known at the address
+     */
+    public Entry get(String address) {
+        return byAddress.get(address);
+    }
+
+    /**
+     * Record an advertisement from a Bean.
+     *
+     * @param address   The Bean's Bluetooth address
+     * @param name      The Bean's name, or null to keep the name already recorded
+     * @param rssi      The advertisement's RSSI
+     * @param now       The current time, in ms
+     * @param device    The advertising device
+     * @param factory   Creates the Bean if this is the first advertisement from the address
+     * @return          The entry for the Bean
+     */
+    public Entry record(String address, String name, int rssi, long now, BluetoothDevice device,
+                        BeanFactory factory) {
+        Entry entry = byAddress.get(address);
+        if (entry == null) {
+            Entry created = new Entry(factory.create(device), address, name, rssi, now);
+            entry = byAddress.putIfAbsent(address, created);
+            if (entry == null) {
+                entry = created;
+                byName.put(entry.nameKey(), entry);
+                dirty = true;
+                if (byAddress.size() > capacity) {
+                    evict(now);
+                }
+                return entry;
+            }
+        }
+
+        entry.smoothedRssi += RSSI_ALPHA * (rssi - entry.smoothedRssi);
+        entry.lastSeen = now;
+        if (name != null && !name.equals(entry.name)) {
+            // Renamed Beans get a new entry so the name index stays correct
+            Entry renamed = new Entry(entry.bean, address, name, entry.getSmoothedRssi(), now);
+            if (byAddress.replace(address, entry, renamed)) {
+                byName.remove(entry.nameKey());
+                byName.put(renamed.nameKey(), renamed);
+                dirty = true;
+                entry = renamed;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Remove expired Beans, then the least recently seen Beans while over capacity.
+     *
+     * @param now The current time, in ms
+     */
+    public void evict(long now) {
+        long ttl = ttlMillis;
+        if (ttl > 0) {
+            for (Entry entry : byAddress.values()) {
+                if (now - entry.lastSeen > ttl && !entry.isPinned()) {
+                    remove(entry);
+                }
+            }
+        }
+
+        int limit = capacity;
+        if (byAddress.size() <= limit) {
+            return;
+        }
+        // Evict a little extra so a full registry isn't sorted for every new Bean
+        int excess = byAddress.size() - (limit - limit / 10);
+        List<Entry> candidates = new ArrayList<>(byAddress.size());
+        for (Entry entry : byAddress.values()) {
+            if (!entry.isPinned()) {
+                candidates.add(entry);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.lastSeen < b.lastSeen ? -1 : (a.lastSeen == b.lastSeen ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < excess && i < candidates.size(); i++) {
+            remove(candidates.get(i));
+        }
+    }
+
+    /**
+     * Remove every Bean.
+     */
+    public void clear() {
+        byAddress.clear();
+        byName.clear();
+        dirty = true;
+    }
+
+    /**
+     * Get all discovered Beans. The list is shared between callers until Beans are added or
+     * removed, and must not be modified.
+     *
+     * @return The entries
+     */
+    public List<Entry> entries() {
+        refreshSnapshots();
+        return snapshot;
+    }
+
+    /**
+     * Get all discovered Beans. Like {@link #entries()}, the list is shared and must not be
+     * modified.
+     *
+     * @return The Beans
+     */
+    public List<Bean> beans() {
+        refreshSnapshots();
+        return beanSnapshot;
+    }
+
+    private void refreshSnapshots() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    dirty = false;
+                    List<Entry> entries = new ArrayList<>(byAddress.values());
+                    List<Bean> beans = new ArrayList<>(entries.size());
+                    for (Entry entry : entries) {
+                        beans.add(entry.bean);
+                    }
+                    snapshot = Collections.unmodifiableList(entries);
+                    beanSnapshot = Collections.unmodifiableList(beans);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the Beans whose advertised name starts with a prefix.
+     *
+     * @param prefix    The name prefix, case sensitive
+     * @return          The matching entries
+     */
+    public List<Entry> withNamePrefix(String prefix) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : byName.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Get the Beans whose smoothed RSSI is at least a threshold.
+     *
+     * @param minRssi   The minimum RSSI, in dBm
+     * @return          The matching entries
+     */
+    public List<Entry> withRssiAtLeast(int minRssi) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries()) {
+            if (entry.getSmoothedRssi() >= minRssi) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the Beans seen at or after a time.
+     *
+     * @param since The time, in ms
+     * @return      The matching entries
+     */
+    public List<Entry> seenSince(long since) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries()) {
+            if (entry.lastSeen >= since) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private void remove(Entry entry) {
+        if (byAddress.remove(entry.address, entry)) {
+            byName.remove(entry.nameKey(), entry);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Creates the Bean for a newly discovered address.
+     */
+    public interface BeanFactory {
+        public Bean create(BluetoothDevice device);
+    }
+}
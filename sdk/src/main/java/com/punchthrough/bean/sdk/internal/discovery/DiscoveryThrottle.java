@@ -0,0 +1,93 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which advertisements are reported as discovery events, and collects the Beans that
+ * changed since the last batch.
+ *
+ * A Bean is always reported the first time it is seen. After that it is reported at most once per
+ * interval, and only if its smoothed RSSI has moved by at least the threshold since it was last
+ * reported. {@link #shouldReport(DiscoveredBeans.Entry, long)} must only be called from the scan
+ * thread; the batch methods can be called from any thread.
+ */
+public class DiscoveryThrottle {
+
+    static final long NEVER = Long.MIN_VALUE;
+
+    private volatile long minInterval;
+    private volatile int rssiThreshold;
+
+    private final Map<String, DiscoveredBeans.Entry> changed = new LinkedHashMap<>();
+
+    /**
+     * @param minInterval   Shortest time between reports for one Bean, in ms
+     * @param rssiThreshold Smallest change in smoothed RSSI, in dBm, that is worth reporting.
+     *                      With both set to 0, every advertisement is reported.
+     */
+    public DiscoveryThrottle(long minInterval, int rssiThreshold) {
+        set(minInterval, rssiThreshold);
+    }
+
+    public void set(long minInterval, int rssiThreshold) {
+        if (minInterval < 0 || rssiThreshold < 0) {
+            throw new IllegalArgumentException("Interval and threshold cannot be negative");
+        }
+        this.minInterval = minInterval;
+        this.rssiThreshold = rssiThreshold;
+    }
+
+    /**
+     * @return true if every advertisement is reported
+     */
+    public boolean isDisabled() {
+        return minInterval == 0 && rssiThreshold == 0;
+    }
+
+    /**
+     * Decide whether a Bean's latest advertisement should be reported.
+     *
+     * @param entry The Bean's entry, already updated with the advertisement
+     * @param now   The current time, in ms
+     * @return      true if a discovery event should be sent
+     */
+    public boolean shouldReport(DiscoveredBeans.Entry entry, long now) {
+        int rssi = entry.getSmoothedRssi();
+        if (entry.lastReported != NEVER) {
+            if (now - entry.lastReported < minInterval ||
+                    Math.abs(rssi - entry.reportedRssi) < rssiThreshold) {
+                return false;
+            }
+        }
+        entry.lastReported = now;
+        entry.reportedRssi = rssi;
+        return true;
+    }
+
+    /**
+     * Add a reported Bean to the pending batch. A Bean already in the batch keeps its position.
+     *
+     * @param entry The Bean's entry
+     */
+    public void markChanged(DiscoveredBeans.Entry entry) {
+        synchronized (changed) {
+            changed.put(entry.getAddress(), entry);
+        }
+    }
+
+    /**
+     * Take the Beans marked changed since the last call.
+     *
+     * @return The changed entries, in the order they were first reported, without duplicates
+     */
+    public List<DiscoveredBeans.Entry> drainChanged() {
+        synchronized (changed) {
+            List<DiscoveredBeans.Entry> entries = new ArrayList<>(changed.values());
+            changed.clear();
+            return entries;
+        }
+    }
+}
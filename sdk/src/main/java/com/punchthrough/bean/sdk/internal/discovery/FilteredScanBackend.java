@@ -0,0 +1,144 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import com.punchthrough.bean.sdk.ScanMode;
+import com.punchthrough.bean.sdk.internal.utility.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scans with {@link BluetoothLeScanner}. The controller only reports devices advertising the
+ * Bean serial service, and optionally Beans in iBeacon mode. It can hold results in batches so
+ * the app wakes less often.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class FilteredScanBackend implements ScanBackend {
+
+    private static final String TAG = "FilteredScanBackend";
+
+    private final BluetoothAdapter mAdapter;
+    private final ScanMode mMode;
+    private final long mReportDelay;
+    private final boolean mIncludeBeacons;
+
+    private BluetoothLeScanner mScanner;
+    private volatile Listener mListener;
+
+    private final ScanCallback mCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            deliver(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                deliver(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Scan failed: " + errorCode);
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onScanFailed(errorCode);
+            }
+        }
+    };
+
+    /**
+     * @param adapter       The Bluetooth adapter to scan with
+     * @param mode          The scan mode
+     * @param reportDelay   How long the controller may hold results before reporting them, in
+     *                      ms. Ignored if the controller can't batch results.
+     * @param includeBeacons Also report Beans advertising in iBeacon mode
+     */
+    public FilteredScanBackend(BluetoothAdapter adapter, ScanMode mode, long reportDelay,
+                               boolean includeBeacons) {
+        mAdapter = adapter;
+        mMode = mode;
+        mReportDelay = reportDelay;
+        mIncludeBeacons = includeBeacons;
+    }
+
+    /**
+     * @return true if this platform supports {@link BluetoothLeScanner}
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    @Override
+    public boolean start(Listener listener) {
+        // The scanner is null while Bluetooth is off
+        mScanner = mAdapter.getBluetoothLeScanner();
+        if (mScanner == null) {
+            return false;
+        }
+
+        List<ScanFilter> filters = new ArrayList<>(2);
+        filters.add(new ScanFilter.Builder()
+                .setServiceUuid(new ParcelUuid(Constants.UUID_SERIAL_SERVICE))
+                .build());
+        if (mIncludeBeacons) {
+            filters.add(new ScanFilter.Builder()
+                    .setManufacturerData(AdvertisementParser.APPLE_COMPANY_ID,
+                            AdvertisementParser.beanBeaconFilterData(),
+                            AdvertisementParser.beanBeaconFilterMask())
+                    .build());
+        }
+
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(platformMode(mMode));
+        if (mReportDelay > 0 && mAdapter.isOffloadedScanBatchingSupported()) {
+            settings.setReportDelay(mReportDelay);
+        }
+
+        mListener = listener;
+        mScanner.startScan(filters, settings.build(), mCallback);
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if (mScanner != null) {
+            if (mAdapter.isEnabled()) {
+                mScanner.stopScan(mCallback);
+            }
+            mScanner = null;
+        }
+        mListener = null;
+    }
+
+    private void deliver(ScanResult result) {
+        Listener listener = mListener;
+        ScanRecord record = result.getScanRecord();
+        if (listener != null && record != null) {
+            listener.onAdvertisement(result.getDevice(), result.getRssi(), record.getBytes());
+        }
+    }
+
+    private static int platformMode(ScanMode mode) {
+        switch (mode) {
+            case LOW_POWER:
+                return ScanSettings.SCAN_MODE_LOW_POWER;
+            case LOW_LATENCY:
+                return ScanSettings.SCAN_MODE_LOW_LATENCY;
+            default:
+                return ScanSettings.SCAN_MODE_BALANCED;
+        }
+    }
+}
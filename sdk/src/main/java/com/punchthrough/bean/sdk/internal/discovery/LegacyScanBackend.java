@@ -0,0 +1,46 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothAdapter.LeScanCallback;
+import android.bluetooth.BluetoothDevice;
+
+/**
+ * Scans with {@link BluetoothAdapter#startLeScan(LeScanCallback)}. Every advertisement from every
+ * device is delivered, so callers must filter them.
+ */
+@SuppressWarnings("deprecation")
+public class LegacyScanBackend implements ScanBackend {
+
+    private final BluetoothAdapter mAdapter;
+    private volatile Listener mListener;
+
+    private final LeScanCallback mCallback = new LeScanCallback() {
+        @Override
+        public void onLeScan(BluetoothDevice device, int rssi, byte[] scanRecord) {
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onAdvertisement(device, rssi, scanRecord);
+            }
+        }
+    };
+
+    public LegacyScanBackend(BluetoothAdapter adapter) {
+        mAdapter = adapter;
+    }
+
+    @Override
+    public boolean start(Listener listener) {
+        mListener = listener;
+        if (!mAdapter.startLeScan(mCallback)) {
+            mListener = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        mAdapter.stopLeScan(mCallback);
+        mListener = null;
+    }
+}
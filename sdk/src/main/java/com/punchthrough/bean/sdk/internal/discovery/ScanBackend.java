@@ -0,0 +1,42 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import android.bluetooth.BluetoothDevice;
+
+/**
+ * A way of running a BLE scan. BeanManager picks the best backend the platform supports.
+ */
+public interface ScanBackend {
+
+    /**
+     * Start scanning.
+     *
+     * @param listener  Receives advertisements until {@link #stop()} is called
+     * @return          false if the Bluetooth stack couldn't start the scan
+     */
+    public boolean start(Listener listener);
+
+    /**
+     * Stop a scan started with {@link #start(Listener)}. No advertisements are delivered after
+     * this returns; ones still held in a controller batch are dropped.
+     */
+    public void stop();
+
+    public static interface Listener {
+
+        /**
+         * Called for each advertisement received.
+         *
+         * @param device        The advertising device
+         * @param rssi          The advertisement's RSSI
+         * @param scanRecord    The raw advertisement data
+         */
+        public void onAdvertisement(BluetoothDevice device, int rssi, byte[] scanRecord);
+
+        /**
+         * Called if a started scan fails.
+         *
+         * @param errorCode The platform's error code
+         */
+        public void onScanFailed(int errorCode);
+    }
+}
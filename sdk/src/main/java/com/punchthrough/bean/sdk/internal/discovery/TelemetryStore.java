@@ -0,0 +1,128 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import com.punchthrough.bean.sdk.message.TelemetrySample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the most recent telemetry samples for each advertising Bean.
+ *
+ * Each Bean's samples are kept in a fixed-size ring, so a Bean that advertises quickly only
+ * replaces its own oldest samples. When more Beans than <code>maxDevices</code> are tracked, the
+ * Bean that was heard from least recently is dropped.
+ */
+public class TelemetryStore {
+
+    private final ConcurrentHashMap<String, History> histories = new ConcurrentHashMap<>();
+    private final int samplesPerDevice;
+    private final int maxDevices;
+
+    public TelemetryStore(int samplesPerDevice, int maxDevices) {
+        if (samplesPerDevice < 1 || maxDevices < 1) {
+            throw new IllegalArgumentException("Capacities must be positive");
+        }
+        this.samplesPerDevice = samplesPerDevice;
+        this.maxDevices = maxDevices;
+    }
+
+    public int getSamplesPerDevice() {
+        return samplesPerDevice;
+    }
+
+    /**
+     * Add a sample to a Bean's history, replacing its oldest sample if the history is full.
+     *
+     * @param address   The Bean's address
+     * @param sample    The sample
+     */
+    public void add(String address, TelemetrySample sample) {
+        History history = histories.get(address);
+        if (history == null) {
+            if (histories.size() >= maxDevices) {
+                evictOldest();
+            }
+            history = new History(samplesPerDevice);
+            History existing = histories.putIfAbsent(address, history);
+            if (existing != null) {
+                history = existing;
+            }
+        }
+        history.add(sample);
+    }
+
+    /**
+     * Get a Bean's samples.
+     *
+     * @param address   The Bean's address
+     * @return          A copy of the samples, oldest first; empty if none were received
+     */
+    public List<TelemetrySample> get(String address) {
+        History history = histories.get(address);
+        return history == null ? Collections.<TelemetrySample>emptyList() : history.snapshot();
+    }
+
+    /**
+     * @return The addresses of the Beans with samples
+     */
+    public List<String> addresses() {
+        return new ArrayList<>(histories.keySet());
+    }
+
+    public void clear() {
+        histories.clear();
+    }
+
+    private void evictOldest() {
+        String oldest = null;
+        long oldestTime = Long.MAX_VALUE;
+        for (Map.Entry<String, History> entry : histories.entrySet()) {
+            long latest = entry.getValue().latestTimestamp();
+            if (latest < oldestTime) {
+                oldestTime = latest;
+                oldest = entry.getKey();
+            }
+        }
+        if (oldest != null) {
+            histories.remove(oldest);
+        }
+    }
+
+    private static class History {
+
+        private final TelemetrySample[] samples;
+        private int next = 0;
+        private int count = 0;
+
+        History(int capacity) {
+            samples = new TelemetrySample[capacity];
+        }
+
+        synchronized void add(TelemetrySample sample) {
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+        }
+
+        synchronized long latestTimestamp() {
+            if (count == 0) {
+                return Long.MIN_VALUE;
+            }
+            return samples[(next - 1 + samples.length) % samples.length].timestamp();
+        }
+
+        synchronized List<TelemetrySample> snapshot() {
+            List<TelemetrySample> list = new ArrayList<>(count);
+            int start = (next - count + samples.length) % samples.length;
+            for (int i = 0; i < count; i++) {
+                list.add(samples[(start + i) % samples.length]);
+            }
+            return list;
+        }
+    }
+}
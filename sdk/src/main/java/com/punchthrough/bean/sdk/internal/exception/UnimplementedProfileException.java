@@ -1,7 +0,0 @@
-package com.punchthrough.bean.sdk.internal.exception;
-
-public class UnimplementedProfileException extends Exception {
-    public UnimplementedProfileException(String detailMessage) {
-        super(detailMessage);
-    }
-}
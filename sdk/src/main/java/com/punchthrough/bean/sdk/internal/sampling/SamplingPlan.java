@@ -0,0 +1,226 @@
+package com.punchthrough.bean.sdk.internal.sampling;
+
+import com.punchthrough.bean.sdk.message.SamplingStats;
+import com.punchthrough.bean.sdk.message.SensorSnapshot;
+import com.punchthrough.bean.sdk.message.SensorSnapshot.Reading;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which readings of which devices are due, for periodic sampling.
+ *
+ * Periods are rounded up to a multiple of the tick, and each reading is due at multiples of its
+ * own period, so readings with related periods fall due together and can be read in one batch.
+ * A device has at most one batch in flight: readings that fall due while it is outstanding are
+ * dropped, not queued, so a slow device never builds a backlog of stale requests.
+ *
+ * @param <K> The device type
+ */
+public class SamplingPlan<K> {
+
+    // Weight of the newest interval in the achieved rate
+    private static final double RATE_SMOOTHING = 0.2;
+
+    private static class Entry {
+        final long period;
+        long next;
+        int samples = 0;
+        int dropped = 0;
+        long lastSample = -1;
+        double averageInterval = 0;
+
+        Entry(long period, long next) {
+            this.period = period;
+            this.next = next;
+        }
+    }
+
+    private final long tick;
+    private final Map<K, EnumMap<Reading, Entry>> entries = new LinkedHashMap<>();
+    private final Set<K> inFlight = new HashSet<>();
+
+    /**
+     * @param tickMillis How often {@link #due(long)} will be called, in ms
+     */
+    public SamplingPlan(long tickMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1 ms: " + tickMillis);
+        }
+        this.tick = tickMillis;
+    }
+
+    public long getTickMillis() {
+        return tick;
+    }
+
+    /**
+     * Sample a reading of a device periodically, replacing any earlier period for it.
+     *
+     * @param device        The device
+     * @param reading       The reading
+     * @param periodMillis  The time between samples, in ms
+     * @param now           The current time, in ms
+     * @return              The period that will be used
+     */
+    public synchronized long set(K device, Reading reading, long periodMillis, long now) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Period must be at least 1 ms: " + periodMillis);
+        }
+        long period = ((periodMillis + tick - 1) / tick) * tick;
+        EnumMap<Reading, Entry> readings = entries.get(device);
+        if (readings == null) {
+            readings = new EnumMap<>(Reading.class);
+            entries.put(device, readings);
+        }
+        readings.put(reading, new Entry(period, (now / period + 1) * period));
+        return period;
+    }
+
+    /**
+     * Stop sampling a reading of a device.
+     *
+     * @param device    The device
+     * @param reading   The reading
+     */
+    public synchronized void remove(K device, Reading reading) {
+        EnumMap<Reading, Entry> readings = entries.get(device);
+        if (readings != null) {
+            readings.remove(reading);
+            if (readings.isEmpty()) {
+                remove(device);
+            }
+        }
+    }
+
+    /**
+     * Stop sampling every reading of a device.
+     *
+     * @param device The device
+     */
+    public synchronized void remove(K device) {
+        entries.remove(device);
+        inFlight.remove(device);
+    }
+
+    /**
+     * @param device    The device
+     * @return          The shortest period of the device's readings, in ms, or 0 if none
+     */
+    public synchronized long shortestPeriod(K device) {
+        EnumMap<Reading, Entry> readings = entries.get(device);
+        long shortest = 0;
+        if (readings != null) {
+            for (Entry entry : readings.values()) {
+                if (shortest == 0 || entry.period < shortest) {
+                    shortest = entry.period;
+                }
+            }
+        }
+        return shortest;
+    }
+
+    /**
+     * @return true if nothing is being sampled
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return The devices with readings being sampled
+     */
+    public synchronized List<K> getDevices() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * Collect the readings that are due, and mark their devices as having a batch in flight.
+     *
+     * @param now   The current time, in ms
+     * @return      The readings to take from each device; devices with nothing due are left out
+     */
+    public synchronized Map<K, EnumSet<Reading>> due(long now) {
+        Map<K, EnumSet<Reading>> due = new LinkedHashMap<>();
+        for (Map.Entry<K, EnumMap<Reading, Entry>> device : entries.entrySet()) {
+            boolean busy = inFlight.contains(device.getKey());
+            EnumSet<Reading> readings = null;
+            for (Map.Entry<Reading, Entry> reading : device.getValue().entrySet()) {
+                Entry entry = reading.getValue();
+                if (entry.next > now) {
+                    continue;
+                }
+                // Deadlines missed entirely, e.g. because ticks ran late, count as dropped
+                long missed = (now - entry.next) / entry.period;
+                entry.dropped += missed;
+                entry.next += (missed + 1) * entry.period;
+                if (busy) {
+                    entry.dropped++;
+                } else {
+                    if (readings == null) {
+                        readings = EnumSet.noneOf(Reading.class);
+                    }
+                    readings.add(reading.getKey());
+                }
+            }
+            if (readings != null) {
+                due.put(device.getKey(), readings);
+                inFlight.add(device.getKey());
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Record a finished batch, so the device can be sampled again.
+     *
+     * @param device    The device
+     * @param snapshot  The readings that arrived, or null if the batch failed
+     * @param now       The current time, in ms
+     */
+    public synchronized void completed(K device, SensorSnapshot snapshot, long now) {
+        inFlight.remove(device);
+        EnumMap<Reading, Entry> readings = entries.get(device);
+        if (readings == null || snapshot == null) {
+            return;
+        }
+        for (Reading reading : snapshot.getRequested()) {
+            Entry entry = readings.get(reading);
+            if (entry == null) {
+                continue;
+            }
+            if (!snapshot.has(reading)) {
+                entry.dropped++;
+                continue;
+            }
+            if (entry.lastSample >= 0) {
+                long interval = now - entry.lastSample;
+                entry.averageInterval = entry.samples < 2 ? interval :
+                        entry.averageInterval + RATE_SMOOTHING * (interval - entry.averageInterval);
+            }
+            entry.lastSample = now;
+            entry.samples++;
+        }
+    }
+
+    /**
+     * @param device    The device
+     * @param reading   The reading
+     * @return          How sampling the reading is going, or null if it isn't being sampled
+     */
+    public synchronized SamplingStats getStats(K device, Reading reading) {
+        EnumMap<Reading, Entry> readings = entries.get(device);
+        Entry entry = readings == null ? null : readings.get(reading);
+        if (entry == null) {
+            return null;
+        }
+        double rate = entry.averageInterval > 0 ? 1000.0 / entry.averageInterval : 0;
+        return SamplingStats.create(entry.period, entry.samples, entry.dropped, rate);
+    }
+}
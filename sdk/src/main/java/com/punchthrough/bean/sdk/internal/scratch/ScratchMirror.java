@@ -0,0 +1,188 @@
+package com.punchthrough.bean.sdk.internal.scratch;
+
+import com.punchthrough.bean.sdk.internal.utility.Scheduler;
+import com.punchthrough.bean.sdk.message.Callback;
+import com.punchthrough.bean.sdk.message.ScratchBank;
+import com.punchthrough.bean.sdk.message.ScratchData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Local copy of a Bean's scratch banks, kept up to date from notifications, reads and writes.
+ *
+ * Each bank has a version that goes up whenever its value changes, and the time it was last
+ * heard of. A bank is "live" while notifications for it are enabled, so any change the sketch
+ * makes reaches the mirror; live banks with a value heard on the current connection never need
+ * to be read over the air. Values from earlier connections are kept, but are never fresh.
+ */
+public class ScratchMirror {
+
+    private static class Waiter {
+        final ScratchBank bank;
+        final long sinceVersion;
+        final Callback<ScratchData> callback;
+        ScheduledFuture<?> timeout;
+
+        Waiter(ScratchBank bank, long sinceVersion, Callback<ScratchData> callback) {
+            this.bank = bank;
+            this.sinceVersion = sinceVersion;
+            this.callback = callback;
+        }
+    }
+
+    private final int banks = ScratchBank.values().length;
+    private final byte[][] values = new byte[banks][];
+    private final long[] versions = new long[banks];
+    private final long[] timestamps = new long[banks];
+    private final boolean[] live = new boolean[banks];
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    public ScratchMirror() {
+        Arrays.fill(timestamps, -1);
+    }
+
+    /**
+     * Record a bank's value. The version only goes up if the value is different.
+     *
+     * @param bank  The bank
+     * @param value The value
+     * @param now   The current time, in ms
+     * @return      true if the value changed
+     */
+    public boolean update(ScratchBank bank, byte[] value, long now) {
+        int i = bank.ordinal();
+        List<Waiter> woken = null;
+        ScratchData data;
+        synchronized (this) {
+            timestamps[i] = now;
+            if (values[i] != null && Arrays.equals(values[i], value)) {
+                return false;
+            }
+            values[i] = value.clone();
+            versions[i]++;
+            data = ScratchData.create(bank, value.clone());
+
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.bank == bank && waiter.sinceVersion < versions[i]) {
+                    iterator.remove();
+                    Scheduler.cancel(waiter.timeout);
+                    if (woken == null) {
+                        woken = new ArrayList<>();
+                    }
+                    woken.add(waiter);
+                }
+            }
+        }
+        if (woken != null) {
+            for (Waiter waiter : woken) {
+                waiter.callback.onResult(data);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param bank  The bank
+     * @return      The bank's last known value, or null if it isn't known
+     */
+    public synchronized ScratchData get(ScratchBank bank) {
+        byte[] value = values[bank.ordinal()];
+        return value == null ? null : ScratchData.create(bank, value.clone());
+    }
+
+    /**
+     * @param bank  The bank
+     * @return      How many times the bank's value has changed, 0 if it has never been known
+     */
+    public synchronized long getVersion(ScratchBank bank) {
+        return versions[bank.ordinal()];
+    }
+
+    /**
+     * @param bank  The bank
+     * @return      When the bank's value was last received or written, in ms, or -1
+     */
+    public synchronized long getTimestamp(ScratchBank bank) {
+        return timestamps[bank.ordinal()];
+    }
+
+    /**
+     * Mark whether notifications are enabled for a bank on the current connection.
+     *
+     * @param bank      The bank
+     * @param enabled   true if notifications are enabled
+     */
+    public synchronized void setLive(ScratchBank bank, boolean enabled) {
+        live[bank.ordinal()] = enabled;
+    }
+
+    /**
+     * Mark every bank as not live, e.g. because the Bean disconnected. Values and versions are
+     * kept, but the sketch may change them while the link is down, so they stop being fresh until
+     * they are heard again.
+     */
+    public synchronized void clearLive() {
+        Arrays.fill(live, false);
+        Arrays.fill(timestamps, -1);
+    }
+
+    /**
+     * Check whether a bank's value can be used instead of reading it from the Bean.
+     *
+     * @param bank          The bank
+     * @param now           The current time, in ms
+     * @param maxAgeMillis  How old a value of a bank without notifications may be, in ms
+     * @return              true if the value was heard on this connection and is either live or
+     *                      recent enough
+     */
+    public synchronized boolean isFresh(ScratchBank bank, long now, long maxAgeMillis) {
+        int i = bank.ordinal();
+        if (values[i] == null || timestamps[i] < 0) {
+            return false;
+        }
+        return live[i] || now - timestamps[i] <= maxAgeMillis;
+    }
+
+    /**
+     * Wait for a bank's version to go past a given version.
+     *
+     * @param bank          The bank
+     * @param sinceVersion  The version to wait past; the callback is called right away if the
+     *                      bank is already past it
+     * @param timeoutMillis How long to wait, in ms
+     * @param callback      Called with the new value, or with null if the timeout passes first
+     */
+    public void await(ScratchBank bank, long sinceVersion, long timeoutMillis,
+                      final Callback<ScratchData> callback) {
+        ScratchData current = null;
+        synchronized (this) {
+            if (versions[bank.ordinal()] > sinceVersion) {
+                current = get(bank);
+            } else {
+                final Waiter waiter = new Waiter(bank, sinceVersion, callback);
+                waiters.add(waiter);
+                waiter.timeout = Scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean waiting;
+                        synchronized (ScratchMirror.this) {
+                            waiting = waiters.remove(waiter);
+                        }
+                        if (waiting) {
+                            callback.onResult(null);
+                        }
+                    }
+                }, timeoutMillis);
+            }
+        }
+        if (current != null) {
+            callback.onResult(current);
+        }
+    }
+}
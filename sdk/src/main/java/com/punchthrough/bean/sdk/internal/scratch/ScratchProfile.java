@@ -1,15 +1,264 @@
 package com.punchthrough.bean.sdk.internal.scratch;
 
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.util.Log;
+
+import com.punchthrough.bean.sdk.BuildConfig;
 import com.punchthrough.bean.sdk.internal.ble.BaseProfile;
 import com.punchthrough.bean.sdk.internal.ble.GattClient;
+import com.punchthrough.bean.sdk.internal.exception.NoEnumFoundException;
+import com.punchthrough.bean.sdk.internal.utility.Constants;
+import com.punchthrough.bean.sdk.internal.utility.EnumParse;
+import com.punchthrough.bean.sdk.message.ScratchBank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * Direct access to the Bean's scratch characteristics, without going through serial messages.
+ *
+ * Writes are coalesced per bank: while a write to a bank is in flight, later values for that bank
+ * replace each other and only the newest is written next. Reads are shared: callers asking for a
+ * bank while a read of it is in flight get that read's value. Change notifications are passed to
+ * the {@link ScratchListener}.
+ */
 public class ScratchProfile extends BaseProfile {
 
     protected static final String TAG = "ScratchProfile";
+    private static final int BANK_COUNT = 5;
+
     private boolean ready = false;
+    private ScratchListener mListener;
+
+    // Indexed by bank number, 1 to 5. Null if the Bean's scratch characteristics can't be used.
+    private volatile BluetoothGattCharacteristic[] mCharacteristics;
+
+    // Per-bank state, guarded by "this"
+    private final boolean[] mWriting = new boolean[BANK_COUNT + 1];
+    private final byte[][] mNextWrite = new byte[BANK_COUNT + 1][];
+    private final List<List<ReadCallback>> mReaders = new ArrayList<>(BANK_COUNT + 1);
 
     public ScratchProfile(GattClient client) {
         super(client);
+        for (int i = 0; i <= BANK_COUNT; i++) {
+            mReaders.add(new ArrayList<ReadCallback>());
+        }
+    }
+
+    @Override
+    public void onProfileReady() {
+        BluetoothGattService service = mGattClient.getService(Constants.UUID_SCRATCH_SERVICE);
+        BluetoothGattCharacteristic[] scratch = new BluetoothGattCharacteristic[BANK_COUNT + 1];
+        boolean usable = service != null;
+
+        if (service != null) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                int bank = bankIndex(characteristic.getUuid());
+                if (bank > 0) {
+                    scratch[bank] = characteristic;
+                }
+                if (characteristic.getDescriptors().size() < 2) {
+                    /* This Bean has a scratch characteristic with less than two
+                     * descriptors.
+                     *
+                     * This is a very old (probably factory-firmware) Bean. These Beans have
+                     * malformed scratch characteristic tables. If Android writes to one of
+                     * these Beans' scratch characteristic tables, it will close the
+                     * connection.
+                     *
+                     * To fix this problem, update these Beans to the latest firmware before
+                     * use.
+                     */
+                    usable = false;
+                }
+            }
+        }
+
+        if (!usable) {
+            Log.w(TAG, "Scratch characteristics unavailable, scratch goes over serial");
+        }
+        mCharacteristics = usable ? scratch : null;
+        ready = true;
+    }
+
+    public void setListener(ScratchListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Find the scratch bank a characteristic UUID belongs to. Scratch characteristics share the
+     * scratch service UUID except for the low bits of the first group, which hold the bank number.
+     *
+     * @param uuid  A characteristic UUID
+     * @return      The bank number, from 1 to 5, or -1 if the UUID isn't a scratch characteristic
+     */
+    public static int bankIndex(UUID uuid) {
+        UUID service = Constants.UUID_SCRATCH_SERVICE;
+        long msb = uuid.getMostSignificantBits();
+        if (uuid.getLeastSignificantBits() != service.getLeastSignificantBits() ||
+                (msb & 0xffffffffL) != (service.getMostSignificantBits() & 0xffffffffL)) {
+            return -1;
+        }
+        long index = (msb >>> 32) - (service.getMostSignificantBits() >>> 32);
+        return index >= 1 && index <= BANK_COUNT ? (int) index : -1;
+    }
+
+    @Override
+    public void onBeanDisconnected() {
+        synchronized (this) {
+            for (int i = 0; i <= BANK_COUNT; i++) {
+                mWriting[i] = false;
+                mNextWrite[i] = null;
+                mReaders.get(i).clear();
+            }
+        }
+    }
+
+    /**
+     * @return true if scratch banks can be read and written directly on this connection
+     */
+    public boolean isAvailable() {
+        return ready && mCharacteristics != null;
+    }
+
+    /**
+     * Turn on change notifications for a scratch bank. Notifications stay on until the Bean
+     * disconnects; enabling them again is a no-op.
+     *
+     * @param bank  The bank number, from 1 to 5
+     * @return      false if the Bean isn't ready or its scratch characteristics can't be used
+     */
+    public boolean enableNotifications(int bank) {
+        BluetoothGattCharacteristic characteristic = characteristic(bank);
+        return characteristic != null && mGattClient.enableNotifications(characteristic);
+    }
+
+    /**
+     * Write a scratch bank. If a write to the bank is already in flight, the value is written
+     * after it, replacing any other value waiting for that bank.
+     *
+     * @param bank  The bank number, from 1 to 5
+     * @param value The value, up to 20 bytes
+     * @return      false if scratch characteristics can't be used; write over serial instead
+     */
+    public boolean write(int bank, byte[] value) {
+        BluetoothGattCharacteristic characteristic = characteristic(bank);
+        if (characteristic == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (mWriting[bank]) {
+                mNextWrite[bank] = value.clone();
+                return true;
+            }
+            mWriting[bank] = true;
+        }
+        send(characteristic, value);
+        return true;
+    }
+
+    /**
+     * Read a scratch bank.
+     *
+     * @param bank      The bank number, from 1 to 5
+     * @param callback  Called with the value
+     * @return          false if scratch characteristics can't be used; read over serial instead
+     */
+    public boolean read(int bank, ReadCallback callback) {
+        BluetoothGattCharacteristic characteristic = characteristic(bank);
+        if (characteristic == null) {
+            return false;
+        }
+        synchronized (this) {
+            List<ReadCallback> readers = mReaders.get(bank);
+            readers.add(callback);
+            if (readers.size() > 1) {
+                return true;
+            }
+        }
+        mGattClient.readCharacteristic(characteristic);
+        return true;
+    }
+
+    @Override
+    public boolean handlesCharacteristic(BluetoothGattCharacteristic characteristic) {
+        return bankIndex(characteristic.getUuid()) > 0;
+    }
+
+    @Override
+    public void onCharacteristicChanged(GattClient client, BluetoothGattCharacteristic characteristic) {
+        int index = bankIndex(characteristic.getUuid());
+        if (index < 1) {
+            return;
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Received scratch bank update (" + index + ")");
+        }
+        ScratchListener listener = mListener;
+        if (listener == null) {
+            client.disconnect();
+            return;
+        }
+        try {
+            ScratchBank bank = EnumParse.enumWithRawValue(ScratchBank.class, index);
+            // The stack may reuse the value array for the next notification
+            listener.onScratchValueChanged(bank, characteristic.getValue().clone());
+        } catch (NoEnumFoundException e) {
+            Log.e(TAG, "Couldn't parse bank enum from scratch bank with index " + index);
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void onCharacteristicWrite(GattClient client, BluetoothGattCharacteristic characteristic) {
+        int bank = bankIndex(characteristic.getUuid());
+        if (bank < 1) {
+            return;
+        }
+        byte[] next;
+        synchronized (this) {
+            next = mNextWrite[bank];
+            mNextWrite[bank] = null;
+            mWriting[bank] = next != null;
+        }
+        if (next != null) {
+            send(characteristic, next);
+        }
+    }
+
+    @Override
+    public void onCharacteristicRead(GattClient client, BluetoothGattCharacteristic characteristic) {
+        int bank = bankIndex(characteristic.getUuid());
+        if (bank < 1) {
+            return;
+        }
+        List<ReadCallback> readers;
+        synchronized (this) {
+            readers = new ArrayList<>(mReaders.get(bank));
+            mReaders.get(bank).clear();
+        }
+        byte[] value = characteristic.getValue();
+        for (ReadCallback reader : readers) {
+            reader.onRead(value.clone());
+        }
+    }
+
+    private BluetoothGattCharacteristic characteristic(int bank) {
+        BluetoothGattCharacteristic[] scratch = mCharacteristics;
+        if (!ready || scratch == null || bank < 1 || bank > BANK_COUNT) {
+            return null;
+        }
+        return scratch[bank];
+    }
+
+    private void send(BluetoothGattCharacteristic characteristic, byte[] value) {
+        // GattClient copies the value when it queues the write
+        synchronized (characteristic) {
+            characteristic.setValue(value);
+            mGattClient.writeCharacteristic(characteristic);
+        }
     }
 
     public String getName() {
@@ -22,6 +271,15 @@ public class ScratchProfile extends BaseProfile {
 
     public void clearReady() {
         ready = false;
+        mCharacteristics = null;
+    }
+
+    public static interface ReadCallback {
+        public void onRead(byte[] value);
     }
 
+    // This listener is only for communicating with the Bean class
+    public static interface ScratchListener {
+        public void onScratchValueChanged(ScratchBank bank, byte[] value);
+    }
 }
@@ -1,28 +1,27 @@
 package com.punchthrough.bean.sdk.internal.serial;
 
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
-import android.os.Handler;
 import android.util.Log;
 
 import com.punchthrough.bean.sdk.BuildConfig;
 import com.punchthrough.bean.sdk.internal.ble.BaseProfile;
 import com.punchthrough.bean.sdk.internal.ble.GattClient;
-import com.punchthrough.bean.sdk.internal.exception.NoEnumFoundException;
-import com.punchthrough.bean.sdk.internal.utility.EnumParse;
-import com.punchthrough.bean.sdk.message.ScratchBank;
+import com.punchthrough.bean.sdk.internal.utility.EventLoop;
 import com.punchthrough.bean.sdk.internal.utility.Constants;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okio.Buffer;
 
 /**
  * Custom BLE profile that allows serial communications
+ *
+ * Packet queues and message assembly state are confined to the connection's {@link EventLoop}.
+ * GATT callbacks and {@link #sendMessage(Buffer)} hand their work to the loop, so they can be
+ * called from any thread.
  */
 public class GattSerialTransportProfile extends BaseProfile {
 
@@ -30,47 +29,52 @@ public class GattSerialTransportProfile extends BaseProfile {
 
     // Constants
     public static final int PACKET_TX_MAX_PAYLOAD_LENGTH = 19;
-    private static final List<UUID> BEAN_SCRATCH_UUIDS = Arrays.asList(
-            Constants.UUID_SCRATCH_CHAR_1,
-            Constants.UUID_SCRATCH_CHAR_2,
-            Constants.UUID_SCRATCH_CHAR_3,
-            Constants.UUID_SCRATCH_CHAR_4,
-            Constants.UUID_SCRATCH_CHAR_5
-    );
 
     // Internal dependencies
     private SerialListener mListener;
     private BluetoothGattCharacteristic mSerialCharacteristic;
-    private Handler mHandler;
+    private final EventLoop mLoop;
     private MessageAssembler mMessageAssembler = new MessageAssembler();
 
     // Internal state
-    private boolean ready = false;
+    private volatile boolean ready = false;
+
+    // Loop-confined state
     private boolean mReadyToSend = false;
-    private List<GattSerialPacket> mPendingPackets = new ArrayList<>(32);
+    private final List<GattSerialPacket> mPendingPackets = new ArrayList<>(32);
     private int mOutgoingMessageCount = 0;
+    private EventLoop.Timeout mDequeueRetry;
+
+    // Updated when messages are queued, so senders see their own messages in the count
+    // immediately
+    private final AtomicInteger mPendingBytes = new AtomicInteger();
+
+    // Incremented on connect and disconnect; messages queued for an earlier connection are dropped
+    private final AtomicInteger mConnectionEpoch = new AtomicInteger();
 
     private final Runnable mDequeueRunnable = new Runnable() {
         @Override
         public void run() {
+            mDequeueRetry = null;
             if (!mPendingPackets.isEmpty()) {
                 if (mReadyToSend && mSerialCharacteristic != null) {
                     mReadyToSend = false;
                     GattSerialPacket packet = mPendingPackets.remove(0);
+                    mPendingBytes.addAndGet(-packet.getPacketData().length);
                     mSerialCharacteristic.setValue(packet.getPacketData());
                     if (!mGattClient.writeCharacteristic(mSerialCharacteristic)) {
                         Log.e(TAG, "Failed char write");
                     }
-                } else {
-                    mHandler.postDelayed(this, 150);
+                } else if (mDequeueRetry == null) {
+                    mDequeueRetry = mLoop.schedule(this, 150);
                 }
             }
         }
     };
 
-    public GattSerialTransportProfile(GattClient client, Handler handler) {
+    public GattSerialTransportProfile(GattClient client, EventLoop loop) {
         super(client);
-        mHandler = handler;
+        mLoop = loop;
     }
 
     @Override
@@ -82,54 +86,21 @@ public class GattSerialTransportProfile extends BaseProfile {
             Log.w(TAG, "Did not find bean serial on device");
             abort("Did not find bean serial on device");
         } else {
+            // Anything still queued from before this connection is dropped
+            mConnectionEpoch.incrementAndGet();
 
             // Enable Notifications for Serial chars
-            mGattClient.setCharacteristicNotification(mSerialCharacteristic, true);
-            for (BluetoothGattDescriptor descriptor : mSerialCharacteristic.getDescriptors()) {
-                if ((descriptor.getUuid().getMostSignificantBits() >> 32) == 0x2902) {
-                    descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                    mGattClient.writeDescriptor(descriptor);
-                }
-            }
-
-            service = mGattClient.getService(Constants.UUID_SCRATCH_SERVICE);
-
-            boolean hasScratchChars = true;
-
-            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
-                if (characteristic.getDescriptors().size() < 2) {
-                    /* This Bean has a scratch characteristic with less than two
-                     * descriptors.
-                     *
-                     * This is a very old (probably factory-firmware) Bean. These Beans have
-                     * malformed scratch characteristic tables. If Android writes to one of
-                     * these Beans' scratch characteristic tables, it will close the
-                     * connection.
-                     *
-                     * To fix this problem, update these Beans to the latest firmware before
-                     * use.
-                     */
-                    hasScratchChars = false;
-                }
-            }
-
-            if (hasScratchChars) {
-                // Enable Notifications for Scratch chars
-                for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
-                    mGattClient.setCharacteristicNotification(characteristic, true);
-                    for (BluetoothGattDescriptor descriptor : characteristic.getDescriptors()) {
-                        if ((descriptor.getUuid().getMostSignificantBits() >> 32) == 0x2902) {
-
-                            descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                            mGattClient.writeDescriptor(descriptor);
-                        }
-                    }
+            mGattClient.enableNotifications(mSerialCharacteristic);
+
+            mLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mMessageAssembler.reset();
+                    mReadyToSend = true;
+                    mOutgoingMessageCount = 0;
+                    mDequeueRunnable.run();
                 }
-            }
-
-            mMessageAssembler.reset();
-            mReadyToSend = true;
-            mOutgoingMessageCount = 0;
+            });
             if (BuildConfig.DEBUG) {
                 Log.i(TAG, "Setup complete");
             }
@@ -140,50 +111,74 @@ public class GattSerialTransportProfile extends BaseProfile {
     @Override
     public void onCharacteristicWrite(GattClient client, BluetoothGattCharacteristic characteristic) {
         if (mSerialCharacteristic == characteristic) {
-            mHandler.removeCallbacks(mDequeueRunnable);
-            mReadyToSend = true;
-            mHandler.post(mDequeueRunnable);
+            mLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cancelDequeueRetry();
+                    mReadyToSend = true;
+                    mDequeueRunnable.run();
+
+                    SerialListener listener = mListener;
+                    if (listener != null) {
+                        listener.onTransmitProgress(mPendingBytes.get());
+                    }
+                }
+            });
         }
     }
 
     @Override
-    public void onCharacteristicChanged(GattClient client, BluetoothGattCharacteristic characteristic) {
-        if (characteristic == mSerialCharacteristic) {
-            byte[] data = mMessageAssembler.assemble(new GattSerialPacket(characteristic.getValue()));
-            if (data != null) {
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Received data");
+    public void onBeanDisconnected() {
+        // Nothing is accepted until the next connection is set up, even if the client is kept
+        ready = false;
+        // Packets framed for the old connection must not be sent on the next one
+        mConnectionEpoch.incrementAndGet();
+        mLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (GattSerialPacket packet : mPendingPackets) {
+                    mPendingBytes.addAndGet(-packet.getPacketData().length);
                 }
-                if (mListener != null) {
-                    mListener.onMessageReceived(data);
-                } else {
-                    client.disconnect();
+                mPendingPackets.clear();
+                mReadyToSend = false;
+                cancelDequeueRetry();
+                SerialListener listener = mListener;
+                if (listener != null) {
+                    listener.onTransmitProgress(mPendingBytes.get());
                 }
             }
-        } else {
-            // scratch
-            int index = BEAN_SCRATCH_UUIDS.indexOf(characteristic.getUuid());
-            if (index > -1) {
-                index += 1;
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Received scratch bank update (" + index + ")");
-                }
-                if (mListener != null) {
-                    try {
-                        ScratchBank bank = EnumParse.enumWithRawValue(ScratchBank.class, index);
-                        mListener.onScratchValueChanged(bank, characteristic.getValue());
-                    } catch (NoEnumFoundException e) {
-                        Log.e(TAG, "Couldn't parse bank enum from scratch bank with index " +
-                                index);
-                        e.printStackTrace();
+        });
+    }
+
+    @Override
+    public void onCharacteristicChanged(final GattClient client, BluetoothGattCharacteristic characteristic) {
+        if (characteristic == mSerialCharacteristic) {
+            // The stack may reuse the value array for the next notification, so copy it here
+            final byte[] value = characteristic.getValue().clone();
+            mLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] data = mMessageAssembler.assemble(new GattSerialPacket(value));
+                    if (data != null) {
+                        if (BuildConfig.DEBUG) {
+                            Log.d(TAG, "Received data");
+                        }
+                        if (mListener != null) {
+                            mListener.onMessageReceived(data);
+                        } else {
+                            client.disconnect();
+                        }
                     }
-                } else {
-                    client.disconnect();
                 }
-            }
+            });
         }
     }
 
+    @Override
+    public boolean handlesCharacteristic(BluetoothGattCharacteristic characteristic) {
+        return characteristic.getUuid().equals(Constants.UUID_SERIAL_CHAR);
+    }
+
     @Override
     public void onReadRemoteRssi(GattClient client, int rssi) {
         final SerialListener listener = mListener;
@@ -198,20 +193,63 @@ public class GattSerialTransportProfile extends BaseProfile {
         mListener.onError(message);
     }
 
-    public void sendMessage(Buffer message) {
+    /**
+     * Queue a framed message to be sent in packets.
+     *
+     * @param message   The framed message
+     * @return          false if the profile isn't ready, e.g. because the Bean is disconnected,
+     *                  in which case the message is dropped
+     */
+    public boolean sendMessage(final Buffer message) {
+        if (!ready) {
+            Log.w(TAG, "Serial transport not ready, dropping message");
+            return false;
+        }
         if (mSerialCharacteristic == null) {
             Log.e(TAG, "Unexpected: mSerialCharacteristic is null");
         }
 
+        // Each packet carries a one byte header
+        final int size = (int) message.size();
+        final int framedSize = size + (size + PACKET_TX_MAX_PAYLOAD_LENGTH - 1) / PACKET_TX_MAX_PAYLOAD_LENGTH;
+        final int epoch = mConnectionEpoch.get();
+        mPendingBytes.addAndGet(framedSize);
+
         // create packet, add to queue, schedule
-        int packets = (int) (message.size() / PACKET_TX_MAX_PAYLOAD_LENGTH);
-        mOutgoingMessageCount = (mOutgoingMessageCount + 1) % 4;
-        int size = (int) message.size();
-        for (int i = 0; i < size; i += PACKET_TX_MAX_PAYLOAD_LENGTH) {
-            GattSerialPacket packet = new GattSerialPacket(i == 0, mOutgoingMessageCount, packets--, message);
-            mPendingPackets.add(packet);
+        mLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (epoch != mConnectionEpoch.get()) {
+                    mPendingBytes.addAndGet(-framedSize);
+                    return;
+                }
+                int packets = size / PACKET_TX_MAX_PAYLOAD_LENGTH;
+                mOutgoingMessageCount = (mOutgoingMessageCount + 1) % 4;
+                for (int i = 0; i < size; i += PACKET_TX_MAX_PAYLOAD_LENGTH) {
+                    GattSerialPacket packet = new GattSerialPacket(i == 0, mOutgoingMessageCount, packets--, message);
+                    mPendingPackets.add(packet);
+                }
+                mDequeueRunnable.run();
+            }
+        });
+        return true;
+    }
+
+    private void cancelDequeueRetry() {
+        if (mDequeueRetry != null) {
+            mDequeueRetry.cancel();
+            mDequeueRetry = null;
         }
-        mHandler.post(mDequeueRunnable);
+    }
+
+    /**
+     * Get the number of bytes, including packet headers, that are queued but not yet handed to
+     * the GATT layer.
+     *
+     * @return The number of queued bytes
+     */
+    public int getPendingBytes() {
+        return mPendingBytes.get();
     }
 
     /**
@@ -240,10 +278,16 @@ public class GattSerialTransportProfile extends BaseProfile {
 
         public void onMessageReceived(byte[] data);
 
-        public void onScratchValueChanged(ScratchBank bank, byte[] value);
-
         public void onError(String message);
 
         public void onReadRemoteRssi(int rssi);
+
+        /**
+         * Called each time a packet has been written to the Bean, and when the transmit queue is
+         * cleared
+         *
+         * @param pendingBytes The number of bytes still queued for sending
+         */
+        public void onTransmitProgress(int pendingBytes);
     }
 }
@@ -0,0 +1,77 @@
+package com.punchthrough.bean.sdk.internal.serial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects incoming serial messages so they can be delivered to the client in one callback.
+ *
+ * A batch is started by the first message after a {@link #drain()}. The caller is told when a
+ * batch starts, so it can schedule a flush at the end of the batch window, and when the batch
+ * reaches its size limit, so it can flush right away.
+ */
+public class SerialBatcher {
+
+    public enum Result {
+        /**
+         * The message was added to a batch that already has a flush scheduled
+         */
+        QUEUED,
+
+        /**
+         * The message started a new batch; a flush should be scheduled for the end of the window
+         */
+        WINDOW_STARTED,
+
+        /**
+         * The batch reached its size limit; it should be flushed now
+         */
+        FULL
+    }
+
+    private final int mMaxBytes;
+    private List<byte[]> mMessages = new ArrayList<>();
+    private int mBytes = 0;
+    private boolean mWindowStarted = false;
+    private boolean mFull = false;
+
+    /**
+     * @param maxBytes  Number of payload bytes after which a batch is flushed without waiting for
+     *                  the end of its window
+     */
+    public SerialBatcher(int maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    public synchronized Result add(byte[] message) {
+        mMessages.add(message);
+        mBytes += message.length;
+
+        if (!mFull && mBytes >= mMaxBytes) {
+            mFull = true;
+            mWindowStarted = true;
+            return Result.FULL;
+        }
+
+        if (!mWindowStarted) {
+            mWindowStarted = true;
+            return Result.WINDOW_STARTED;
+        }
+
+        return Result.QUEUED;
+    }
+
+    /**
+     * Remove and return every message in the current batch.
+     *
+     * @return The batched messages, in the order they were added. Empty if there are none.
+     */
+    public synchronized List<byte[]> drain() {
+        List<byte[]> messages = mMessages;
+        mMessages = new ArrayList<>(messages.size());
+        mBytes = 0;
+        mWindowStarted = false;
+        mFull = false;
+        return messages;
+    }
+}
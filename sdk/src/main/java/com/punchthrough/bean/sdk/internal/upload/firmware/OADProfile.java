@@ -1,7 +1,6 @@
 package com.punchthrough.bean.sdk.internal.upload.firmware;
 
 import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.util.Log;
 
@@ -19,6 +18,7 @@ import com.punchthrough.bean.sdk.upload.FirmwareBundle;
 import com.punchthrough.bean.sdk.upload.FirmwareImage;
 
 import java.util.Arrays;
+import java.util.UUID;
 
 public class OADProfile extends BaseProfile {
     /**
@@ -197,6 +197,9 @@ public class OADProfile extends BaseProfile {
             Log.i(TAG, String.format("Image accepted (Name: %s) (Size: %s bytes)",currentImage.name(), currentImage.sizeBytes()));
             blockTransferStarted = System.currentTimeMillis() / 1000L;
             setState(OADState.BLOCK_XFER);
+
+            // The new firmware may have a different GATT layout and versions
+            mGattClient.invalidateCaches();
             nextBlock = 0;
         }
 
@@ -283,28 +286,14 @@ public class OADProfile extends BaseProfile {
      */
     private boolean enableNotifyForChar(BluetoothGattCharacteristic characteristic) {
 
-        boolean success = true;
-
         // Enable notifications/indications for this characteristic
-        boolean successEnable = mGattClient.setCharacteristicNotification(characteristic, true);
-        if (successEnable) {
+        boolean success = mGattClient.enableNotifications(characteristic);
+        if (success) {
             Log.i(TAG, "Enabled notify for characteristic: " + characteristic.getUuid());
         } else {
-            success = false;
             Log.e(TAG, "Enable notify failed for characteristic: " + characteristic.getUuid());
         }
 
-        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(Constants.UUID_CLIENT_CHAR_CONFIG);
-        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-        boolean successDescriptor = mGattClient.writeDescriptor(descriptor);
-
-        if (successDescriptor) {
-            Log.i(TAG, "Successfully wrote notification descriptor: " + descriptor.getUuid());
-        } else {
-            success = false;
-            Log.e(TAG, "Failed to write notification descriptor: " + descriptor.getUuid());
-        }
-
         return success;
     }
 
@@ -363,9 +352,14 @@ public class OADProfile extends BaseProfile {
     private void checkFirmwareVersion() {
         Log.i(TAG, "Checking Firmware version...");
         setState(OADState.CHECKING_FW_VERSION);
-        mGattClient.getDeviceProfile().getFirmwareVersion(new DeviceProfile.VersionCallback() {
+        mGattClient.getDeviceProfile().readFirmwareVersion(new DeviceProfile.VersionCallback() {
             @Override
             public void onComplete(String version) {
+                if (version == null) {
+                    // Disconnected before the version arrived; continueOAD checks again once
+                    // the Bean is back
+                    return;
+                }
 
                 // Check the Bean version against the Bundle version
                 boolean updateNeeded = needsUpdate(firmwareBundle.version(), version);
@@ -420,6 +414,7 @@ public class OADProfile extends BaseProfile {
      */
     private void finishUpdateOccurred() {
         Log.i(TAG, "OAD Finished: Update Occurred");
+        mGattClient.invalidateCaches();
         oadListener.complete();
         reset();
     }
@@ -459,14 +454,15 @@ public class OADProfile extends BaseProfile {
 
     @Override
     public void onProfileReady() {
+        // Notifications are only enabled once an update starts, so normal connections skip them
         setupOAD();
-        setupNotifications();
         ready = true;
     }
 
     public void continueOAD() {
         if (uploadInProgress()) {
             checkFirmwareVersion();
+            setupNotifications();
             BeanManager.getInstance().cancelDiscovery();
         }
     }
@@ -488,6 +484,13 @@ public class OADProfile extends BaseProfile {
         reconnect();
     }
 
+    @Override
+    public boolean handlesCharacteristic(BluetoothGattCharacteristic characteristic) {
+        UUID uuid = characteristic.getUuid();
+        return uuid.equals(Constants.UUID_OAD_CHAR_IDENTIFY) ||
+                uuid.equals(Constants.UUID_OAD_CHAR_BLOCK);
+    }
+
     @Override
     public void onCharacteristicChanged(GattClient client, BluetoothGattCharacteristic characteristic) {
         if (uploadInProgress()) {
@@ -520,6 +523,9 @@ public class OADProfile extends BaseProfile {
         watchdog.start(OAD_TIMEOUT_SECONDS, watchdogListener);
         checkFirmwareVersion();
 
+        // Queued behind the version read, so notifications are on before any image is offered
+        setupNotifications();
+
         return this.oadApproval;
     }
 
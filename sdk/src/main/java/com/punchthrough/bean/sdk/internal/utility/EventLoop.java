@@ -0,0 +1,131 @@
+package com.punchthrough.bean.sdk.internal.utility;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, for a single Bean connection.
+ *
+ * State that is only touched from tasks on one loop needs no locking. Any thread may submit
+ * tasks: they go into a lock-free inbox, and the first submission to an idle loop schedules a
+ * drain on a shared thread pool. A loop never occupies more than one pool thread, so tasks must
+ * not block.
+ */
+public class EventLoop implements Executor {
+
+    private static final String TAG = "EventLoop";
+
+    private static final ExecutorService sharedPool = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BeanEventLoop-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                Runnable task;
+                while ((task = inbox.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Task failed", e);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    };
+
+    /**
+     * Create a loop that drains on the shared SDK thread pool.
+     */
+    public EventLoop() {
+        this(sharedPool);
+    }
+
+    /**
+     * Create a loop that drains on the given executor.
+     *
+     * @param executor Executor that runs the loop. Must not run tasks concurrently with
+     *                 themselves; any executor that runs each submitted task once is fine.
+     */
+    public EventLoop(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Submit a task to run on this loop.
+     *
+     * @param task The task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        inbox.offer(task);
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(drain);
+        }
+    }
+
+    /**
+     * Run a task on this loop after a delay. The delay is kept by the shared {@link Scheduler}.
+     *
+     * @param task          The task to run
+     * @param delayMillis   The delay, in ms
+     * @return              A handle that cancels the task. Once cancelled from this loop, the
+     *                      task is guaranteed not to run.
+     */
+    public Timeout schedule(final Runnable task, long delayMillis) {
+        final Timeout timeout = new Timeout();
+        timeout.future = Scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!timeout.cancelled) {
+                            task.run();
+                        }
+                    }
+                });
+            }
+        }, delayMillis);
+        return timeout;
+    }
+
+    /**
+     * A task scheduled with {@link EventLoop#schedule(Runnable, long)}.
+     */
+    public static class Timeout {
+
+        private volatile boolean cancelled = false;
+        private volatile ScheduledFuture<?> future;
+
+        /**
+         * Cancel the task if it hasn't run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+            Scheduler.cancel(future);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.punchthrough.bean.sdk.internal.utility;
+
+import android.util.Log;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs delayed and periodic SDK tasks, such as upload timeouts and watchdogs, on one shared
+ * background thread. Use this instead of creating a {@link java.util.Timer}, which starts a new
+ * thread each time.
+ *
+ * Tasks must be short and must not block, since every Bean shares the same thread. Cancel a task
+ * through the {@link ScheduledFuture} returned when it was scheduled.
+ */
+public class Scheduler {
+
+    private static final String TAG = "Scheduler";
+
+    private static final ScheduledExecutorService executor = createExecutor();
+
+    private Scheduler() {}
+
+    private static ScheduledExecutorService createExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BeanSdkScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    /**
+     * Run a task once after a delay.
+     *
+     * @param task          The task to run
+     * @param delayMillis   The delay, in ms
+     * @return              A future that can be used to cancel the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return executor.schedule(guard(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task repeatedly at a fixed rate until it is cancelled.
+     *
+     * @param task          The task to run
+     * @param delayMillis   The delay before the first run, in ms
+     * @param periodMillis  The time between the start of each run, in ms
+     * @return              A future that can be used to cancel the task
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long delayMillis,
+                                                         long periodMillis) {
+        return executor.scheduleAtFixedRate(guard(task), delayMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel a scheduled task, if there is one. Does not interrupt a task that is running.
+     *
+     * @param future The future returned when the task was scheduled, or null
+     */
+    public static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Log exceptions thrown by a task. The executor would otherwise swallow them and, for
+     * periodic tasks, silently stop running the task.
+     */
+    private static Runnable guard(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Scheduled task failed", e);
+                }
+            }
+        };
+    }
+}
@@ -1,11 +1,10 @@
 package com.punchthrough.bean.sdk.internal.utility;
 
-import android.os.CountDownTimer;
 import android.os.Handler;
 import android.os.SystemClock;
 import android.util.Log;
 
-import com.punchthrough.bean.sdk.internal.upload.firmware.OADProfile;
+import java.util.concurrent.ScheduledFuture;
 
 public class Watchdog {
 
@@ -14,10 +13,10 @@ public class Watchdog {
     private final long WATCHDOG_FINISH = 3600000;  // 1 hour in milliseconds
 
     private Handler handler;
-    private CountDownTimer timer;
+    private ScheduledFuture<?> timer;
     private boolean started = false;
-    private long lastPoke = 0;
-    private boolean paused = false;
+    private volatile long lastPoke = 0;
+    private volatile boolean paused = false;
 
     public Watchdog(Handler handler) {
         this.handler = handler;
@@ -31,7 +30,7 @@ public class Watchdog {
         lastPoke = uptimeSeconds();
     }
 
-    public void start(final int timeoutSeconds, final WatchdogListener listener) {
+    public synchronized void start(final int timeoutSeconds, final WatchdogListener listener) {
         if (started) {
             Log.i(TAG, "Watchdog already started, ignoring .start()");
             return;
@@ -39,33 +38,34 @@ public class Watchdog {
 
         Log.i(TAG, "Starting watchdog with timeout seconds: " + timeoutSeconds);
 
-        handler.post(new Runnable() {
+        final long finishAt = SystemClock.uptimeMillis() + WATCHDOG_FINISH;
+        final Runnable expire = new Runnable() {
             @Override
             public void run() {
-                timer = new CountDownTimer(WATCHDOG_FINISH, TICK_INTERVAL) {
-
-                    @Override
-                    public void onTick(long millisUntilFinished) {
-                        if (uptimeSeconds() - lastPoke > timeoutSeconds) {
-                            if (paused) {
-                                Log.w(TAG, "Watchdog expired, but the timer is currently paused!");
-                            } else {
-                                Log.e(TAG, "Watchdog expired!");
-                                listener.expired();
-                            }
-                        }
-                    }
+                listener.expired();
+            }
+        };
 
-                    @Override
-                    public void onFinish() {
-                        Log.i(TAG, "Watchdog finished");
+        // Checks run on the shared scheduler; the listener is still called on the handler
+        timer = Scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (SystemClock.uptimeMillis() >= finishAt) {
+                    Log.i(TAG, "Watchdog finished");
+                    stop();
+                    return;
+                }
+                if (uptimeSeconds() - lastPoke > timeoutSeconds) {
+                    if (paused) {
+                        Log.w(TAG, "Watchdog expired, but the timer is currently paused!");
+                    } else {
+                        Log.e(TAG, "Watchdog expired!");
+                        handler.post(expire);
                     }
-
-                };
-                timer.start();
-                started = true;
+                }
             }
-        });
+        }, TICK_INTERVAL, TICK_INTERVAL);
+        started = true;
 
         recordPoke();
     }
@@ -75,10 +75,10 @@ public class Watchdog {
         paused = true;
     }
 
-    public void stop() {
+    public synchronized void stop() {
         if (timer != null) {
             Log.i(TAG, "Watchdog has been stopped");
-            timer.cancel();
+            Scheduler.cancel(timer);
             timer = null;
             started = false;
         }
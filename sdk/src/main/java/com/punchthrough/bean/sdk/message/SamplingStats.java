@@ -0,0 +1,50 @@
+package com.punchthrough.bean.sdk.message;
+
+import android.os.Parcelable;
+
+import auto.parcel.AutoParcel;
+
+/**
+ * How well one reading of one Bean is keeping up with the rate requested from a
+ * {@link com.punchthrough.bean.sdk.SamplingScheduler}.
+ */
+@AutoParcel
+public abstract class SamplingStats implements Parcelable {
+
+    /**
+     * The period actually used, after rounding up to the scheduler's tick.
+     * @return The sampling period, in ms
+     */
+    public abstract long periodMillis();
+
+    /**
+     * The number of samples received.
+     * @return The sample count
+     */
+    public abstract int samples();
+
+    /**
+     * The number of samples skipped because the previous request for the Bean hadn't finished
+     * or the scheduler fell behind.
+     * @return The dropped sample count
+     */
+    public abstract int dropped();
+
+    /**
+     * The recent rate of received samples.
+     * @return Samples per second, or 0 until two samples have been received
+     */
+    public abstract double achievedRate();
+
+    public static SamplingStats create(long periodMillis, int samples, int dropped,
+                                       double achievedRate) {
+        return new AutoParcel_SamplingStats(periodMillis, samples, dropped, achievedRate);
+    }
+
+    /**
+     * @return The requested rate, in samples per second
+     */
+    public double requestedRate() {
+        return 1000.0 / periodMillis();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014 Little Robots
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.punchthrough.bean.sdk.message;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A set of readings taken from the Bean in one burst. Readings that were requested but didn't
+ * arrive before the snapshot's timeout are null; see {@link #isComplete()} and
+ * {@link #getMissing()}.
+ */
+public final class SensorSnapshot {
+
+    /**
+     * The values a snapshot can include
+     */
+    public enum Reading {
+        LED, TEMPERATURE, ACCELERATION, ACCELEROMETER_RANGE, ARDUINO_POWER, BATTERY, RADIO_CONFIG,
+        REMOTE_RSSI
+    }
+
+    private final long timestamp;
+    private final EnumSet<Reading> requested;
+    private final EnumSet<Reading> received;
+    private final LedColor led;
+    private final Integer temperature;
+    private final Acceleration acceleration;
+    private final AccelerometerRange accelerometerRange;
+    private final Boolean arduinoPowered;
+    private final BatteryLevel batteryLevel;
+    private final RadioConfig radioConfig;
+    private final Integer remoteRssi;
+
+    private SensorSnapshot(Builder builder) {
+        timestamp = builder.timestamp;
+        requested = EnumSet.copyOf(builder.requested);
+        received = EnumSet.copyOf(builder.received);
+        led = builder.led;
+        temperature = builder.temperature;
+        acceleration = builder.acceleration;
+        accelerometerRange = builder.accelerometerRange;
+        arduinoPowered = builder.arduinoPowered;
+        batteryLevel = builder.batteryLevel;
+        radioConfig = builder.radioConfig;
+        remoteRssi = builder.remoteRssi;
+    }
+
+    /**
+     * When the reads were sent.
+     * @return Milliseconds since boot, from <code>SystemClock.elapsedRealtime()</code>
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The readings that were asked for
+     */
+    public Set<Reading> getRequested() {
+        return EnumSet.copyOf(requested);
+    }
+
+    /**
+     * @return The readings that were asked for but didn't arrive in time
+     */
+    public Set<Reading> getMissing() {
+        EnumSet<Reading> missing = EnumSet.copyOf(requested);
+        missing.removeAll(received);
+        return missing;
+    }
+
+    /**
+     * @param reading   A reading
+     * @return          true if the reading arrived in time
+     */
+    public boolean has(Reading reading) {
+        return received.contains(reading);
+    }
+
+    /**
+     * @return true if every requested reading arrived in time
+     */
+    public boolean isComplete() {
+        return received.containsAll(requested);
+    }
+
+    /**
+     * @return The LED color, or null if it wasn't read
+     */
+    public LedColor getLed() {
+        return led;
+    }
+
+    /**
+     * @return The temperature in degrees Celsius, or null if it wasn't read
+     */
+    public Integer getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * @return The acceleration, or null if it wasn't read
+     */
+    public Acceleration getAcceleration() {
+        return acceleration;
+    }
+
+    /**
+     * @return The accelerometer range, or null if it wasn't read
+     */
+    public AccelerometerRange getAccelerometerRange() {
+        return accelerometerRange;
+    }
+
+    /**
+     * @return true if the Arduino is powered, or null if it wasn't read
+     */
+    public Boolean getArduinoPowered() {
+        return arduinoPowered;
+    }
+
+    /**
+     * @return The battery level, or null if it wasn't read
+     */
+    public BatteryLevel getBatteryLevel() {
+        return batteryLevel;
+    }
+
+    /**
+     * @return The radio configuration, or null if it wasn't read
+     */
+    public RadioConfig getRadioConfig() {
+        return radioConfig;
+    }
+
+    /**
+     * @return The RSSI of the connection in dBm, or null if it wasn't read
+     */
+    public Integer getRemoteRssi() {
+        return remoteRssi;
+    }
+
+    @Override
+    public String toString() {
+        return "SensorSnapshot{timestamp=" + timestamp + ", missing=" + getMissing() +
+                ", led=" + led + ", temperature=" + temperature +
+                ", acceleration=" + acceleration + ", accelerometerRange=" + accelerometerRange +
+                ", arduinoPowered=" + arduinoPowered + ", batteryLevel=" + batteryLevel +
+                ", radioConfig=" + radioConfig + ", remoteRssi=" + remoteRssi + "}";
+    }
+
+    /**
+     * Collects readings as they arrive. Not thread-safe.
+     */
+    public static class Builder {
+
+        private final long timestamp;
+        private final EnumSet<Reading> requested;
+        private final EnumSet<Reading> received = EnumSet.noneOf(Reading.class);
+        private LedColor led;
+        private Integer temperature;
+        private Acceleration acceleration;
+        private AccelerometerRange accelerometerRange;
+        private Boolean arduinoPowered;
+        private BatteryLevel batteryLevel;
+        private RadioConfig radioConfig;
+        private Integer remoteRssi;
+
+        /**
+         * @param requested The readings to take; must not be empty
+         * @param timestamp When the reads were sent
+         */
+        public Builder(Set<Reading> requested, long timestamp) {
+            if (requested.isEmpty()) {
+                throw new IllegalArgumentException("No readings requested");
+            }
+            this.requested = EnumSet.copyOf(requested);
+            this.timestamp = timestamp;
+        }
+
+        public Builder led(LedColor value) {
+            led = value;
+            return mark(Reading.LED, value);
+        }
+
+        public Builder temperature(Integer value) {
+            temperature = value;
+            return mark(Reading.TEMPERATURE, value);
+        }
+
+        public Builder acceleration(Acceleration value) {
+            acceleration = value;
+            return mark(Reading.ACCELERATION, value);
+        }
+
+        public Builder accelerometerRange(AccelerometerRange value) {
+            accelerometerRange = value;
+            return mark(Reading.ACCELEROMETER_RANGE, value);
+        }
+
+        public Builder arduinoPowered(Boolean value) {
+            arduinoPowered = value;
+            return mark(Reading.ARDUINO_POWER, value);
+        }
+
+        public Builder batteryLevel(BatteryLevel value) {
+            batteryLevel = value;
+            return mark(Reading.BATTERY, value);
+        }
+
+        public Builder radioConfig(RadioConfig value) {
+            radioConfig = value;
+            return mark(Reading.RADIO_CONFIG, value);
+        }
+
+        public Builder remoteRssi(Integer value) {
+            remoteRssi = value;
+            return mark(Reading.REMOTE_RSSI, value);
+        }
+
+        /**
+         * @return true once every requested reading has arrived
+         */
+        public boolean isComplete() {
+            return received.containsAll(requested);
+        }
+
+        public SensorSnapshot build() {
+            return new SensorSnapshot(this);
+        }
+
+        private Builder mark(Reading reading, Object value) {
+            if (value != null) {
+                received.add(reading);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.punchthrough.bean.sdk.message;
+
+import android.os.Parcelable;
+
+import auto.parcel.AutoParcel;
+
+/**
+ * One reading decoded from a Bean's advertisement, without connecting to the Bean. Delivered to
+ * {@link com.punchthrough.bean.sdk.TelemetryListener} and kept in the history returned by
+ * {@link com.punchthrough.bean.sdk.BeanManager#getTelemetry(String)}.
+ */
+@AutoParcel
+public abstract class TelemetrySample implements Parcelable {
+
+    /**
+     * Value of the iBeacon fields when the sample didn't come from an iBeacon frame
+     */
+    public static final int NO_BEACON = -1;
+
+    /**
+     * Value of {@link #manufacturerId()} when the advertisement had no manufacturer data
+     */
+    public static final int NO_MANUFACTURER = -1;
+
+    /**
+     * When the advertisement was received.
+     * @return Milliseconds since boot, from <code>SystemClock.elapsedRealtime()</code>
+     */
+    public abstract long timestamp();
+
+    /**
+     * @return The advertisement's RSSI, in dBm
+     */
+    public abstract int rssi();
+
+    /**
+     * @return The iBeacon major value, or {@link #NO_BEACON}
+     */
+    public abstract int beaconMajor();
+
+    /**
+     * @return The iBeacon minor value, or {@link #NO_BEACON}
+     */
+    public abstract int beaconMinor();
+
+    /**
+     * @return The Bluetooth SIG company identifier of the manufacturer data, or
+     *         {@link #NO_MANUFACTURER}
+     */
+    public abstract int manufacturerId();
+
+    /**
+     * Manufacturer data placed in the advertisement by the Bean's sketch. Empty for iBeacon
+     * frames, whose contents are decoded into the beacon fields instead.
+     * @return The manufacturer data after the company identifier
+     */
+    public abstract byte[] manufacturerData();
+
+    public static TelemetrySample create(long timestamp, int rssi, int beaconMajor, int beaconMinor,
+                                         int manufacturerId, byte[] manufacturerData) {
+        return new AutoParcel_TelemetrySample(timestamp, rssi, beaconMajor, beaconMinor,
+                manufacturerId, manufacturerData);
+    }
+
+    /**
+     * @return true if this sample came from an iBeacon frame
+     */
+    public boolean isBeacon() {
+        return beaconMajor() != NO_BEACON;
+    }
+}
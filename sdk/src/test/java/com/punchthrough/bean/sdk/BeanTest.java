@@ -4,14 +4,22 @@ import android.bluetooth.BluetoothDevice;
 import android.os.Handler;
 import android.content.Context;
 
+import com.punchthrough.bean.sdk.internal.BeanMessageID;
 import com.punchthrough.bean.sdk.internal.ble.GattClient;
+import com.punchthrough.bean.sdk.internal.ble.ProfileFactory;
 import com.punchthrough.bean.sdk.internal.device.DeviceProfile;
+import com.punchthrough.bean.sdk.internal.scratch.ScratchProfile;
 import com.punchthrough.bean.sdk.internal.serial.GattSerialTransportProfile.SerialListener;
 import com.punchthrough.bean.sdk.internal.serial.GattSerialTransportProfile;
 import com.punchthrough.bean.sdk.internal.utility.Constants;
+import com.punchthrough.bean.sdk.internal.utility.EventLoop;
+import com.punchthrough.bean.sdk.message.BatteryLevel;
 import com.punchthrough.bean.sdk.message.Callback;
+import com.punchthrough.bean.sdk.message.LedColor;
+import com.punchthrough.bean.sdk.message.ScratchBank;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 import org.junit.Before;
@@ -19,9 +27,12 @@ import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import okio.Buffer;
+
 public class BeanTest {
 
     // Mocks
@@ -34,6 +45,7 @@ public class BeanTest {
 
     // Spies, "real" objects that we intercept
     GattClient.ConnectionListener testListener;
+    SerialListener serialListener;
     List<Runnable> handlerRunnables = new ArrayList<>();
     DeviceProfile.VersionCallback fwVersionCallback;
     DeviceProfile.VersionCallback hwVersionCallback;
@@ -55,6 +67,7 @@ public class BeanTest {
         // Customize some behavior
         when(mockGattClient.getSerialProfile()).thenReturn(mockGattSerialTransportProfile);
         when(mockGattClient.getDeviceProfile()).thenReturn(mockDeviceProfile);
+        when(mockGattClient.getEventLoop()).thenReturn(new EventLoop(CallbackExecutors.direct()));
 
         doAnswer(new Answer() {
             public Object answer(InvocationOnMock invocation) {
@@ -72,6 +85,13 @@ public class BeanTest {
             }
         }).when(mockHandler).post(any(Runnable.class));
 
+        doAnswer(new Answer() {
+            public Object answer(InvocationOnMock invocation) {
+                serialListener = (SerialListener) invocation.getArguments()[0];
+                return null;
+            }
+        }).when(mockGattSerialTransportProfile).setListener(any(SerialListener.class));
+
         // Instantiate class under test
         bean = new Bean(mockDevice, mockGattClient, mockHandler);
     }
@@ -97,14 +117,22 @@ public class BeanTest {
             }
         }).when(mockDeviceProfile).getFirmwareVersion(any(DeviceProfile.VersionCallback.class));
 
+        final List<String> results = new ArrayList<>();
         bean.readFirmwareVersion(new Callback<String>() {
             @Override
             public void onResult(String result) {
-                assertThat(result).isEqualTo("fwfoo");
+                results.add(result);
             }
         });
 
         fwVersionCallback.onComplete("fwfoo");
+
+        // Delivered on the callback executor, not the thread the version arrived on
+        assertThat(results).isEmpty();
+        for (Runnable r : new ArrayList<>(handlerRunnables)) {
+            r.run();
+        }
+        assertThat(results).containsExactly("fwfoo");
     }
 
     @Test
@@ -117,14 +145,150 @@ public class BeanTest {
             }
         }).when(mockDeviceProfile).getHardwareVersion(any(DeviceProfile.VersionCallback.class));
 
+        final List<String> results = new ArrayList<>();
         bean.readHardwareVersion(new Callback<String>() {
             @Override
             public void onResult(String result) {
-                assertThat(result).isEqualTo("hwfoo");
+                results.add(result);
             }
         });
 
         hwVersionCallback.onComplete("hwfoo");
+
+        // Delivered on the callback executor, not the thread the version arrived on
+        assertThat(results).isEmpty();
+        for (Runnable r : new ArrayList<>(handlerRunnables)) {
+            r.run();
+        }
+        assertThat(results).containsExactly("hwfoo");
     }
 
+    @Test
+    public void testSerialDataReachesListenerAfterStreamEndsOnDisconnect() throws IOException {
+        BeanListener mockListener = mock(BeanListener.class);
+        bean.connect(mockContext, mockListener);
+        testListener.onConnected();
+
+        SerialInputStream stream = bean.openSerialInputStream(16,
+                SerialInputStream.OverflowPolicy.DROP_NEWEST);
+        testListener.onDisconnected();
+        assertThat(stream.read(new byte[4], 0, 4)).isEqualTo(-1);
+
+        testListener.onConnected();
+        serialListener.onMessageReceived(new byte[]{0, 0, 5, 6});
+        for (Runnable r : new ArrayList<>(handlerRunnables)) {
+            r.run();
+        }
+        verify(mockListener).onSerialMessageReceived(new byte[]{5, 6});
+    }
+
+    @Test
+    public void testScratchBanksSubscribedByDefault() {
+        ScratchProfile mockScratchProfile = mock(ScratchProfile.class);
+        when(mockGattClient.getScratchProfile()).thenReturn(mockScratchProfile);
+
+        bean.connect(mockContext, mock(BeanListener.class));
+        testListener.onConnected();
+        for (ScratchBank bank : ScratchBank.values()) {
+            verify(mockScratchProfile).enableNotifications(bank.getRawValue());
+        }
+    }
+
+    @Test
+    public void testScratchBanksCanBeLeftOut() {
+        ScratchProfile mockScratchProfile = mock(ScratchProfile.class);
+        when(mockGattClient.getScratchProfile()).thenReturn(mockScratchProfile);
+
+        bean.setScratchNotificationBanks(ScratchBank.BANK_2);
+        bean.connect(mockContext, mock(BeanListener.class));
+        testListener.onConnected();
+        verify(mockScratchProfile).enableNotifications(2);
+        verify(mockScratchProfile, never()).enableNotifications(1);
+    }
+
+    @Test
+    public void testFailedRssiReadDoesNotBlockLaterReads() {
+        final List<Integer> results = new ArrayList<>();
+        Callback<Integer> callback = new Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                results.add(result);
+            }
+        };
+
+        when(mockGattClient.readRemoteRssi()).thenReturn(false);
+        bean.readRemoteRssi(callback);
+        for (Runnable r : new ArrayList<>(handlerRunnables)) {
+            r.run();
+        }
+        assertThat(results).containsExactly((Integer) null);
+
+        when(mockGattClient.readRemoteRssi()).thenReturn(true);
+        bean.readRemoteRssi(callback);
+        bean.readRemoteRssi(callback);
+        verify(mockGattClient, times(2)).readRemoteRssi();
+    }
+
+    @Test
+    public void testBatteryReadFailsWithoutBatteryProfile() {
+        final List<BatteryLevel> results = new ArrayList<>();
+        bean.readBatteryLevel(new Callback<BatteryLevel>() {
+            @Override
+            public void onResult(BatteryLevel result) {
+                results.add(result);
+            }
+        });
+        for (Runnable r : new ArrayList<>(handlerRunnables)) {
+            r.run();
+        }
+        assertThat(results).containsExactly((BatteryLevel) null);
+    }
+
+    @Test
+    public void testDroppedRequestDoesNotTakeLaterReply() {
+        final List<LedColor> first = new ArrayList<>();
+        final List<LedColor> second = new ArrayList<>();
+
+        // The transport refuses the first request
+        when(mockGattSerialTransportProfile.sendMessage(any(Buffer.class))).thenReturn(false);
+        bean.readLed(new Callback<LedColor>() {
+            @Override
+            public void onResult(LedColor result) {
+                first.add(result);
+            }
+        });
+
+        when(mockGattSerialTransportProfile.sendMessage(any(Buffer.class))).thenReturn(true);
+        bean.readLed(new Callback<LedColor>() {
+            @Override
+            public void onResult(LedColor result) {
+                second.add(result);
+            }
+        });
+
+        int id = BeanMessageID.CC_LED_READ_ALL.getRawValue();
+        serialListener.onMessageReceived(new byte[]{
+                (byte) (id >> 8), (byte) (id | 0x80), 1, 2, 3});
+        for (Runnable r : new ArrayList<>(handlerRunnables)) {
+            r.run();
+        }
+        assertThat(first).containsExactly((LedColor) null);
+        assertThat(second).containsExactly(LedColor.create(1, 2, 3));
+    }
+
+    @Test
+    public void testRegisteringBuiltInServiceFailsBeforeConnecting() {
+        ProfileFactory factory = mock(ProfileFactory.class);
+        try {
+            bean.registerProfile(Constants.UUID_SERIAL_SERVICE, factory);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        verify(mockGattClient, never()).registerProfile(Constants.UUID_SERIAL_SERVICE, factory);
+
+        // Connecting still works afterwards
+        bean.connect(mockContext, mock(BeanListener.class));
+        verify(mockGattClient).connect(eq(mockContext), eq(mockDevice), anyBoolean());
+    }
 }
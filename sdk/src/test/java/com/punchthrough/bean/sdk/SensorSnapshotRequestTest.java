@@ -0,0 +1,107 @@
+package com.punchthrough.bean.sdk;
+
+import com.punchthrough.bean.sdk.message.AccelerometerRange;
+import com.punchthrough.bean.sdk.message.BatteryLevel;
+import com.punchthrough.bean.sdk.message.Callback;
+import com.punchthrough.bean.sdk.message.LedColor;
+import com.punchthrough.bean.sdk.message.SensorSnapshot;
+import com.punchthrough.bean.sdk.message.SensorSnapshot.Reading;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SensorSnapshotRequestTest {
+
+    final List<SensorSnapshot> snapshots = new ArrayList<>();
+    final CountDownLatch delivered = new CountDownLatch(1);
+
+    final Callback<SensorSnapshot> callback = new Callback<SensorSnapshot>() {
+        @Override
+        public void onResult(SensorSnapshot result) {
+            snapshots.add(result);
+            delivered.countDown();
+        }
+    };
+
+    SensorSnapshotRequest request(EnumSet<Reading> readings, long timeoutMillis) {
+        SensorSnapshotRequest request = new SensorSnapshotRequest(readings, 1000,
+                CallbackExecutors.direct(), callback);
+        request.start(timeoutMillis);
+        return request;
+    }
+
+    @Test
+    public void testCompletesOnceAllReadingsArrive() {
+        SensorSnapshotRequest request = request(
+                EnumSet.of(Reading.TEMPERATURE, Reading.BATTERY, Reading.ACCELEROMETER_RANGE),
+                10000);
+
+        request.<Integer>collect(Reading.TEMPERATURE).onResult(21);
+        request.<BatteryLevel>collect(Reading.BATTERY).onResult(new BatteryLevel(80));
+        assertThat(snapshots).isEmpty();
+
+        request.<AccelerometerRange>collect(Reading.ACCELEROMETER_RANGE)
+                .onResult(AccelerometerRange.RANGE_4G);
+        assertThat(snapshots).hasSize(1);
+
+        SensorSnapshot snapshot = snapshots.get(0);
+        assertThat(snapshot.isComplete()).isTrue();
+        assertThat(snapshot.getTimestamp()).isEqualTo(1000);
+        assertThat(snapshot.getTemperature()).isEqualTo(21);
+        assertThat(snapshot.getBatteryLevel().getPercentage()).isEqualTo(80);
+        assertThat(snapshot.getAccelerometerRange()).isEqualTo(AccelerometerRange.RANGE_4G);
+        assertThat(snapshot.getLed()).isNull();
+        assertThat(snapshot.has(Reading.LED)).isFalse();
+    }
+
+    @Test
+    public void testTimeoutDeliversPartialSnapshot() throws InterruptedException {
+        SensorSnapshotRequest request = request(EnumSet.of(Reading.LED, Reading.RADIO_CONFIG), 20);
+        request.<LedColor>collect(Reading.LED).onResult(LedColor.create(1, 2, 3));
+
+        assertThat(delivered.await(2, TimeUnit.SECONDS)).isTrue();
+        SensorSnapshot snapshot = snapshots.get(0);
+        assertThat(snapshot.isComplete()).isFalse();
+        assertThat(snapshot.getMissing()).containsExactly(Reading.RADIO_CONFIG);
+        assertThat(snapshot.getLed()).isEqualTo(LedColor.create(1, 2, 3));
+        assertThat(snapshot.getRadioConfig()).isNull();
+
+        // Late results are dropped
+        request.<Boolean>collect(Reading.ARDUINO_POWER).onResult(true);
+        assertThat(snapshots).hasSize(1);
+    }
+
+    @Test
+    public void testTimeoutReleasesWaitingCallbacks() throws InterruptedException {
+        final List<Reading> abandoned = new ArrayList<>();
+        final List<Callback<?>> released = new ArrayList<>();
+        SensorSnapshotRequest request = new SensorSnapshotRequest(
+                EnumSet.of(Reading.LED, Reading.TEMPERATURE), 1000, CallbackExecutors.direct(),
+                callback);
+        request.start(20, new SensorSnapshotRequest.Cleanup() {
+            @Override
+            public void abandon(Reading reading, Callback<?> callback) {
+                abandoned.add(reading);
+                released.add(callback);
+            }
+        });
+        request.<LedColor>collect(Reading.LED).onResult(LedColor.create(1, 2, 3));
+        Callback<Integer> temperature = request.collect(Reading.TEMPERATURE);
+
+        assertThat(delivered.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(abandoned).containsExactly(Reading.TEMPERATURE);
+        assertThat(released).containsExactly(temperature);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRequestIsRejected() {
+        new SensorSnapshot.Builder(EnumSet.noneOf(Reading.class), 0);
+    }
+}
@@ -0,0 +1,91 @@
+package com.punchthrough.bean.sdk;
+
+import com.punchthrough.bean.sdk.SerialInputStream.OverflowPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SerialInputStreamTest {
+
+    Bean mockBean;
+
+    @Before
+    public void setup() {
+        mockBean = mock(Bean.class);
+    }
+
+    @Test
+    public void testReadReceivedData() throws IOException {
+        SerialInputStream stream = new SerialInputStream(mockBean, 16, OverflowPolicy.DROP_NEWEST);
+        stream.receive(new byte[]{0, 0, 1, 2, 3}, 2, 3);
+        stream.receive(new byte[]{4}, 0, 1);
+
+        byte[] out = new byte[8];
+        assertThat(stream.read(out, 0, out.length)).isEqualTo(4);
+        assertThat(out).startsWith(new byte[]{1, 2, 3, 4});
+        assertThat(stream.available()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDropOldest() throws IOException {
+        SerialInputStream stream = new SerialInputStream(mockBean, 4, OverflowPolicy.DROP_OLDEST);
+        stream.receive(new byte[]{1, 2, 3}, 0, 3);
+        stream.receive(new byte[]{4, 5, 6}, 0, 3);
+
+        Buffer sink = new Buffer();
+        assertThat(stream.read(sink, 16)).isEqualTo(4);
+        assertThat(sink.readByteArray()).containsExactly(new byte[]{3, 4, 5, 6});
+        assertThat(stream.getDroppedBytes()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDropNewest() throws IOException {
+        SerialInputStream stream = new SerialInputStream(mockBean, 4, OverflowPolicy.DROP_NEWEST);
+        stream.receive(new byte[]{1, 2, 3}, 0, 3);
+        stream.receive(new byte[]{4, 5, 6}, 0, 3);
+
+        Buffer sink = new Buffer();
+        assertThat(stream.read(sink, 16)).isEqualTo(4);
+        assertThat(sink.readByteArray()).containsExactly(new byte[]{1, 2, 3, 4});
+        assertThat(stream.getDroppedBytes()).isEqualTo(2);
+        verify(mockBean, never()).disconnect();
+    }
+
+    @Test
+    public void testOverflowDisconnects() throws IOException {
+        SerialInputStream stream = new SerialInputStream(mockBean, 4, OverflowPolicy.DISCONNECT);
+        stream.receive(new byte[]{1, 2, 3}, 0, 3);
+        stream.receive(new byte[]{4, 5}, 0, 2);
+
+        verify(mockBean).disconnect();
+        assertThat(stream.available()).isEqualTo(3);
+    }
+
+    @Test
+    public void testEndOfStreamAfterDisconnect() throws IOException {
+        SerialInputStream stream = new SerialInputStream(mockBean, 4, OverflowPolicy.DROP_NEWEST);
+        stream.receive(new byte[]{7}, 0, 1);
+        stream.onDisconnected();
+
+        assertThat(stream.read()).isEqualTo(7);
+        assertThat(stream.read()).isEqualTo(-1);
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void testReadTimesOut() throws IOException {
+        SerialInputStream stream = new SerialInputStream(mockBean, 4, OverflowPolicy.DROP_NEWEST);
+        stream.timeout().timeout(10, TimeUnit.MILLISECONDS);
+        stream.read();
+    }
+}
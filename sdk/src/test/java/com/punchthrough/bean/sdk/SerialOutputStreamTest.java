@@ -0,0 +1,95 @@
+package com.punchthrough.bean.sdk;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SerialOutputStreamTest {
+
+    Bean mockBean;
+    SerialOutputStream.Listener mockListener;
+    SerialOutputStream stream;
+
+    @Before
+    public void setup() {
+        mockBean = mock(Bean.class);
+        mockListener = mock(SerialOutputStream.Listener.class);
+        when(mockBean.isConnected()).thenReturn(true);
+        doAnswer(new Answer() {
+            public Object answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(mockBean).deliverCallback(any(Runnable.class));
+
+        stream = new SerialOutputStream(mockBean, 100);
+        stream.setListener(mockListener);
+    }
+
+    @Test
+    public void testTryWriteStopsWhenFullAndReportsDrain() throws IOException {
+        when(mockBean.getPendingSerialBytes()).thenReturn(0, 80);
+
+        byte[] data = new byte[150];
+        int written = stream.tryWrite(data, 0, data.length);
+
+        assertThat(written).isEqualTo(64);
+        verify(mockBean).writeSerialData(data, 0, 64);
+        verify(mockListener).onBufferFull();
+
+        stream.onTransmitProgress(60);
+        verify(mockListener, never()).onDrained();
+
+        stream.onTransmitProgress(40);
+        verify(mockListener).onDrained();
+        verify(mockListener, never()).onFlushed();
+
+        stream.onTransmitProgress(0);
+        verify(mockListener).onFlushed();
+    }
+
+    @Test
+    public void testRoomIsReservedForFraming() throws IOException {
+        // 64 payload bytes queue as 74 bytes once framed, which doesn't fit on top of 30
+        when(mockBean.getPendingSerialBytes()).thenReturn(30);
+
+        assertThat(stream.tryWrite(new byte[64], 0, 64)).isEqualTo(0);
+        verify(mockBean, never()).writeSerialData(any(byte[].class), anyInt(), anyInt());
+        verify(mockListener).onBufferFull();
+    }
+
+    @Test
+    public void testWriteSplitsIntoMessages() throws IOException {
+        when(mockBean.getPendingSerialBytes()).thenReturn(0);
+
+        byte[] data = new byte[150];
+        stream.write(data);
+
+        verify(mockBean).writeSerialData(data, 0, 64);
+        verify(mockBean).writeSerialData(data, 64, 64);
+        verify(mockBean).writeSerialData(data, 128, 22);
+        verify(mockListener, never()).onBufferFull();
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteFailsWhenDisconnected() throws IOException {
+        when(mockBean.isConnected()).thenReturn(false);
+        try {
+            stream.write(new byte[10]);
+        } finally {
+            verify(mockBean, never()).writeSerialData(any(byte[].class), anyInt(), anyInt());
+        }
+    }
+}
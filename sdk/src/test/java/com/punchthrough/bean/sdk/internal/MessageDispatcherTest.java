@@ -0,0 +1,67 @@
+package com.punchthrough.bean.sdk.internal;
+
+import com.punchthrough.bean.sdk.message.MessageHandler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MessageDispatcherTest {
+
+    MessageDispatcher dispatcher;
+    MessageHandler mockHandler;
+
+    @Before
+    public void setup() {
+        dispatcher = new MessageDispatcher();
+        mockHandler = mock(MessageHandler.class);
+    }
+
+    @Test
+    public void testDispatchToRegisteredHandler() {
+        byte[] message = new byte[] {0x20, 0x11, 0x17};
+        dispatcher.register(BeanMessageID.CC_TEMP_READ.getRawValue(), mockHandler);
+        assertThat(dispatcher.dispatch(message)).isTrue();
+        verify(mockHandler).onMessageReceived(0x2011, message, 2, 1);
+    }
+
+    @Test
+    public void testResponseBitIsCleared() {
+        byte[] message = new byte[] {0x20, (byte) 0x91, 0x17};
+        dispatcher.register(BeanMessageID.CC_TEMP_READ.getRawValue(), mockHandler);
+        assertThat(dispatcher.dispatch(message)).isTrue();
+        verify(mockHandler).onMessageReceived(0x2011, message, 2, 1);
+    }
+
+    @Test
+    public void testUnknownMessage() {
+        byte[] message = new byte[] {(byte) 0xAB, 0x01};
+        dispatcher.register(0xAB02, mockHandler);
+        assertThat(dispatcher.dispatch(message)).isFalse();
+        verify(mockHandler, never()).onMessageReceived(anyInt(), any(byte[].class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testUnregister() {
+        dispatcher.register(0xAB01, mockHandler);
+        assertThat(dispatcher.handlerFor(0xAB01)).isSameAs(mockHandler);
+        dispatcher.unregister(0xAB01);
+        assertThat(dispatcher.handlerFor(0xAB01)).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterOutOfRange() {
+        dispatcher.register(0x10000, mockHandler);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterWithResponseBitIsRejected() {
+        dispatcher.register(0xAB81, mockHandler);
+    }
+}
@@ -0,0 +1,48 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConnectLimiterTest {
+
+    final List<Integer> started = new ArrayList<>();
+
+    Runnable attempt(final int id) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.add(id);
+            }
+        };
+    }
+
+    @Test
+    public void testAttemptsBeyondLimitWaitInOrder() {
+        ConnectLimiter limiter = new ConnectLimiter(2);
+        for (int i = 0; i < 4; i++) {
+            limiter.submit(attempt(i));
+        }
+        assertThat(started).containsExactly(0, 1);
+        assertThat(limiter.getWaiting()).isEqualTo(2);
+
+        limiter.finish();
+        assertThat(started).containsExactly(0, 1, 2);
+        assertThat(limiter.getRunning()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRaisingLimitStartsWaitingAttempts() {
+        ConnectLimiter limiter = new ConnectLimiter(1);
+        for (int i = 0; i < 3; i++) {
+            limiter.submit(attempt(i));
+        }
+        limiter.setLimit(3);
+
+        assertThat(started).containsExactly(0, 1, 2);
+        assertThat(limiter.getWaiting()).isZero();
+    }
+}
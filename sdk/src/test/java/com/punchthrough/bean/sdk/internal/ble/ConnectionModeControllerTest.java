@@ -0,0 +1,75 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import com.punchthrough.bean.sdk.ConnectionMode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConnectionModeControllerTest {
+
+    boolean bulk = false;
+    final List<ConnectionMode> applied = new ArrayList<>();
+    ConnectionModeController controller;
+
+    @Before
+    public void setup() {
+        controller = new ConnectionModeController(
+                new ConnectionModeController.Workload() {
+                    @Override
+                    public boolean isBulk() {
+                        return bulk;
+                    }
+                },
+                new ConnectionModeController.Applier() {
+                    @Override
+                    public void apply(ConnectionMode mode) {
+                        applied.add(mode);
+                    }
+                },
+                1000);
+    }
+
+    @After
+    public void teardown() {
+        controller.reset();
+    }
+
+    @Test
+    public void testActivityIsInteractiveUntilIdleTimeout() {
+        controller.onActivity(0);
+        controller.onActivity(500);
+        controller.update(1200);
+        controller.update(1500);
+
+        assertThat(applied).containsExactly(ConnectionMode.INTERACTIVE, ConnectionMode.IDLE);
+    }
+
+    @Test
+    public void testBulkWorkloadOverridesActivity() {
+        controller.onActivity(0);
+        bulk = true;
+        controller.onActivity(100);
+        assertThat(controller.getMode()).isEqualTo(ConnectionMode.BULK);
+
+        bulk = false;
+        controller.update(200);
+        assertThat(applied).containsExactly(
+                ConnectionMode.INTERACTIVE, ConnectionMode.BULK, ConnectionMode.INTERACTIVE);
+    }
+
+    @Test
+    public void testResetForgetsMode() {
+        controller.onActivity(0);
+        controller.reset();
+
+        assertThat(controller.getMode()).isNull();
+        controller.update(10);
+        assertThat(applied).containsExactly(ConnectionMode.INTERACTIVE, ConnectionMode.IDLE);
+    }
+}
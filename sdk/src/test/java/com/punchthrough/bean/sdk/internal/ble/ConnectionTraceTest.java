@@ -0,0 +1,72 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConnectionTraceTest {
+
+    static final long MS = 1000000;
+
+    @Test
+    public void testSpansAreTimedAndExported() {
+        ConnectionTrace trace = new ConnectionTrace("00:11:22:33:44:55", false, 10 * MS);
+        int connect = trace.begin("connectGatt", ConnectionTrace.CATEGORY_CONNECTION, 10 * MS);
+        trace.end(connect, 12 * MS);
+        int write = trace.beginOperation("writeDescriptor a495ff11", 13 * MS, 15 * MS);
+        trace.end(write, 40 * MS);
+        trace.instant("onConnectionStateChange 0/2", ConnectionTrace.CATEGORY_CONNECTION, 41 * MS);
+        trace.finish("connected", 50 * MS);
+
+        assertThat(trace.isFinished()).isTrue();
+        assertThat(trace.getOutcome()).isEqualTo("connected");
+        assertThat(trace.getDurationNanos()).isEqualTo(40 * MS);
+        assertThat(trace.getTotalNanos("connectGatt")).isEqualTo(2 * MS);
+
+        String json = trace.toJson();
+        assertThat(json).startsWith("{\"traceEvents\":[");
+        assertThat(json).contains("\"args\":{\"name\":\"00:11:22:33:44:55\"}");
+        assertThat(json).contains("\"name\":\"attempt\",\"cat\":\"connection\",\"ph\":\"X\","
+                + "\"ts\":10000,\"dur\":40000");
+        assertThat(json).contains("\"outcome\":\"connected\"");
+        assertThat(json).contains("\"name\":\"writeDescriptor a495ff11\",\"cat\":\"gatt\","
+                + "\"ph\":\"X\",\"ts\":15000,\"dur\":25000,\"pid\":0,\"tid\":2,"
+                + "\"args\":{\"queuedUs\":2000}");
+        assertThat(json).contains("\"ph\":\"i\"");
+    }
+
+    @Test
+    public void testFinishEndsOpenSpansAndStopsRecording() {
+        ConnectionTrace trace = new ConnectionTrace("addr", true, 0);
+        trace.begin("discoverServices", ConnectionTrace.CATEGORY_CONNECTION, MS);
+        trace.finish("disconnected", 5 * MS);
+
+        assertThat(trace.getTotalNanos("discoverServices")).isEqualTo(4 * MS);
+        assertThat(trace.begin("late", ConnectionTrace.CATEGORY_GATT, 6 * MS))
+                .isEqualTo(ConnectionTrace.NO_SPAN);
+        assertThat(trace.getEventCount()).isEqualTo(1);
+
+        trace.finish("failed", 7 * MS);
+        assertThat(trace.getOutcome()).isEqualTo("disconnected");
+    }
+
+    @Test
+    public void testUnfinishedTraceExportsBeginEvents() {
+        ConnectionTrace trace = new ConnectionTrace("addr", false, 0);
+        trace.begin("onProfileReady \"Serial\"", ConnectionTrace.CATEGORY_PROFILE, MS);
+
+        String json = trace.toJson();
+        assertThat(json).contains("\"name\":\"onProfileReady \\\"Serial\\\"\",\"cat\":\"profile\","
+                + "\"ph\":\"B\",\"ts\":1000");
+        assertThat(trace.getDurationNanos()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testEventsAreCapped() {
+        ConnectionTrace trace = new ConnectionTrace("addr", false, 0);
+        for (int i = 0; i < ConnectionTrace.MAX_EVENTS + 10; i++) {
+            trace.instant("op", ConnectionTrace.CATEGORY_GATT, i);
+        }
+        assertThat(trace.getEventCount()).isEqualTo(ConnectionTrace.MAX_EVENTS);
+    }
+}
@@ -0,0 +1,115 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GattLayoutCacheTest {
+
+    final Map<String, String> stored = new HashMap<>();
+    GattLayoutCache cache;
+
+    @Before
+    public void setup() {
+        SharedPreferences prefs = mock(SharedPreferences.class);
+        final SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class);
+        when(prefs.edit()).thenReturn(editor);
+        when(prefs.getString(anyString(), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                String value = stored.get((String) invocation.getArguments()[0]);
+                return value != null ? value : (String) invocation.getArguments()[1];
+            }
+        });
+        when(editor.putString(anyString(), anyString())).thenAnswer(new Answer<SharedPreferences.Editor>() {
+            @Override
+            public SharedPreferences.Editor answer(InvocationOnMock invocation) throws Throwable {
+                stored.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]);
+                return editor;
+            }
+        });
+        when(editor.remove(anyString())).thenAnswer(new Answer<SharedPreferences.Editor>() {
+            @Override
+            public SharedPreferences.Editor answer(InvocationOnMock invocation) throws Throwable {
+                stored.remove((String) invocation.getArguments()[0]);
+                return editor;
+            }
+        });
+        cache = new GattLayoutCache(prefs);
+    }
+
+    static BluetoothGattService service(UUID uuid, int... characteristicProperties) {
+        BluetoothGattService service = mock(BluetoothGattService.class);
+        List<BluetoothGattCharacteristic> characteristics = new ArrayList<>();
+        for (int properties : characteristicProperties) {
+            BluetoothGattCharacteristic characteristic = mock(BluetoothGattCharacteristic.class);
+            BluetoothGattDescriptor descriptor = mock(BluetoothGattDescriptor.class);
+            when(descriptor.getUuid()).thenReturn(UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"));
+            when(characteristic.getUuid()).thenReturn(new UUID(properties, 1));
+            when(characteristic.getProperties()).thenReturn(properties);
+            when(characteristic.getDescriptors()).thenReturn(Collections.singletonList(descriptor));
+            characteristics.add(characteristic);
+        }
+        when(service.getUuid()).thenReturn(uuid);
+        when(service.getCharacteristics()).thenReturn(characteristics);
+        return service;
+    }
+
+    @Test
+    public void testSignatureChangesWithLayout() {
+        UUID uuid = UUID.randomUUID();
+        String a = GattLayoutCache.signature(Arrays.asList(service(uuid, 0x10, 0x08)));
+        String b = GattLayoutCache.signature(Arrays.asList(service(uuid, 0x10, 0x08)));
+        String c = GattLayoutCache.signature(Arrays.asList(service(uuid, 0x10, 0x0a)));
+
+        assertThat(a).isEqualTo(b);
+        assertThat(a).isNotEqualTo(c);
+    }
+
+    @Test
+    public void testFirmwareChangeForgetsLayout() {
+        cache.putSignature("A", "1-abc");
+        cache.putFirmwareVersion("A", "201507");
+        assertThat(cache.getSignature("A")).isEqualTo("1-abc");
+        assertThat(cache.getFirmwareVersion("A")).isEqualTo("201507");
+
+        cache.putFirmwareVersion("A", "201507");
+        assertThat(cache.getSignature("A")).isEqualTo("1-abc");
+
+        cache.putFirmwareVersion("A", "201601");
+        assertThat(cache.getSignature("A")).isNull();
+    }
+
+    @Test
+    public void testNewSignatureKeepsFirmwareVersion() {
+        cache.putSignature("A", "1-abc");
+        cache.putFirmwareVersion("A", "201507");
+        cache.putSignature("A", "2-def");
+
+        assertThat(cache.getSignature("A")).isEqualTo("2-def");
+        assertThat(cache.getFirmwareVersion("A")).isEqualTo("201507");
+
+        cache.invalidate("A");
+        assertThat(cache.getSignature("A")).isNull();
+        assertThat(cache.getFirmwareVersion("A")).isNull();
+    }
+}
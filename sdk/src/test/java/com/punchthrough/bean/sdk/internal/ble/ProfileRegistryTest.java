@@ -0,0 +1,51 @@
+package com.punchthrough.bean.sdk.internal.ble;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ProfileRegistryTest {
+
+    static final UUID SERVICE = UUID.fromString("0000feed-0000-1000-8000-00805f9b34fb");
+
+    GattClient mockGattClient;
+    ProfileRegistry registry;
+    int created;
+
+    @Before
+    public void setup() {
+        mockGattClient = mock(GattClient.class);
+        registry = new ProfileRegistry(mockGattClient);
+        created = 0;
+        registry.register(SERVICE, new ProfileFactory() {
+            @Override
+            public BaseProfile create(GattClient client) {
+                created++;
+                return new BaseProfile(client);
+            }
+        });
+    }
+
+    @Test
+    public void testProfilesAreCreatedOnFirstUse() {
+        assertThat(registry.peek(SERVICE)).isNull();
+        assertThat(registry.profiles()).isEmpty();
+
+        BaseProfile profile = registry.get(SERVICE);
+        assertThat(profile).isNotNull();
+        assertThat(registry.get(SERVICE)).isSameAs(profile);
+        assertThat(registry.peek(SERVICE)).isSameAs(profile);
+        assertThat(registry.profiles()).containsExactly(profile);
+        assertThat(created).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnknownServiceHasNoProfile() {
+        assertThat(registry.get(UUID.randomUUID())).isNull();
+        assertThat(registry.profiles()).isEmpty();
+    }
+}
@@ -0,0 +1,216 @@
+package com.punchthrough.bean.sdk.internal.device;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.punchthrough.bean.sdk.internal.ble.GattClient;
+import com.punchthrough.bean.sdk.internal.utility.Constants;
+import com.punchthrough.bean.sdk.message.DeviceInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeviceProfileTest {
+
+    final Map<String, String> stored = new HashMap<>();
+    final List<String> results = new ArrayList<>();
+
+    GattClient mockGattClient;
+    BluetoothGattCharacteristic hardware;
+    BluetoothGattCharacteristic software;
+    BluetoothGattCharacteristic firmware;
+    DeviceProfile profile;
+
+    BluetoothGattCharacteristic characteristic(UUID uuid, String value) {
+        BluetoothGattCharacteristic characteristic = mock(BluetoothGattCharacteristic.class);
+        when(characteristic.getUuid()).thenReturn(uuid);
+        when(characteristic.getStringValue(0)).thenReturn(value);
+        when(characteristic.getValue()).thenReturn(value.getBytes());
+        return characteristic;
+    }
+
+    DeviceProfile.VersionCallback versionCallback() {
+        return new DeviceProfile.VersionCallback() {
+            @Override
+            public void onComplete(String version) {
+                results.add(version);
+            }
+        };
+    }
+
+    @Before
+    public void setup() {
+        hardware = characteristic(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION, "E");
+        software = characteristic(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION, "201507");
+        firmware = characteristic(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION, "201507 Img-B");
+
+        BluetoothGattService service = mock(BluetoothGattService.class);
+        when(service.getUuid()).thenReturn(Constants.UUID_DEVICE_INFO_SERVICE);
+        when(service.getCharacteristic(Constants.UUID_DEVICE_INFO_CHAR_HARDWARE_VERSION)).thenReturn(hardware);
+        when(service.getCharacteristic(Constants.UUID_DEVICE_INFO_CHAR_SOFTWARE_VERSION)).thenReturn(software);
+        when(service.getCharacteristic(Constants.UUID_DEVICE_INFO_CHAR_FIRMWARE_VERSION)).thenReturn(firmware);
+
+        mockGattClient = mock(GattClient.class);
+        when(mockGattClient.getServices()).thenReturn(Arrays.asList(service));
+        when(mockGattClient.bleAddress()).thenReturn("00:11:22:33:44:55");
+
+        profile = new DeviceProfile(mockGattClient);
+        profile.onProfileReady();
+    }
+
+    @After
+    public void teardown() {
+        DeviceInfoCache.disable();
+    }
+
+    void enableCache() {
+        SharedPreferences prefs = mock(SharedPreferences.class);
+        final SharedPreferences.Editor editor = mock(SharedPreferences.Editor.class);
+        when(prefs.edit()).thenReturn(editor);
+        when(prefs.getString(anyString(), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                String value = stored.get((String) invocation.getArguments()[0]);
+                return value != null ? value : (String) invocation.getArguments()[1];
+            }
+        });
+        when(editor.putString(anyString(), anyString())).thenAnswer(new Answer<SharedPreferences.Editor>() {
+            @Override
+            public SharedPreferences.Editor answer(InvocationOnMock invocation) throws Throwable {
+                stored.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]);
+                return editor;
+            }
+        });
+        when(editor.remove(anyString())).thenAnswer(new Answer<SharedPreferences.Editor>() {
+            @Override
+            public SharedPreferences.Editor answer(InvocationOnMock invocation) throws Throwable {
+                stored.remove((String) invocation.getArguments()[0]);
+                return editor;
+            }
+        });
+
+        Context context = mock(Context.class);
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(prefs);
+        DeviceInfoCache.enable(context);
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneRead() {
+        profile.getFirmwareVersion(versionCallback());
+        profile.getFirmwareVersion(versionCallback());
+        verify(mockGattClient, times(1)).readCharacteristic(firmware);
+
+        profile.onCharacteristicRead(mockGattClient, firmware);
+        assertThat(results).containsExactly("201507 Img-B", "201507 Img-B");
+        verify(mockGattClient).onFirmwareVersionRead("201507 Img-B");
+    }
+
+    @Test
+    public void testDeviceInfoWaitsForAllVersions() {
+        final List<DeviceInfo> infos = new ArrayList<>();
+        DeviceProfile.DeviceInfoCallback callback = new DeviceProfile.DeviceInfoCallback() {
+            @Override
+            public void onDeviceInfo(DeviceInfo info) {
+                infos.add(info);
+            }
+        };
+        profile.getDeviceInfo(callback);
+        profile.getHardwareVersion(versionCallback());
+        verify(mockGattClient, times(1)).readCharacteristic(hardware);
+
+        profile.onCharacteristicRead(mockGattClient, hardware);
+        profile.onCharacteristicRead(mockGattClient, software);
+        assertThat(infos).isEmpty();
+        assertThat(results).containsExactly("E");
+
+        profile.onCharacteristicRead(mockGattClient, firmware);
+        assertThat(infos).containsExactly(DeviceInfo.create("E", "201507", "201507 Img-B"));
+    }
+
+    @Test
+    public void testCachedVersionsAreNotReadAgain() {
+        enableCache();
+        profile.getFirmwareVersion(versionCallback());
+        profile.onCharacteristicRead(mockGattClient, firmware);
+
+        DeviceProfile reconnected = new DeviceProfile(mockGattClient);
+        reconnected.onProfileReady();
+        reconnected.getFirmwareVersion(versionCallback());
+
+        verify(mockGattClient, times(1)).readCharacteristic(firmware);
+        assertThat(results).containsExactly("201507 Img-B", "201507 Img-B");
+
+        DeviceInfoCache.shared().invalidate("00:11:22:33:44:55");
+        reconnected.getFirmwareVersion(versionCallback());
+        verify(mockGattClient, times(2)).readCharacteristic(firmware);
+    }
+
+    @Test
+    public void testFirmwareCheckReadsPastTheCache() {
+        enableCache();
+        stored.put("00:11:22:33:44:55/fw", "201501 Img-A");
+        stored.put("00:11:22:33:44:55/hw", "E");
+
+        profile.readFirmwareVersion(versionCallback());
+        verify(mockGattClient).readCharacteristic(firmware);
+        profile.onCharacteristicRead(mockGattClient, firmware);
+
+        // The Bean was reflashed elsewhere: the new version replaces the stored entry
+        assertThat(results).containsExactly("201507 Img-B");
+        assertThat(stored).containsEntry("00:11:22:33:44:55/fw", "201507 Img-B");
+        assertThat(stored).doesNotContainKey("00:11:22:33:44:55/hw");
+    }
+
+    @Test
+    public void testWaitingCallersFailOnDisconnect() {
+        final List<DeviceInfo> infos = new ArrayList<>();
+        profile.getHardwareVersion(versionCallback());
+        profile.getDeviceInfo(new DeviceProfile.DeviceInfoCallback() {
+            @Override
+            public void onDeviceInfo(DeviceInfo info) {
+                infos.add(info);
+            }
+        });
+        profile.onBeanDisconnected();
+        assertThat(results).containsExactly((String) null);
+        assertThat(infos).containsExactly((DeviceInfo) null);
+
+        // Nothing is left waiting for the next connection
+        profile.onProfileReady();
+        profile.onCharacteristicRead(mockGattClient, hardware);
+        assertThat(results).hasSize(1);
+        verify(mockGattClient, times(1)).readCharacteristic(hardware);
+    }
+
+    @Test
+    public void testUnrelatedCharacteristicsAreIgnored() {
+        BluetoothGattCharacteristic other = characteristic(UUID.randomUUID(), "x");
+        profile.getFirmwareVersion(versionCallback());
+        profile.onCharacteristicRead(mockGattClient, other);
+        assertThat(results).isEmpty();
+        verify(mockGattClient, never()).onFirmwareVersionRead(any(String.class));
+    }
+}
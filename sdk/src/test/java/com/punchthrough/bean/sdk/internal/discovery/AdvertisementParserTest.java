@@ -0,0 +1,129 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdvertisementParserTest {
+
+    // a495ff10-c5b1-4b44-b512-1370f02d74de, little-endian
+    static final byte[] BEAN_UUID_LE = {
+            (byte) 0xde, 0x74, 0x2d, (byte) 0xf0, 0x70, 0x13, 0x12, (byte) 0xb5,
+            0x44, 0x4b, (byte) 0xb1, (byte) 0xc5, 0x10, (byte) 0xff, (byte) 0x95, (byte) 0xa4
+    };
+
+    static byte[] record(byte[]... structures) {
+        int length = 0;
+        for (byte[] s : structures) {
+            length += s.length;
+        }
+        // Scan records are padded with zeros to 62 bytes
+        byte[] record = new byte[Math.max(length, 62)];
+        int offset = 0;
+        for (byte[] s : structures) {
+            System.arraycopy(s, 0, record, offset, s.length);
+            offset += s.length;
+        }
+        return record;
+    }
+
+    static byte[] structure(int type, byte... data) {
+        byte[] s = new byte[data.length + 2];
+        s[0] = (byte) (data.length + 1);
+        s[1] = (byte) type;
+        System.arraycopy(data, 0, s, 2, data.length);
+        return s;
+    }
+
+    @Test
+    public void testParseBeanAdvertisement() {
+        byte[] record = record(
+                structure(0x01, (byte) 0x06),
+                structure(0x07, BEAN_UUID_LE),
+                structure(0x09, "Bean".getBytes()),
+                structure(0x0A, (byte) -4),
+                structure(0xFF, (byte) 0x4c, (byte) 0x00, (byte) 0x02, (byte) 0x15));
+        AdvertisementData data = new AdvertisementData();
+
+        assertThat(AdvertisementParser.parse(record, data)).isTrue();
+        assertThat(data.hasBeanService()).isTrue();
+        assertThat(data.getLocalName()).isEqualTo("Bean");
+        assertThat(data.localNameEquals("Bean")).isTrue();
+        assertThat(data.localNameEquals("Bean2")).isFalse();
+        assertThat(data.getTxPower()).isEqualTo(-4);
+        assertThat(data.getManufacturerId()).isEqualTo(0x004c);
+        assertThat(data.copyManufacturerData()).isEqualTo(new byte[]{0x02, 0x15});
+    }
+
+    @Test
+    public void testParseBeanBeacon() {
+        byte[] frame = {
+                0x4c, 0x00, 0x02, 0x15,
+                // a495 1234 c5b1 4b44 b512 1370f02d74de
+                (byte) 0xa4, (byte) 0x95, 0x12, 0x34, (byte) 0xc5, (byte) 0xb1, 0x4b, 0x44,
+                (byte) 0xb5, 0x12, 0x13, 0x70, (byte) 0xf0, 0x2d, 0x74, (byte) 0xde,
+                0x00, 0x07, 0x01, 0x02, (byte) -59
+        };
+        AdvertisementData data = new AdvertisementData();
+
+        assertThat(AdvertisementParser.parse(record(structure(0xFF, frame)), data)).isFalse();
+        assertThat(data.isBeanBeacon()).isTrue();
+        assertThat(data.getBeaconUuid()).isEqualTo(0x1234);
+        assertThat(data.getBeaconMajor()).isEqualTo(7);
+        assertThat(data.getBeaconMinor()).isEqualTo(0x0102);
+        assertThat(data.getBeaconTxPower()).isEqualTo(-59);
+
+        frame[4] = 0;
+        AdvertisementParser.parse(record(structure(0xFF, frame)), data);
+        assertThat(data.isBeanBeacon()).isFalse();
+    }
+
+    @Test
+    public void testBeaconFilterLeavesVariableFieldsOpen() {
+        byte[] filter = AdvertisementParser.beanBeaconFilterData();
+        byte[] mask = AdvertisementParser.beanBeaconFilterMask();
+
+        assertThat(filter).hasSize(mask.length);
+        assertThat(filter[2]).isEqualTo((byte) 0xa4);
+        assertThat(mask[4]).isEqualTo((byte) 0);
+        assertThat(mask[6]).isEqualTo((byte) 0xff);
+        assertThat(mask[mask.length - 1]).isEqualTo((byte) 0);
+    }
+
+    @Test
+    public void testOtherDevicesAreNotBeans() {
+        byte[] other = BEAN_UUID_LE.clone();
+        other[0] = 0;
+        AdvertisementData data = new AdvertisementData();
+
+        assertThat(AdvertisementParser.parse(record(structure(0x07, other)), data)).isFalse();
+        assertThat(AdvertisementParser.parse(null, data)).isFalse();
+        assertThat(AdvertisementParser.parse(new byte[0], data)).isFalse();
+    }
+
+    @Test
+    public void testTruncatedStructuresAreIgnored() {
+        byte[] full = structure(0x07, BEAN_UUID_LE);
+        byte[] truncated = new byte[10];
+        System.arraycopy(full, 0, truncated, 0, truncated.length);
+        AdvertisementData data = new AdvertisementData();
+
+        assertThat(AdvertisementParser.parse(truncated, data)).isFalse();
+        assertThat(data.hasLocalName()).isFalse();
+    }
+
+    @Test
+    public void testReuseClearsPreviousFields() {
+        AdvertisementData data = new AdvertisementData();
+        AdvertisementParser.parse(record(
+                structure(0x07, BEAN_UUID_LE),
+                structure(0x09, "Bean".getBytes()),
+                structure(0x0A, (byte) 0)), data);
+
+        assertThat(AdvertisementParser.parse(record(structure(0x01, (byte) 0x06)), data)).isFalse();
+        assertThat(data.hasBeanService()).isFalse();
+        assertThat(data.hasLocalName()).isFalse();
+        assertThat(data.getTxPower()).isEqualTo(AdvertisementData.NO_TX_POWER);
+        assertThat(data.getManufacturerId()).isEqualTo(AdvertisementData.NO_MANUFACTURER);
+    }
+}
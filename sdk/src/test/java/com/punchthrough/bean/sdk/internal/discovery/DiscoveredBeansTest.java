@@ -0,0 +1,88 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.punchthrough.bean.sdk.Bean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiscoveredBeansTest {
+
+    DiscoveredBeans registry;
+
+    final DiscoveredBeans.BeanFactory factory = new DiscoveredBeans.BeanFactory() {
+        @Override
+        public Bean create(BluetoothDevice device) {
+            return mock(Bean.class);
+        }
+    };
+
+    @Before
+    public void setup() {
+        registry = new DiscoveredBeans(10, 0);
+    }
+
+    @Test
+    public void testRecordSmoothsRssiAndReusesBean() {
+        DiscoveredBeans.Entry first = registry.record("A", "Bean", -60, 0, null, factory);
+        DiscoveredBeans.Entry second = registry.record("A", "Bean", -80, 10, null, factory);
+
+        assertThat(second.getBean()).isSameAs(first.getBean());
+        assertThat(second.getSmoothedRssi()).isEqualTo(-65);
+        assertThat(second.getLastSeen()).isEqualTo(10);
+        assertThat(registry.beans()).hasSize(1);
+    }
+
+    @Test
+    public void testQueries() {
+        registry.record("A", "Bean+ 1", -50, 100, null, factory);
+        registry.record("B", "Bean+ 2", -90, 200, null, factory);
+        registry.record("C", "Other", -40, 300, null, factory);
+
+        assertThat(registry.withNamePrefix("Bean+")).hasSize(2);
+        assertThat(registry.withNamePrefix("Other")).hasSize(1);
+        assertThat(registry.withRssiAtLeast(-60)).hasSize(2);
+        assertThat(registry.seenSince(200)).hasSize(2);
+    }
+
+    @Test
+    public void testSnapshotIsSharedUntilChanged() {
+        registry.record("A", "Bean", -50, 0, null, factory);
+        assertThat(registry.beans()).isSameAs(registry.beans());
+
+        registry.record("B", "Bean", -50, 0, null, factory);
+        assertThat(registry.beans()).hasSize(2);
+    }
+
+    @Test
+    public void testTtlEvictionKeepsConnectedBeans() {
+        DiscoveredBeans.Entry connected = registry.record("A", "Bean", -50, 0, null, factory);
+        when(connected.getBean().isConnected()).thenReturn(true);
+        registry.record("B", "Bean", -50, 0, null, factory);
+        registry.record("C", "Bean", -50, 900, null, factory);
+
+        registry.setTtl(500);
+        registry.evict(1000);
+
+        assertThat(registry.get("A")).isNotNull();
+        assertThat(registry.get("B")).isNull();
+        assertThat(registry.get("C")).isNotNull();
+        assertThat(registry.withNamePrefix("Bean")).hasSize(2);
+    }
+
+    @Test
+    public void testCapacityEvictsLeastRecentlySeen() {
+        for (int i = 0; i < 11; i++) {
+            registry.record("Bean" + i, "Bean", -50, i, null, factory);
+        }
+
+        assertThat(registry.beans().size()).isLessThanOrEqualTo(10);
+        assertThat(registry.get("Bean0")).isNull();
+        assertThat(registry.get("Bean10")).isNotNull();
+    }
+}
@@ -0,0 +1,71 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.punchthrough.bean.sdk.Bean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DiscoveryThrottleTest {
+
+    DiscoveredBeans registry;
+
+    final DiscoveredBeans.BeanFactory factory = new DiscoveredBeans.BeanFactory() {
+        @Override
+        public Bean create(BluetoothDevice device) {
+            return mock(Bean.class);
+        }
+    };
+
+    @Before
+    public void setup() {
+        registry = new DiscoveredBeans(10, 0);
+    }
+
+    @Test
+    public void testDisabledThrottleReportsEveryAdvertisement() {
+        DiscoveryThrottle throttle = new DiscoveryThrottle(0, 0);
+        DiscoveredBeans.Entry entry = registry.record("A", "Bean", -60, 0, null, factory);
+
+        assertThat(throttle.isDisabled()).isTrue();
+        assertThat(new DiscoveryThrottle(0, 4).isDisabled()).isFalse();
+        assertThat(throttle.shouldReport(entry, 0)).isTrue();
+        assertThat(throttle.shouldReport(entry, 0)).isTrue();
+    }
+
+    @Test
+    public void testRepeatsAreLimitedByIntervalAndRssiChange() {
+        DiscoveryThrottle throttle = new DiscoveryThrottle(500, 4);
+        DiscoveredBeans.Entry entry = registry.record("A", "Bean", -60, 0, null, factory);
+        assertThat(throttle.shouldReport(entry, 0)).isTrue();
+
+        // Too soon, even though the signal moved
+        entry = registry.record("A", "Bean", -40, 100, null, factory);
+        assertThat(throttle.shouldReport(entry, 100)).isFalse();
+
+        // Late enough and moved enough
+        assertThat(throttle.shouldReport(entry, 600)).isTrue();
+
+        // Late enough, but the signal is steady
+        entry = registry.record("A", "Bean", entry.getSmoothedRssi(), 1200, null, factory);
+        assertThat(throttle.shouldReport(entry, 1200)).isFalse();
+    }
+
+    @Test
+    public void testBatchListsEachBeanOnceInOrder() {
+        DiscoveryThrottle throttle = new DiscoveryThrottle(0, 0);
+        DiscoveredBeans.Entry a = registry.record("A", "Bean", -60, 0, null, factory);
+        DiscoveredBeans.Entry b = registry.record("B", "Bean", -60, 0, null, factory);
+
+        throttle.markChanged(a);
+        throttle.markChanged(b);
+        throttle.markChanged(a);
+
+        assertThat(throttle.drainChanged()).containsExactly(a, b);
+        assertThat(throttle.drainChanged()).isEmpty();
+    }
+}
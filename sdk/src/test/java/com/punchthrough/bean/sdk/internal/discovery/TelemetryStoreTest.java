@@ -0,0 +1,37 @@
+package com.punchthrough.bean.sdk.internal.discovery;
+
+import com.punchthrough.bean.sdk.message.TelemetrySample;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TelemetryStoreTest {
+
+    static TelemetrySample sample(long timestamp) {
+        return TelemetrySample.create(timestamp, -60, 1, 2, AdvertisementParser.APPLE_COMPANY_ID,
+                new byte[0]);
+    }
+
+    @Test
+    public void testHistoryKeepsNewestSamplesInOrder() {
+        TelemetryStore store = new TelemetryStore(3, 10);
+        for (int i = 0; i < 5; i++) {
+            store.add("A", sample(i));
+        }
+
+        assertThat(store.get("A")).extracting("timestamp").containsExactly(2L, 3L, 4L);
+        assertThat(store.get("B")).isEmpty();
+    }
+
+    @Test
+    public void testLeastRecentlyHeardBeanIsDropped() {
+        TelemetryStore store = new TelemetryStore(3, 2);
+        store.add("A", sample(0));
+        store.add("B", sample(1));
+        store.add("A", sample(2));
+        store.add("C", sample(3));
+
+        assertThat(store.addresses()).containsOnly("A", "C");
+    }
+}
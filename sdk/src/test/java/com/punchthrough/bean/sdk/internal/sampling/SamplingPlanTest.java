@@ -0,0 +1,95 @@
+package com.punchthrough.bean.sdk.internal.sampling;
+
+import com.punchthrough.bean.sdk.message.SamplingStats;
+import com.punchthrough.bean.sdk.message.SensorSnapshot;
+import com.punchthrough.bean.sdk.message.SensorSnapshot.Reading;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SamplingPlanTest {
+
+    final SamplingPlan<String> plan = new SamplingPlan<>(100);
+
+    SensorSnapshot snapshot(EnumSet<Reading> readings) {
+        SensorSnapshot.Builder builder = new SensorSnapshot.Builder(readings, 0);
+        if (readings.contains(Reading.TEMPERATURE)) {
+            builder.temperature(20);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testPeriodsRoundUpToTick() {
+        assertThat(plan.set("A", Reading.TEMPERATURE, 250, 0)).isEqualTo(300);
+        assertThat(plan.set("A", Reading.BATTERY, 100, 0)).isEqualTo(100);
+        assertThat(plan.shortestPeriod("A")).isEqualTo(100);
+    }
+
+    @Test
+    public void testRelatedPeriodsAreBatched() {
+        plan.set("A", Reading.TEMPERATURE, 1000, 50);
+        plan.set("A", Reading.ACCELERATION, 500, 50);
+
+        assertThat(plan.due(400)).isEmpty();
+        assertThat(plan.due(500).get("A")).containsOnly(Reading.ACCELERATION);
+        plan.completed("A", snapshot(EnumSet.of(Reading.ACCELERATION)), 520);
+
+        Map<String, EnumSet<Reading>> due = plan.due(1000);
+        assertThat(due.get("A")).containsOnly(Reading.TEMPERATURE, Reading.ACCELERATION);
+    }
+
+    @Test
+    public void testBusyDeviceDropsInsteadOfQueueing() {
+        plan.set("A", Reading.TEMPERATURE, 100, 0);
+        plan.set("B", Reading.TEMPERATURE, 100, 0);
+
+        assertThat(plan.due(100)).containsKeys("A", "B");
+        plan.completed("B", snapshot(EnumSet.of(Reading.TEMPERATURE)), 150);
+
+        Map<String, EnumSet<Reading>> due = plan.due(200);
+        assertThat(due).containsOnlyKeys("B");
+        assertThat(plan.getStats("A", Reading.TEMPERATURE).dropped()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMissedDeadlinesAndTimeoutsCountAsDropped() {
+        plan.set("A", Reading.TEMPERATURE, 100, 0);
+        plan.set("A", Reading.BATTERY, 100, 0);
+
+        plan.due(450);
+        plan.completed("A", snapshot(EnumSet.of(Reading.TEMPERATURE, Reading.BATTERY)), 460);
+
+        assertThat(plan.getStats("A", Reading.TEMPERATURE).dropped()).isEqualTo(3);
+        assertThat(plan.getStats("A", Reading.TEMPERATURE).samples()).isEqualTo(1);
+        assertThat(plan.getStats("A", Reading.BATTERY).dropped()).isEqualTo(4);
+        assertThat(plan.due(499)).isEmpty();
+    }
+
+    @Test
+    public void testAchievedRate() {
+        plan.set("A", Reading.TEMPERATURE, 200, 0);
+        for (long t = 200; t <= 1000; t += 200) {
+            plan.due(t);
+            plan.completed("A", snapshot(EnumSet.of(Reading.TEMPERATURE)), t + 10);
+        }
+        SamplingStats stats = plan.getStats("A", Reading.TEMPERATURE);
+        assertThat(stats.samples()).isEqualTo(5);
+        assertThat(stats.achievedRate()).isEqualTo(5.0);
+        assertThat(stats.requestedRate()).isEqualTo(5.0);
+    }
+
+    @Test
+    public void testRemove() {
+        plan.set("A", Reading.TEMPERATURE, 100, 0);
+        plan.due(100);
+        plan.remove("A", Reading.TEMPERATURE);
+
+        assertThat(plan.isEmpty()).isTrue();
+        assertThat(plan.getStats("A", Reading.TEMPERATURE)).isNull();
+    }
+}
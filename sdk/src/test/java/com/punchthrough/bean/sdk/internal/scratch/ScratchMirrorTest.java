@@ -0,0 +1,107 @@
+package com.punchthrough.bean.sdk.internal.scratch;
+
+import com.punchthrough.bean.sdk.message.Callback;
+import com.punchthrough.bean.sdk.message.ScratchBank;
+import com.punchthrough.bean.sdk.message.ScratchData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScratchMirrorTest {
+
+    final ScratchMirror mirror = new ScratchMirror();
+    final List<ScratchData> results = new ArrayList<>();
+    final CountDownLatch called = new CountDownLatch(1);
+
+    final Callback<ScratchData> callback = new Callback<ScratchData>() {
+        @Override
+        public void onResult(ScratchData result) {
+            results.add(result);
+            called.countDown();
+        }
+    };
+
+    @Test
+    public void testVersionOnlyChangesWithValue() {
+        assertThat(mirror.getVersion(ScratchBank.BANK_2)).isEqualTo(0);
+        assertThat(mirror.get(ScratchBank.BANK_2)).isNull();
+
+        assertThat(mirror.update(ScratchBank.BANK_2, new byte[]{1, 2}, 100)).isTrue();
+        assertThat(mirror.update(ScratchBank.BANK_2, new byte[]{1, 2}, 200)).isFalse();
+        assertThat(mirror.getVersion(ScratchBank.BANK_2)).isEqualTo(1);
+        assertThat(mirror.getTimestamp(ScratchBank.BANK_2)).isEqualTo(200);
+        assertThat(mirror.get(ScratchBank.BANK_2).data()).isEqualTo(new byte[]{1, 2});
+        assertThat(mirror.get(ScratchBank.BANK_2).number()).isEqualTo(2);
+        assertThat(mirror.getVersion(ScratchBank.BANK_1)).isEqualTo(0);
+    }
+
+    @Test
+    public void testFreshness() {
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 0, 1000)).isFalse();
+        mirror.setLive(ScratchBank.BANK_1, true);
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 0, 0)).isFalse();
+
+        mirror.update(ScratchBank.BANK_1, new byte[]{9}, 100);
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 100000, 0)).isTrue();
+
+        mirror.setLive(ScratchBank.BANK_1, false);
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 100000, 0)).isFalse();
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 600, 500)).isTrue();
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 601, 500)).isFalse();
+    }
+
+    @Test
+    public void testValuesFromEarlierConnectionsAreStale() {
+        mirror.setLive(ScratchBank.BANK_1, true);
+        mirror.update(ScratchBank.BANK_1, new byte[]{9}, 100);
+
+        // Disconnect, then reconnect and subscribe again
+        mirror.clearLive();
+        mirror.setLive(ScratchBank.BANK_1, true);
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 200, 1000)).isFalse();
+        assertThat(mirror.get(ScratchBank.BANK_1).data()).isEqualTo(new byte[]{9});
+
+        // Heard again on this connection: the version stays, the value is fresh
+        mirror.update(ScratchBank.BANK_1, new byte[]{9}, 300);
+        assertThat(mirror.getVersion(ScratchBank.BANK_1)).isEqualTo(1);
+        assertThat(mirror.isFresh(ScratchBank.BANK_1, 100000, 0)).isTrue();
+    }
+
+    @Test
+    public void testAwaitIsWokenByChange() {
+        mirror.update(ScratchBank.BANK_3, new byte[]{1}, 0);
+        mirror.await(ScratchBank.BANK_3, mirror.getVersion(ScratchBank.BANK_3), 10000, callback);
+
+        mirror.update(ScratchBank.BANK_4, new byte[]{2}, 10);
+        mirror.update(ScratchBank.BANK_3, new byte[]{1}, 10);
+        assertThat(results).isEmpty();
+
+        mirror.update(ScratchBank.BANK_3, new byte[]{3}, 20);
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).data()).isEqualTo(new byte[]{3});
+    }
+
+    @Test
+    public void testAwaitPastVersionReturnsRightAway() {
+        mirror.update(ScratchBank.BANK_5, new byte[]{7}, 0);
+        mirror.await(ScratchBank.BANK_5, 0, 10000, callback);
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).data()).isEqualTo(new byte[]{7});
+    }
+
+    @Test
+    public void testAwaitTimesOutWithNull() throws InterruptedException {
+        mirror.await(ScratchBank.BANK_1, 0, 20, callback);
+        assertThat(called.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(results).containsExactly((ScratchData) null);
+
+        mirror.update(ScratchBank.BANK_1, new byte[]{1}, 0);
+        assertThat(results).hasSize(1);
+    }
+}
@@ -0,0 +1,164 @@
+package com.punchthrough.bean.sdk.internal.scratch;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import com.punchthrough.bean.sdk.internal.ble.GattClient;
+import com.punchthrough.bean.sdk.internal.utility.Constants;
+import com.punchthrough.bean.sdk.message.ScratchBank;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScratchProfileTest {
+
+    final List<byte[]> reads = new ArrayList<>();
+
+    GattClient mockGattClient;
+    BluetoothGattService service;
+    BluetoothGattCharacteristic bank1;
+    BluetoothGattCharacteristic bank2;
+    ScratchProfile profile;
+
+    BluetoothGattCharacteristic characteristic(UUID uuid, int descriptors) {
+        BluetoothGattCharacteristic characteristic = mock(BluetoothGattCharacteristic.class);
+        when(characteristic.getUuid()).thenReturn(uuid);
+        List<BluetoothGattDescriptor> list = new ArrayList<>();
+        for (int i = 0; i < descriptors; i++) {
+            list.add(mock(BluetoothGattDescriptor.class));
+        }
+        when(characteristic.getDescriptors()).thenReturn(list);
+        return characteristic;
+    }
+
+    ScratchProfile.ReadCallback readCallback() {
+        return new ScratchProfile.ReadCallback() {
+            @Override
+            public void onRead(byte[] value) {
+                reads.add(value);
+            }
+        };
+    }
+
+    @Before
+    public void setup() {
+        bank1 = characteristic(Constants.UUID_SCRATCH_CHAR_1, 2);
+        bank2 = characteristic(Constants.UUID_SCRATCH_CHAR_2, 2);
+
+        service = mock(BluetoothGattService.class);
+        when(service.getCharacteristics()).thenReturn(Arrays.asList(bank1, bank2));
+
+        mockGattClient = mock(GattClient.class);
+        when(mockGattClient.getService(Constants.UUID_SCRATCH_SERVICE)).thenReturn(service);
+        when(mockGattClient.enableNotifications(bank2)).thenReturn(true);
+
+        profile = new ScratchProfile(mockGattClient);
+        profile.onProfileReady();
+    }
+
+    @Test
+    public void testWritesCoalesceWhileInFlight() {
+        assertThat(profile.write(1, new byte[]{1})).isTrue();
+        assertThat(profile.write(1, new byte[]{2})).isTrue();
+        assertThat(profile.write(1, new byte[]{3})).isTrue();
+        verify(mockGattClient, times(1)).writeCharacteristic(bank1);
+        verify(bank1).setValue(new byte[]{1});
+
+        profile.onCharacteristicWrite(mockGattClient, bank1);
+        InOrder order = inOrder(bank1, mockGattClient);
+        order.verify(bank1).setValue(new byte[]{3});
+        order.verify(mockGattClient).writeCharacteristic(bank1);
+        verify(bank1, never()).setValue(new byte[]{2});
+
+        // Nothing left waiting, so the next write goes out right away
+        profile.onCharacteristicWrite(mockGattClient, bank1);
+        profile.write(1, new byte[]{4});
+        verify(mockGattClient, times(3)).writeCharacteristic(bank1);
+    }
+
+    @Test
+    public void testBanksWriteIndependently() {
+        profile.write(1, new byte[]{1});
+        profile.write(2, new byte[]{2});
+        verify(mockGattClient).writeCharacteristic(bank1);
+        verify(mockGattClient).writeCharacteristic(bank2);
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneRead() {
+        when(bank1.getValue()).thenReturn(new byte[]{7, 8});
+        profile.read(1, readCallback());
+        profile.read(1, readCallback());
+        verify(mockGattClient, times(1)).readCharacteristic(bank1);
+
+        profile.onCharacteristicRead(mockGattClient, bank1);
+        assertThat(reads).hasSize(2);
+        assertThat(reads.get(0)).isEqualTo(new byte[]{7, 8});
+        assertThat(reads.get(1)).isEqualTo(new byte[]{7, 8});
+    }
+
+    @Test
+    public void testEnableNotifications() {
+        assertThat(profile.enableNotifications(2)).isTrue();
+        assertThat(profile.enableNotifications(6)).isFalse();
+    }
+
+    @Test
+    public void testMalformedScratchTableIsUnavailable() {
+        BluetoothGattCharacteristic malformed = characteristic(Constants.UUID_SCRATCH_CHAR_3, 1);
+        when(service.getCharacteristics()).thenReturn(Arrays.asList(bank1, bank2, malformed));
+        profile.onProfileReady();
+
+        assertThat(profile.isAvailable()).isFalse();
+        assertThat(profile.write(1, new byte[]{1})).isFalse();
+        assertThat(profile.read(1, readCallback())).isFalse();
+        assertThat(profile.enableNotifications(2)).isFalse();
+        verify(mockGattClient, never()).writeCharacteristic(bank1);
+        verify(mockGattClient, never()).enableNotifications(bank2);
+    }
+
+    @Test
+    public void testNotificationsReachListener() {
+        ScratchProfile.ScratchListener listener = mock(ScratchProfile.ScratchListener.class);
+        profile.setListener(listener);
+        when(bank2.getValue()).thenReturn(new byte[]{1, 2, 3});
+
+        assertThat(profile.handlesCharacteristic(bank2)).isTrue();
+        profile.onCharacteristicChanged(mockGattClient, bank2);
+        verify(listener).onScratchValueChanged(ScratchBank.BANK_2, new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testBankIndex() {
+        assertThat(ScratchProfile.bankIndex(Constants.UUID_SCRATCH_CHAR_1)).isEqualTo(1);
+        assertThat(ScratchProfile.bankIndex(Constants.UUID_SCRATCH_CHAR_5)).isEqualTo(5);
+        assertThat(ScratchProfile.bankIndex(Constants.UUID_SCRATCH_SERVICE)).isEqualTo(-1);
+        assertThat(ScratchProfile.bankIndex(Constants.UUID_SERIAL_CHAR)).isEqualTo(-1);
+        assertThat(ScratchProfile.bankIndex(Constants.UUID_OAD_CHAR_BLOCK)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testDisconnectDropsPendingWrites() {
+        profile.write(1, new byte[]{1});
+        profile.write(1, new byte[]{2});
+        profile.onBeanDisconnected();
+        profile.write(1, new byte[]{3});
+        verify(mockGattClient, times(2)).writeCharacteristic(bank1);
+        verify(bank1, never()).setValue(new byte[]{2});
+    }
+}
@@ -2,14 +2,11 @@ package com.punchthrough.bean.sdk.internal.serial;
 
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
-import android.os.Handler;
 
-import com.punchthrough.bean.sdk.UnitTestUtils;
+import com.punchthrough.bean.sdk.CallbackExecutors;
 import com.punchthrough.bean.sdk.internal.ble.GattClient;
-import com.punchthrough.bean.sdk.internal.exception.NoEnumFoundException;
 import com.punchthrough.bean.sdk.internal.utility.Constants;
-import com.punchthrough.bean.sdk.internal.utility.EnumParse;
-import com.punchthrough.bean.sdk.message.ScratchBank;
+import com.punchthrough.bean.sdk.internal.utility.EventLoop;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +24,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,7 +36,7 @@ public class GattSerialTransportProfileTest {
     BluetoothGattService mockScratchService;
     BluetoothGattCharacteristic mockChar;
     GattClient mockGattClient;
-    Handler mockHandler;
+    EventLoop eventLoop;
     GattSerialTransportProfile.SerialListener mockListener;
 
     // Class under test
@@ -57,7 +55,7 @@ public class GattSerialTransportProfileTest {
     @Before
     public void setup() {
         mockGattClient = mock(GattClient.class);
-        mockHandler = UnitTestUtils.ImmediatelyRunningHandler();
+        eventLoop = new EventLoop(CallbackExecutors.direct());
         mockListener = mock(GattSerialTransportProfile.SerialListener.class);
         mockSerialService = mock(BluetoothGattService.class);
         mockScratchService = mock(BluetoothGattService.class);
@@ -68,23 +66,7 @@ public class GattSerialTransportProfileTest {
         final List<BluetoothGattCharacteristic> chars = new ArrayList<>();
         chars.add(mockChar);
         when(mockSerialService.getCharacteristics()).thenReturn(chars);
-        gstp = new GattSerialTransportProfile(mockGattClient, mockHandler);
-    }
-
-    @Test
-    public void testOnCharacteristicChanged() throws NoEnumFoundException {
-        // More setup
-        byte[] value = {1, 2, 3};
-        int index = 1;
-        ScratchBank bank = EnumParse.enumWithRawValue(ScratchBank.class, index);
-        gstp.setListener(mockListener);
-        BluetoothGattCharacteristic mockChar = mock(BluetoothGattCharacteristic.class);
-        when(mockChar.getUuid()).thenReturn(Constants.UUID_SCRATCH_CHAR_1);
-        when(mockChar.getValue()).thenReturn(value);
-
-        // Test and verify
-        gstp.onCharacteristicChanged(mockGattClient, mockChar);
-        verify(mockListener).onScratchValueChanged(bank, value);
+        gstp = new GattSerialTransportProfile(mockGattClient, eventLoop);
     }
 
     @Test
@@ -107,4 +89,26 @@ public class GattSerialTransportProfileTest {
         assertThat(packets.size()).isEqualTo(1);
     }
 
+    @Test
+    public void testSendWhileDisconnectedIsDropped() {
+        GattSerialMessage msg = buildMessage(0x0102, new byte[] {0, 1, 2, 3});
+        assertThat(gstp.sendMessage(msg.getBuffer())).isFalse();
+
+        gstp.onProfileReady();
+        verify(mockGattClient, never()).writeCharacteristic(mockChar);
+        assertThat(gstp.sendMessage(msg.getBuffer())).isTrue();
+
+        gstp.onBeanDisconnected();
+        assertThat(gstp.sendMessage(msg.getBuffer())).isFalse();
+    }
+
+    @Test
+    public void testOnlyClaimsSerialCharacteristic() {
+        BluetoothGattCharacteristic scratch = mock(BluetoothGattCharacteristic.class);
+        when(scratch.getUuid()).thenReturn(Constants.UUID_SCRATCH_CHAR_1);
+        when(mockChar.getUuid()).thenReturn(Constants.UUID_SERIAL_CHAR);
+        assertThat(gstp.handlesCharacteristic(mockChar)).isTrue();
+        assertThat(gstp.handlesCharacteristic(scratch)).isFalse();
+    }
+
 }
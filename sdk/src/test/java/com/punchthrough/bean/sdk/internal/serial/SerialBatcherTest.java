@@ -0,0 +1,35 @@
+package com.punchthrough.bean.sdk.internal.serial;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SerialBatcherTest {
+
+    @Test
+    public void testWindowStartsOncePerBatch() {
+        SerialBatcher batcher = new SerialBatcher(64);
+        assertThat(batcher.add(new byte[] {1})).isEqualTo(SerialBatcher.Result.WINDOW_STARTED);
+        assertThat(batcher.add(new byte[] {2})).isEqualTo(SerialBatcher.Result.QUEUED);
+        assertThat(batcher.add(new byte[] {3})).isEqualTo(SerialBatcher.Result.QUEUED);
+
+        List<byte[]> messages = batcher.drain();
+        assertThat(messages).hasSize(3);
+        assertThat(messages.get(0)).isEqualTo(new byte[] {1});
+        assertThat(messages.get(2)).isEqualTo(new byte[] {3});
+
+        assertThat(batcher.drain()).isEmpty();
+        assertThat(batcher.add(new byte[] {4})).isEqualTo(SerialBatcher.Result.WINDOW_STARTED);
+    }
+
+    @Test
+    public void testFullBatch() {
+        SerialBatcher batcher = new SerialBatcher(4);
+        assertThat(batcher.add(new byte[] {1, 2})).isEqualTo(SerialBatcher.Result.WINDOW_STARTED);
+        assertThat(batcher.add(new byte[] {3, 4})).isEqualTo(SerialBatcher.Result.FULL);
+        assertThat(batcher.add(new byte[] {5})).isEqualTo(SerialBatcher.Result.QUEUED);
+        assertThat(batcher.drain()).hasSize(3);
+    }
+}
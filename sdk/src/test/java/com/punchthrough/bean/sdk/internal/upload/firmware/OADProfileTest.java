@@ -113,15 +113,15 @@ public class OADProfileTest {
                 fwVersionCallback = (DeviceProfile.VersionCallback) args[0];
                 return null;
             }
-        }).when(mockDeviceProfile).getFirmwareVersion(any(DeviceProfile.VersionCallback.class));
+        }).when(mockDeviceProfile).readFirmwareVersion(any(DeviceProfile.VersionCallback.class));
 
         // Setup mock GattClient
         mockGattClient = mock(GattClient.class);
         when(mockGattClient.isConnected()).thenReturn(true);
         when(mockGattClient.getServices()).thenReturn(services);
         when(mockGattClient.getService(Constants.UUID_OAD_SERVICE)).thenReturn(mockOADService);
-        when(mockGattClient.setCharacteristicNotification(mockOADIdentify, true)).thenReturn(true);
-        when(mockGattClient.setCharacteristicNotification(mockOADBlock, true)).thenReturn(true);
+        when(mockGattClient.enableNotifications(mockOADIdentify)).thenReturn(true);
+        when(mockGattClient.enableNotifications(mockOADBlock)).thenReturn(true);
         when(mockGattClient.getDeviceProfile()).thenReturn(mockDeviceProfile);
 
         // Setup class under test - OADProfile
@@ -0,0 +1,77 @@
+package com.punchthrough.bean.sdk.internal.utility;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventLoopTest {
+
+    @Test
+    public void testTasksSubmittedFromTasksRunAfterCurrentTask() {
+        final List<Integer> order = new ArrayList<>();
+        final EventLoop loop = new EventLoop(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        order.add(2);
+                    }
+                });
+                order.add(1);
+            }
+        });
+
+        assertThat(order).containsExactly(1, 2);
+    }
+
+    @Test
+    public void testConcurrentSubmissionsRunOnceAndNeverOverlap() throws InterruptedException {
+        final EventLoop loop = new EventLoop();
+        final int threads = 4;
+        final int tasksPerThread = 1000;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean(false);
+        final CountDownLatch done = new CountDownLatch(threads * tasksPerThread);
+
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (running.incrementAndGet() != 1) {
+                    overlapped.set(true);
+                }
+                running.decrementAndGet();
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        loop.execute(task);
+                    }
+                }
+            }).start();
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(overlapped.get()).isFalse();
+    }
+}